@@ -0,0 +1,17 @@
+package org.enodeframework.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author anruence@gmail.com
+ * aggregate root state schema version of snapshots, increase it when the state fields change incompatibly.
+ * Without it, the schema version is a hash of the declared state fields.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SnapshotVersion {
+    int value();
+}
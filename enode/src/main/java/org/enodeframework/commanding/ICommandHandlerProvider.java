@@ -12,4 +12,25 @@ public interface ICommandHandlerProvider {
      * Get all the handlers for the given command type.
      */
     List<MessageHandlerData<ICommandHandlerProxy>> getHandlers(Class commandType);
+
+    /**
+     * Get the handler data registered for exactly the given command type, return null if the command type has no handler.
+     * The default implementation is built on {@link #getHandlers(Class)}, handlers of more than one handler data are merged into one.
+     */
+    default MessageHandlerData<ICommandHandlerProxy> getHandlerData(Class<?> commandType) {
+        List<MessageHandlerData<ICommandHandlerProxy>> handlerDataList = getHandlers(commandType);
+        if (handlerDataList == null || handlerDataList.isEmpty()) {
+            return null;
+        }
+        if (handlerDataList.size() == 1) {
+            return handlerDataList.get(0);
+        }
+        MessageHandlerData<ICommandHandlerProxy> mergedHandlerData = new MessageHandlerData<>();
+        for (MessageHandlerData<ICommandHandlerProxy> handlerData : handlerDataList) {
+            mergedHandlerData.allHandlers.addAll(handlerData.allHandlers);
+            mergedHandlerData.listHandlers.addAll(handlerData.listHandlers);
+            mergedHandlerData.queuedHandlers.addAll(handlerData.queuedHandlers);
+        }
+        return mergedHandlerData;
+    }
 }
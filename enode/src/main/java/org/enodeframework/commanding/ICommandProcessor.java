@@ -1,11 +1,19 @@
 package org.enodeframework.commanding;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface ICommandProcessor {
     /**
      * Process the given command.
      */
     void process(ProcessingCommand processingCommand);
 
+    /**
+     * Returns a future that completes when the processor is able to accept more commands,
+     * it is not completed while the in-flight commands are above the high watermark.
+     */
+    CompletableFuture<Void> waitForCapacityAsync();
+
     void start();
 
     void stop();
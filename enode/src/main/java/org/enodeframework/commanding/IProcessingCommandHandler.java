@@ -4,4 +4,10 @@ import java.util.concurrent.CompletableFuture;
 
 public interface IProcessingCommandHandler {
     CompletableFuture<Void> handleAsync(ProcessingCommand processingCommand);
+
+    /**
+     * 命令邮箱的一次运行结束时调用，此时邮箱仍处于运行状态
+     */
+    default void onRunCompleted(ProcessingCommandMailbox mailbox) {
+    }
 }
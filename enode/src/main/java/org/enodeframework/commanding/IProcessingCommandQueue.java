@@ -0,0 +1,28 @@
+package org.enodeframework.commanding;
+
+/**
+ * ProcessingCommandMailbox 中待处理命令的存储，按 Sequence 索引
+ *
+ * @author anruence@gmail.com
+ */
+public interface IProcessingCommandQueue {
+    /**
+     * 为命令分配下一个 Sequence 并放入队列，返回是否放入成功
+     */
+    boolean enqueue(ProcessingCommand message);
+
+    /**
+     * 获取指定 Sequence 的命令，命令不存在或已经完成时返回null
+     */
+    ProcessingCommand get(long sequence);
+
+    /**
+     * 移除已完成的命令，只有第一次移除成功时返回true
+     */
+    boolean remove(ProcessingCommand message);
+
+    /**
+     * 下一个待分配的 Sequence
+     */
+    long getNextSequence();
+}
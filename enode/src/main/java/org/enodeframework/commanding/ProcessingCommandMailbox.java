@@ -1,6 +1,8 @@
 package org.enodeframework.commanding;
 
+import org.enodeframework.commanding.impl.DefaultProcessingCommandQueue;
 import org.enodeframework.common.io.Task;
+import org.enodeframework.common.threading.InFlightLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,40 +20,56 @@ public class ProcessingCommandMailbox {
     public static final Logger logger = LoggerFactory.getLogger(ProcessingCommandMailbox.class);
     private final Executor executor;
     private final Object lockObj = new Object();
-    private final Object asyncLock = new Object();
     /**
      * Sequence 对应 ProcessingCommand
      */
-    private final ConcurrentHashMap<Long, ProcessingCommand> messageDict;
+    private final IProcessingCommandQueue messageQueue;
     private final ConcurrentHashMap<String, Byte> duplicateCommandIdDict;
     private final IProcessingCommandHandler messageHandler;
     private final int batchSize;
-    private final AtomicInteger isUsing = new AtomicInteger(0);
-    private final AtomicInteger isRemoved = new AtomicInteger(0);
+    /**
+     * 正在使用当前MailBox的调用方数量，-1表示已移除
+     */
+    private final AtomicInteger usingCount = new AtomicInteger(0);
     private String aggregateRootId;
-    private Date lastActiveTime;
-    private boolean running;
-    private boolean pauseRequested;
-    private boolean paused;
-    private long nextSequence;
+    private volatile long lastActiveTime;
+    private volatile boolean running;
+    private volatile boolean pauseRequested;
+    private volatile boolean paused;
+    /**
+     * 请求暂停时MailBox仍在运行，当前运行结束时完成
+     */
+    private CompletableFuture<Void> pauseFuture;
+    /**
+     * 统计当前MailBox中已入队但尚未完成的命令数量，暂停期间拒绝新的命令，为空表示不限流
+     */
+    private InFlightLimiter inFlightLimiter;
     private long consumingSequence;
 
     public ProcessingCommandMailbox(String aggregateRootId, IProcessingCommandHandler messageHandler, int batchSize, Executor executor) {
+        this(aggregateRootId, new DefaultProcessingCommandQueue(), messageHandler, batchSize, executor);
+    }
+
+    public ProcessingCommandMailbox(String aggregateRootId, IProcessingCommandQueue messageQueue, IProcessingCommandHandler messageHandler, int batchSize, Executor executor) {
         this.executor = executor;
-        this.messageDict = new ConcurrentHashMap<>();
+        this.messageQueue = messageQueue;
         this.duplicateCommandIdDict = new ConcurrentHashMap<>();
         this.messageHandler = messageHandler;
         this.batchSize = batchSize;
         this.aggregateRootId = aggregateRootId;
-        lastActiveTime = new Date();
+        lastActiveTime = System.currentTimeMillis();
     }
 
     public Date getLastActiveTime() {
-        return this.lastActiveTime;
+        return new Date(this.lastActiveTime);
     }
 
     public void setLastActiveTime(Date lastActiveTime) {
-        this.lastActiveTime = lastActiveTime;
+        this.lastActiveTime = lastActiveTime.getTime();
+    }
+
+    public long getLastActiveTimeMillis() {
+        return this.lastActiveTime;
     }
 
     public boolean isRunning() {
@@ -71,14 +89,22 @@ public class ProcessingCommandMailbox {
     }
 
     public long getMaxMessageSequence() {
-        return nextSequence - 1;
+        return messageQueue.getNextSequence() - 1;
     }
 
     public long getTotalUnHandledMessageCount() {
-        return nextSequence - consumingSequence;
+        return messageQueue.getNextSequence() - consumingSequence;
     }
 
 
+    public InFlightLimiter getInFlightLimiter() {
+        return inFlightLimiter;
+    }
+
+    public void setInFlightLimiter(InFlightLimiter inFlightLimiter) {
+        this.inFlightLimiter = inFlightLimiter;
+    }
+
     public String getAggregateRootId() {
         return aggregateRootId;
     }
@@ -91,20 +117,24 @@ public class ProcessingCommandMailbox {
      * 放入一个消息到MailBox，并自动尝试运行MailBox
      */
     public void enqueueMessage(ProcessingCommand message) {
-        synchronized (lockObj) {
-            message.setSequence(nextSequence);
-            message.setMailBox(this);
-            // If the specified key is not already associated with a value (or is mapped to null) associates it with the given value and returns null, else returns the current value.
-            if (messageDict.putIfAbsent(message.getSequence(), message) == null) {
-                nextSequence++;
-                if (logger.isDebugEnabled()) {
-                    logger.debug("{} enqueued new message, aggregateRootId: {}, messageSequence: {}", getClass().getName(), aggregateRootId, message.getSequence());
-                }
-                lastActiveTime = new Date();
-                tryRun();
-            } else {
-                logger.error("{} enqueue message failed, aggregateRootId: {}, messageId: {}, messageSequence: {}", getClass().getName(), aggregateRootId, message.getMessage().getId(), message.getSequence());
+        message.setMailBox(this);
+        //只拒绝当前聚合根的命令，其他聚合根的命令和消费端不受影响
+        if (inFlightLimiter != null && !inFlightLimiter.tryAcquire()) {
+            logger.warn("{} reject message as too many in-flight messages, aggregateRootId: {}, messageId: {}, inFlightCount: {}", getClass().getName(), aggregateRootId, message.getMessage().getId(), inFlightLimiter.getInFlightCount());
+            message.completeAsync(new CommandResult(CommandStatus.Failed, message.getMessage().getId(), aggregateRootId, "Too many in-flight commands of the aggregate root.", String.class.getName()));
+            return;
+        }
+        if (messageQueue.enqueue(message)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} enqueued new message, aggregateRootId: {}, messageSequence: {}", getClass().getName(), aggregateRootId, message.getSequence());
             }
+            lastActiveTime = System.currentTimeMillis();
+            tryRun();
+        } else {
+            if (inFlightLimiter != null) {
+                inFlightLimiter.release();
+            }
+            logger.error("{} enqueue message failed, aggregateRootId: {}, messageId: {}, messageSequence: {}", getClass().getName(), aggregateRootId, message.getMessage().getId(), message.getSequence());
         }
     }
 
@@ -117,7 +147,7 @@ public class ProcessingCommandMailbox {
             if (logger.isDebugEnabled()) {
                 logger.debug("{} start run, aggregateRootId: {}, consumingSequence: {}", getClass().getName(), aggregateRootId, consumingSequence);
             }
-            CompletableFuture.supplyAsync(this::processMessages, executor);
+            CompletableFuture.runAsync(this::processMessages, executor);
         }
     }
 
@@ -125,11 +155,28 @@ public class ProcessingCommandMailbox {
      * 请求完成MailBox的单次运行，如果MailBox中还有剩余消息，则继续尝试运行下一次
      */
     public void completeRun() {
-        lastActiveTime = new Date();
-        if (logger.isDebugEnabled()) {
-            logger.debug("{} complete run, aggregateRootId: {}", getClass().getName(), aggregateRootId);
+        try {
+            messageHandler.onRunCompleted(this);
+        } catch (Exception ex) {
+            logger.error("{} complete run of message handler has unknown exception, aggregateRootId: {}", getClass().getName(), aggregateRootId, ex);
+        }
+        CompletableFuture<Void> drainedFuture = null;
+        synchronized (lockObj) {
+            lastActiveTime = System.currentTimeMillis();
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} complete run, aggregateRootId: {}", getClass().getName(), aggregateRootId);
+            }
+            setAsNotRunning();
+            if (pauseRequested) {
+                paused = true;
+                drainedFuture = pauseFuture;
+                pauseFuture = null;
+            }
+        }
+        if (drainedFuture != null) {
+            drainedFuture.complete(null);
+            return;
         }
-        setAsNotRunning();
         if (getTotalUnHandledMessageCount() > 0) {
             tryRun();
         }
@@ -139,31 +186,39 @@ public class ProcessingCommandMailbox {
      * 暂停当前MailBox的运行，暂停成功可以确保当前MailBox不会处于运行状态，也就是不会在处理任何消息
      */
     public void pause() {
-        pauseRequested = true;
-        if (logger.isDebugEnabled()) {
-            logger.debug("{} pause requested, aggregateRootId: {}", getClass().getName(), aggregateRootId);
-        }
-        long count = 0L;
-        while (running) {
-            Task.sleep(10);
-            count++;
-            if (count % 100 == 0) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("{} pause requested, but wait for too long to stop the current mailbox, aggregateRootId: {}, waitCount: {}", getClass().getName(), aggregateRootId, count);
-                }
+        pauseAsync().join();
+    }
+
+    /**
+     * 异步暂停当前MailBox的运行，返回的Future在当前这次运行结束后完成，不会阻塞调用线程
+     */
+    public CompletableFuture<Void> pauseAsync() {
+        synchronized (lockObj) {
+            pauseRequested = true;
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} pause requested, aggregateRootId: {}", getClass().getName(), aggregateRootId);
             }
+            if (!running) {
+                lastActiveTime = System.currentTimeMillis();
+                paused = true;
+                return Task.completedTask;
+            }
+            if (pauseFuture == null) {
+                pauseFuture = new CompletableFuture<>();
+            }
+            return pauseFuture;
         }
-        lastActiveTime = new Date();
-        paused = true;
     }
 
     /**
      * 恢复当前MailBox的运行，恢复后，当前MailBox又可以进行运行，需要手动调用TryRun方法来运行
      */
     public void resume() {
-        pauseRequested = false;
-        paused = false;
-        lastActiveTime = new Date();
+        synchronized (lockObj) {
+            pauseRequested = false;
+            paused = false;
+            lastActiveTime = System.currentTimeMillis();
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("{} resume requested, aggregateRootId: {}, consumingSequence: {}", getClass().getName(), aggregateRootId, consumingSequence);
         }
@@ -175,7 +230,7 @@ public class ProcessingCommandMailbox {
 
     public void resetConsumingSequence(long consumingSequence) {
         this.consumingSequence = consumingSequence;
-        lastActiveTime = new Date();
+        lastActiveTime = System.currentTimeMillis();
         if (logger.isDebugEnabled()) {
             logger.debug("{} reset consumingSequence, aggregateRootId: {}, consumingSequence: {}", getClass().getName(), aggregateRootId, consumingSequence);
         }
@@ -183,10 +238,12 @@ public class ProcessingCommandMailbox {
 
     public CompletableFuture<Void> completeMessage(ProcessingCommand message, CommandResult result) {
         try {
-            ProcessingCommand removed = messageDict.remove(message.getSequence());
-            if (removed != null) {
+            if (messageQueue.remove(message)) {
+                if (inFlightLimiter != null) {
+                    inFlightLimiter.release();
+                }
                 duplicateCommandIdDict.remove(message.getMessage().getId());
-                lastActiveTime = new Date();
+                lastActiveTime = System.currentTimeMillis();
                 return message.completeAsync(result);
             }
         } catch (Exception ex) {
@@ -196,69 +253,109 @@ public class ProcessingCommandMailbox {
     }
 
     public boolean isInactive(int timeoutSeconds) {
-        return (System.currentTimeMillis() - lastActiveTime.getTime()) >= timeoutSeconds;
-    }
-
-    private CompletableFuture<Void> processMessages() {
-        synchronized (asyncLock) {
-            lastActiveTime = new Date();
-            try {
-                processMessagesRecursion(getTotalUnHandledMessageCount(), 0);
-            } catch (Exception ex) {
-                logger.error("{} run has unknown exception, aggregateRootId: {}", getClass().getName(), aggregateRootId, ex);
-                Task.sleep(1);
-            } finally {
-                completeRun();
-            }
-        }
-        return Task.completedTask;
+        return (System.currentTimeMillis() - lastActiveTime) / 1000 >= timeoutSeconds;
     }
 
-    public void processMessagesRecursion(long totalUnHandledMessageCount, long scannedCount) {
-        if (!(totalUnHandledMessageCount > 0 && scannedCount < batchSize && !pauseRequested)) {
-            return;
-        }
-        ProcessingCommand message = getMessage(consumingSequence);
-        consumingSequence++;
-        if (message != null) {
-            if (duplicateCommandIdDict.containsKey(message.getMessage().getId())) {
-                message.setDuplicated(true);
+    private void processMessages() {
+        lastActiveTime = System.currentTimeMillis();
+        processMessages(0);
+    }
+
+    /**
+     * 循环处理一批消息，处理器同步完成时在当前线程继续处理下一条，只有处理器真正异步时才在其回调中继续；
+     * 本次运行结束时调用completeRun，保证running状态覆盖异步处理的整个过程
+     */
+    private void processMessages(long scannedCount) {
+        try {
+            long nextSequence = messageQueue.getNextSequence();
+            while (scannedCount < batchSize && !pauseRequested) {
+                if (consumingSequence >= nextSequence) {
+                    nextSequence = messageQueue.getNextSequence();
+                    if (consumingSequence >= nextSequence) {
+                        break;
+                    }
+                }
+                ProcessingCommand message = getMessage(consumingSequence);
+                consumingSequence++;
+                scannedCount++;
+                if (message == null) {
+                    continue;
+                }
+                if (duplicateCommandIdDict.containsKey(message.getMessage().getId())) {
+                    message.setDuplicated(true);
+                }
+                CompletableFuture<Void> future = messageHandler.handleAsync(message);
+                if (!future.isDone()) {
+                    long continueScannedCount = scannedCount;
+                    future.whenComplete((x, ex) -> {
+                        if (ex != null) {
+                            logHandleException(message, ex);
+                        }
+                        processMessages(continueScannedCount);
+                    });
+                    return;
+                }
+                if (future.isCompletedExceptionally()) {
+                    future.exceptionally(ex -> {
+                        logHandleException(message, ex);
+                        return null;
+                    });
+                }
             }
-            messageHandler.handleAsync(message).thenAccept(x -> {
-                processMessagesRecursion(getTotalUnHandledMessageCount(), scannedCount + 1);
-            });
-            return;
+        } catch (Exception ex) {
+            logger.error("{} run has unknown exception, aggregateRootId: {}", getClass().getName(), aggregateRootId, ex);
         }
-        processMessagesRecursion(getTotalUnHandledMessageCount(), scannedCount + 1);
+        completeRun();
     }
 
+    private void logHandleException(ProcessingCommand message, Throwable ex) {
+        logger.error("{} handle message has unknown exception, aggregateRootId: {}, messageId: {}, messageSequence: {}", getClass().getName(), aggregateRootId, message.getMessage().getId(), message.getSequence(), ex);
+    }
 
     private ProcessingCommand getMessage(long sequence) {
-        return messageDict.getOrDefault(sequence, null);
+        return messageQueue.get(sequence);
     }
 
     private void setAsRunning() {
         running = true;
     }
 
+    /**
+     * 增加使用计数，MailBox已被移除时返回false，调用方需要换一个新的MailBox
+     */
     public boolean tryUsing() {
-        return isUsing.compareAndSet(0, 1);
+        while (true) {
+            int count = usingCount.get();
+            if (count < 0) {
+                return false;
+            }
+            if (usingCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
     }
 
     public void exitUsing() {
-        isUsing.set(0);
+        usingCount.decrementAndGet();
+    }
+
+    /**
+     * 没有任何使用者时将MailBox标记为已移除，标记成功后不会再有新的使用者
+     */
+    public boolean tryMarkAsRemoved() {
+        return usingCount.compareAndSet(0, -1);
     }
 
-    public void markAsRemoved() {
-        isRemoved.set(1);
+    public void cancelRemoved() {
+        usingCount.compareAndSet(-1, 0);
     }
 
     public boolean isUsing() {
-        return isUsing.get() == 1;
+        return usingCount.get() > 0;
     }
 
     public boolean isRemoved() {
-        return isRemoved.get() == 1;
+        return usingCount.get() < 0;
     }
 
     private void setAsNotRunning() {
@@ -4,8 +4,9 @@ import org.enodeframework.commanding.ICommand;
 import org.enodeframework.commanding.ICommandContext;
 import org.enodeframework.commanding.ICommandHandlerProxy;
 import org.enodeframework.common.container.ObjectContainer;
+import org.enodeframework.common.function.Func3;
+import org.enodeframework.infrastructure.impl.MethodInvokerFactory;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -16,14 +17,14 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
 
     private Class<?> handlerType;
     private Object commandHandler;
-    private MethodHandle methodHandle;
+    private Func3<Object, Object, Object, Object> methodInvoker;
     private Method method;
 
     @Override
     public CompletableFuture<Void> handleAsync(ICommandContext context, ICommand command) {
         CompletableFuture<Void> future = new CompletableFuture<>();
         try {
-            Object result = methodHandle.invoke(getInnerObject(), context, command);
+            Object result = methodInvoker.apply(getInnerObject(), context, command);
             if (result instanceof CompletableFuture) {
                 return (CompletableFuture<Void>) result;
             }
@@ -48,11 +49,6 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -61,5 +57,6 @@ public class CommandHandlerProxy implements ICommandHandlerProxy {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.methodInvoker = MethodInvokerFactory.createInvoker2(method);
     }
 }
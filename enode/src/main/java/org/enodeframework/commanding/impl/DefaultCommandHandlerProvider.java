@@ -7,13 +7,50 @@ import org.enodeframework.commanding.ICommandHandlerProxy;
 import org.enodeframework.common.container.IObjectContainer;
 import org.enodeframework.common.container.ObjectContainer;
 import org.enodeframework.infrastructure.impl.AbstractHandlerProvider;
+import org.enodeframework.messaging.MessageHandlerData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author anruence@gmail.com
  */
 public class DefaultCommandHandlerProvider extends AbstractHandlerProvider<Class, ICommandHandlerProxy, Class> implements ICommandHandlerProvider {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultCommandHandlerProvider.class);
+    /**
+     * 命令类型到命令处理器的分发表，初始化时构建，之后只读
+     */
+    private volatile ClassValue<MessageHandlerData<ICommandHandlerProxy>> handlerTable = new CommandHandlerTable(Collections.emptyMap());
+
+    /**
+     * 初始化时校验每个命令类型只有一个处理器，不合法的命令在处理时直接返回失败
+     */
+    @Override
+    public void initialize(Set<Class<?>> componentTypes) {
+        super.initialize(componentTypes);
+        Map<Class<?>, MessageHandlerData<ICommandHandlerProxy>> handlerDataDict = new HashMap<>();
+        getMessageHandlerDict().forEach((commandType, handlerData) -> {
+            if (handlerData.listHandlers.size() > 1) {
+                logger.error("Found more than one command handler, commandType: {}, handlerTypes: {}", commandType.getName(),
+                        handlerData.listHandlers.stream().map(x -> x.getMethod().getDeclaringClass().getName()).collect(Collectors.joining("|")));
+            } else if (handlerData.listHandlers.isEmpty()) {
+                logger.error("No command handler found of command, command handler cannot be prioritized, commandType: {}", commandType.getName());
+            }
+            handlerDataDict.put(commandType, handlerData);
+        });
+        handlerTable = new CommandHandlerTable(handlerDataDict);
+    }
+
+    @Override
+    public MessageHandlerData<ICommandHandlerProxy> getHandlerData(Class<?> commandType) {
+        return handlerTable.get(commandType);
+    }
 
     @Override
     protected Class getKey(Method method) {
@@ -51,4 +88,17 @@ public class DefaultCommandHandlerProvider extends AbstractHandlerProvider<Class
     protected IObjectContainer getObjectContainer() {
         return ObjectContainer.INSTANCE;
     }
+
+    private static class CommandHandlerTable extends ClassValue<MessageHandlerData<ICommandHandlerProxy>> {
+        private final Map<Class<?>, MessageHandlerData<ICommandHandlerProxy>> handlerDataDict;
+
+        CommandHandlerTable(Map<Class<?>, MessageHandlerData<ICommandHandlerProxy>> handlerDataDict) {
+            this.handlerDataDict = handlerDataDict;
+        }
+
+        @Override
+        protected MessageHandlerData<ICommandHandlerProxy> computeValue(Class<?> commandType) {
+            return handlerDataDict.get(commandType);
+        }
+    }
 }
@@ -3,20 +3,22 @@ package org.enodeframework.commanding.impl;
 import com.google.common.base.Strings;
 import org.enodeframework.commanding.ICommandProcessor;
 import org.enodeframework.commanding.IProcessingCommandHandler;
+import org.enodeframework.commanding.IProcessingCommandQueue;
 import org.enodeframework.commanding.ProcessingCommand;
 import org.enodeframework.commanding.ProcessingCommandMailbox;
 import org.enodeframework.common.io.Task;
 import org.enodeframework.common.scheduling.IScheduleService;
+import org.enodeframework.common.scheduling.TimeoutWheel;
+import org.enodeframework.common.threading.InFlightLimiter;
+import org.enodeframework.common.threading.ShardAffinityExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
 
 /**
  * @author anruence@gmail.com
@@ -24,6 +26,10 @@ import java.util.stream.Collectors;
 public class DefaultCommandProcessor implements ICommandProcessor {
     private static final Logger logger = LoggerFactory.getLogger(DefaultCommandProcessor.class);
     private final ConcurrentMap<String, ProcessingCommandMailbox> mailboxDict;
+    /**
+     * 按最后活跃时间跟踪邮箱，清理时只检查已到期的邮箱
+     */
+    private final TimeoutWheel<ProcessingCommandMailbox> inactiveMailboxWheel;
     private final String taskName;
     private final IProcessingCommandHandler processingCommandHandler;
     private final IScheduleService scheduleService;
@@ -31,12 +37,28 @@ public class DefaultCommandProcessor implements ICommandProcessor {
     private int aggregateRootMaxInactiveSeconds = 3600 * 24 * 3;
     private int commandMailBoxPersistenceMaxBatchSize = 1000;
     private int scanExpiredAggregateIntervalMilliseconds = 5000;
+    /**
+     * 是否使用环形数组作为命令邮箱的存储，默认使用 ConcurrentHashMap
+     */
+    private boolean commandMailBoxRingBufferEnabled = false;
+    /**
+     * 全局处理中命令数量的高低水位，高水位小于等于0表示不限制
+     */
+    private int inFlightHighWatermark = 0;
+    private int inFlightLowWatermark = -1;
+    /**
+     * 单个命令邮箱处理中命令数量的高低水位，达到高水位后拒绝该邮箱的新命令直到降到低水位，高水位小于等于0表示不限制
+     */
+    private int commandMailBoxInFlightHighWatermark = 0;
+    private int commandMailBoxInFlightLowWatermark = -1;
+    private volatile InFlightLimiter inFlightLimiter;
 
     public DefaultCommandProcessor(IProcessingCommandHandler processingCommandHandler, IScheduleService scheduleService, Executor executor) {
         this.processingCommandHandler = processingCommandHandler;
         this.scheduleService = scheduleService;
         this.executor = executor;
         this.mailboxDict = new ConcurrentHashMap<>();
+        this.inactiveMailboxWheel = new TimeoutWheel<>(1000);
         this.taskName = "CleanInactiveProcessingCommandMailBoxes_" + System.nanoTime() + new Random().nextInt(10000);
     }
 
@@ -46,25 +68,40 @@ public class DefaultCommandProcessor implements ICommandProcessor {
         if (Strings.isNullOrEmpty(aggregateRootId)) {
             throw new IllegalArgumentException("aggregateRootId of command cannot be null or empty, commandId:" + processingCommand.getMessage().getId());
         }
-        ProcessingCommandMailbox mailbox = mailboxDict.computeIfAbsent(aggregateRootId, x -> new ProcessingCommandMailbox(x, processingCommandHandler, commandMailBoxPersistenceMaxBatchSize, executor));
-        long mailboxTryUsingCount = 0L;
+        ProcessingCommandMailbox mailbox = mailboxDict.computeIfAbsent(aggregateRootId, this::createMailbox);
         while (!mailbox.tryUsing()) {
-            Task.sleep(1);
-            mailboxTryUsingCount++;
-            if (mailboxTryUsingCount % 10000 == 0) {
-                logger.warn("Command mailbox try using count: {}, aggregateRootId: {}", mailboxTryUsingCount, mailbox.getAggregateRootId());
-            }
+            // 邮箱已被清理，原子地替换为新的邮箱
+            mailbox = mailboxDict.compute(aggregateRootId, (key, current) -> current == null || current.isRemoved() ? createMailbox(key) : current);
+        }
+        try {
+            mailbox.enqueueMessage(processingCommand);
+        } finally {
+            mailbox.exitUsing();
         }
-        if (mailbox.isRemoved()) {
-            mailbox = new ProcessingCommandMailbox(aggregateRootId, processingCommandHandler, commandMailBoxPersistenceMaxBatchSize, executor);
-            mailboxDict.putIfAbsent(aggregateRootId, mailbox);
+    }
+
+    private ProcessingCommandMailbox createMailbox(String aggregateRootId) {
+        IProcessingCommandQueue messageQueue = commandMailBoxRingBufferEnabled ? new RingBufferProcessingCommandQueue() : new DefaultProcessingCommandQueue();
+        ProcessingCommandMailbox mailbox = new ProcessingCommandMailbox(aggregateRootId, messageQueue, processingCommandHandler, commandMailBoxPersistenceMaxBatchSize, ShardAffinityExecutor.select(executor, aggregateRootId));
+        //MailBox的限流器只拒绝自身的命令，数量汇总到全局限流器，由全局数量决定消费端是否暂停
+        if (commandMailBoxInFlightHighWatermark > 0 || inFlightLimiter != null) {
+            mailbox.setInFlightLimiter(new InFlightLimiter(commandMailBoxInFlightHighWatermark, commandMailBoxInFlightLowWatermark, inFlightLimiter));
         }
-        mailbox.enqueueMessage(processingCommand);
-        mailbox.exitUsing();
+        inactiveMailboxWheel.schedule(mailbox, mailbox.getLastActiveTimeMillis() + aggregateRootMaxInactiveSeconds * 1000L);
+        return mailbox;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForCapacityAsync() {
+        InFlightLimiter limiter = inFlightLimiter;
+        return limiter == null ? Task.completedTask : limiter.waitAsync();
     }
 
     @Override
     public void start() {
+        if (inFlightHighWatermark > 0) {
+            inFlightLimiter = new InFlightLimiter(inFlightHighWatermark, inFlightLowWatermark, null);
+        }
         scheduleService.startTask(taskName, this::cleanInactiveMailbox,
                 scanExpiredAggregateIntervalMilliseconds,
                 scanExpiredAggregateIntervalMilliseconds);
@@ -80,18 +117,28 @@ public class DefaultCommandProcessor implements ICommandProcessor {
     }
 
     private void cleanInactiveMailbox() {
-        List<Map.Entry<String, ProcessingCommandMailbox>> inactiveList = mailboxDict.entrySet().stream()
-                .filter(entry -> isMailBoxAllowRemove(entry.getValue()))
-                .collect(Collectors.toList());
-        inactiveList.forEach(entry -> {
-            if (isMailBoxAllowRemove(entry.getValue())) {
-                ProcessingCommandMailbox removed = mailboxDict.remove(entry.getKey());
-                if (removed != null) {
-                    removed.markAsRemoved();
-                    logger.info("Removed inactive command mailbox, aggregateRootId: {}", entry.getKey());
-                }
+        inactiveMailboxWheel.advance(System.currentTimeMillis(), this::tryRemoveInactiveMailbox);
+    }
+
+    /**
+     * 移除到期的邮箱，返回下一次检查的时间点，返回0表示邮箱已经不在字典中
+     */
+    private long tryRemoveInactiveMailbox(ProcessingCommandMailbox mailbox) {
+        ProcessingCommandMailbox current = mailboxDict.computeIfPresent(mailbox.getAggregateRootId(), (key, value) -> {
+            if (value != mailbox || !isMailBoxAllowRemove(value) || !value.tryMarkAsRemoved()) {
+                return value;
             }
+            if (!isMailBoxAllowRemove(value)) {
+                value.cancelRemoved();
+                return value;
+            }
+            logger.info("Removed inactive command mailbox, aggregateRootId: {}", key);
+            return null;
         });
+        if (current != mailbox) {
+            return 0;
+        }
+        return mailbox.getLastActiveTimeMillis() + aggregateRootMaxInactiveSeconds * 1000L;
     }
 
     public int getAggregateRootMaxInactiveSeconds() {
@@ -117,4 +164,44 @@ public class DefaultCommandProcessor implements ICommandProcessor {
     public void setScanExpiredAggregateIntervalMilliseconds(int scanExpiredAggregateIntervalMilliseconds) {
         this.scanExpiredAggregateIntervalMilliseconds = scanExpiredAggregateIntervalMilliseconds;
     }
+
+    public boolean isCommandMailBoxRingBufferEnabled() {
+        return commandMailBoxRingBufferEnabled;
+    }
+
+    public void setCommandMailBoxRingBufferEnabled(boolean commandMailBoxRingBufferEnabled) {
+        this.commandMailBoxRingBufferEnabled = commandMailBoxRingBufferEnabled;
+    }
+
+    public int getInFlightHighWatermark() {
+        return inFlightHighWatermark;
+    }
+
+    public void setInFlightHighWatermark(int inFlightHighWatermark) {
+        this.inFlightHighWatermark = inFlightHighWatermark;
+    }
+
+    public int getInFlightLowWatermark() {
+        return inFlightLowWatermark;
+    }
+
+    public void setInFlightLowWatermark(int inFlightLowWatermark) {
+        this.inFlightLowWatermark = inFlightLowWatermark;
+    }
+
+    public int getCommandMailBoxInFlightHighWatermark() {
+        return commandMailBoxInFlightHighWatermark;
+    }
+
+    public void setCommandMailBoxInFlightHighWatermark(int commandMailBoxInFlightHighWatermark) {
+        this.commandMailBoxInFlightHighWatermark = commandMailBoxInFlightHighWatermark;
+    }
+
+    public int getCommandMailBoxInFlightLowWatermark() {
+        return commandMailBoxInFlightLowWatermark;
+    }
+
+    public void setCommandMailBoxInFlightLowWatermark(int commandMailBoxInFlightLowWatermark) {
+        this.commandMailBoxInFlightLowWatermark = commandMailBoxInFlightLowWatermark;
+    }
 }
@@ -9,12 +9,13 @@ import org.enodeframework.commanding.ICommandHandlerProvider;
 import org.enodeframework.commanding.ICommandHandlerProxy;
 import org.enodeframework.commanding.IProcessingCommandHandler;
 import org.enodeframework.commanding.ProcessingCommand;
+import org.enodeframework.commanding.ProcessingCommandMailbox;
 import org.enodeframework.common.SysProperties;
 import org.enodeframework.common.io.IOHelper;
-import org.enodeframework.common.io.Task;
 import org.enodeframework.common.serializing.ISerializeService;
 import org.enodeframework.domain.AggregateRootReferenceChangedException;
 import org.enodeframework.domain.IAggregateRoot;
+import org.enodeframework.domain.IAggregateSnapshotter;
 import org.enodeframework.domain.IDomainException;
 import org.enodeframework.domain.IMemoryCache;
 import org.enodeframework.eventing.DomainEventStream;
@@ -22,7 +23,6 @@ import org.enodeframework.eventing.EventCommittingContext;
 import org.enodeframework.eventing.IDomainEvent;
 import org.enodeframework.eventing.IEventCommittingService;
 import org.enodeframework.eventing.IEventStore;
-import org.enodeframework.infrastructure.IObjectProxy;
 import org.enodeframework.infrastructure.ITypeNameProvider;
 import org.enodeframework.messaging.IApplicationMessage;
 import org.enodeframework.messaging.IMessagePublisher;
@@ -32,13 +32,14 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -54,6 +55,19 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
     private final IMessagePublisher<IApplicationMessage> applicationMessagePublisher;
     private final IMessagePublisher<IDomainException> exceptionPublisher;
     private final ISerializeService serializeService;
+    /**
+     * 合并提交模式下，每个命令邮箱在本次运行中尚未提交的事件流
+     */
+    private final ConcurrentHashMap<ProcessingCommandMailbox, List<EventCommittingContext>> groupCommitContextDict = new ConcurrentHashMap<>();
+    /**
+     * 是否开启同一聚合根的命令合并提交，开启后邮箱中连续处理的命令产生的事件流会在一次运行结束或达到groupCommitMaxSize时一起提交
+     */
+    private boolean groupCommitEnabled = false;
+    private int groupCommitMaxSize = 100;
+    /**
+     * 按快照策略为接受修改后的聚合根创建快照，为null表示不创建
+     */
+    private IAggregateSnapshotter aggregateSnapshotter;
 
     public DefaultProcessingCommandHandler(IEventStore eventStore, ICommandHandlerProvider commandHandlerProvider, ITypeNameProvider typeNameProvider, IEventCommittingService eventCommittingService, IMemoryCache memoryCache, IMessagePublisher<IApplicationMessage> applicationMessagePublisher, IMessagePublisher<IDomainException> exceptionPublisher, ISerializeService serializeService) {
         this.eventStore = eventStore;
@@ -74,21 +88,18 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
             logger.error(errorMessage);
             return completeCommand(processingCommand, CommandStatus.Failed, String.class.getName(), errorMessage);
         }
-        HandlerFindResult<ICommandHandlerProxy> findResult = getCommandHandler(processingCommand, commandType -> commandHandlerProvider.getHandlers(commandType));
-        if (findResult.getFindStatus() == HandlerFindStatus.Found) {
-            return handleCommandInternal(processingCommand, findResult.getFindHandler(), 0);
-        } else if (findResult.getFindStatus() == HandlerFindStatus.TooManyHandlerData) {
-            logger.error("Found more than one command handler data, commandType:{}, commandId:{}", command.getClass().getName(), command.getId());
-            return completeCommand(processingCommand, CommandStatus.Failed, String.class.getName(), "More than one command handler data found.");
-        } else if (findResult.getFindStatus() == HandlerFindStatus.TooManyHandler) {
-            logger.error("Found more than one command handler, commandType:{}, commandId:{}", command.getClass().getName(), command.getId());
-            return completeCommand(processingCommand, CommandStatus.Failed, String.class.getName(), "More than one command handler found.");
-        } else if (findResult.getFindStatus() == HandlerFindStatus.NotFound) {
+        MessageHandlerData<ICommandHandlerProxy> handlerData = commandHandlerProvider.getHandlerData(command.getClass());
+        if (handlerData == null || handlerData.listHandlers == null || handlerData.listHandlers.isEmpty()) {
             String errorMessage = String.format("No command handler found of command. commandType:%s, commandId:%s", command.getClass().getName(), command.getId());
             logger.error(errorMessage);
             return completeCommand(processingCommand, CommandStatus.Failed, String.class.getName(), errorMessage);
         }
-        return Task.completedTask;
+        if (handlerData.listHandlers.size() > 1) {
+            logger.error("Found more than one command handler, commandType:{}, commandId:{}", command.getClass().getName(), command.getId());
+            return completeCommand(processingCommand, CommandStatus.Failed, String.class.getName(), "More than one command handler found.");
+        }
+        ICommandHandlerProxy commandHandler = handlerData.listHandlers.get(0);
+        return handleCommandInternal(processingCommand, commandHandler, 0);
     }
 
     private CompletableFuture<Void> handleCommandInternal(ProcessingCommand processingCommand, ICommandHandlerProxy commandHandler, int retryTimes) {
@@ -166,10 +177,9 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
         List<IAggregateRoot> trackedAggregateRoots = context.getTrackedAggregateRoots();
         int dirtyAggregateRootCount = 0;
         IAggregateRoot dirtyAggregateRoot = null;
-        List<IDomainEvent<?>> changedEvents = new ArrayList<>();
+        List<IDomainEvent<?>> changedEvents = Collections.emptyList();
         for (IAggregateRoot aggregateRoot : trackedAggregateRoots) {
-            List<IDomainEvent<?>> events = aggregateRoot.getChanges();
-            if (events.size() > 0) {
+            if (aggregateRoot.hasChanges()) {
                 dirtyAggregateRootCount++;
                 if (dirtyAggregateRootCount > 1) {
                     String errorMessage = String.format("Detected more than one aggregate created or modified by command. commandType:%s, commandId:%s",
@@ -179,7 +189,7 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
                     return completeCommand(processingCommand, CommandStatus.Failed, String.class.getName(), errorMessage);
                 }
                 dirtyAggregateRoot = aggregateRoot;
-                changedEvents = events;
+                changedEvents = aggregateRoot.getChanges();
             }
         }
         //如果当前command没有对任何聚合根做修改，框架仍然需要尝试获取该command之前是否有产生事件，
@@ -199,17 +209,58 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
                 new Date(),
                 changedEvents,
                 command.getItems());
+        IAggregateRoot changedAggregateRoot = dirtyAggregateRoot;
         //内存先接受聚合根的更新，需要检查聚合根引用是否已变化，如果已变化，会抛出异常
-        return memoryCache.acceptAggregateRootChanges(dirtyAggregateRoot).thenAccept(x -> {
+        return memoryCache.acceptAggregateRootChanges(changedAggregateRoot).thenAccept(x -> {
             String commandResult = processingCommand.getCommandExecuteContext().getResult();
             if (commandResult != null) {
                 processingCommand.getItems().put(SysProperties.ITEMS_COMMAND_RESULT_KEY, commandResult);
             }
+            EventCommittingContext committingContext = new EventCommittingContext(eventStream, processingCommand);
+            //聚合根刚接受修改，还在当前命令的处理线程上，此时序列化的状态与事件流的版本一致
+            if (aggregateSnapshotter != null) {
+                committingContext.setSnapshot(aggregateSnapshotter.createSnapshotIfNecessary(changedAggregateRoot));
+            }
             //提交事件流进行后续的处理
-            eventCommittingService.commitDomainEventAsync(new EventCommittingContext(eventStream, processingCommand));
+            commitEventStream(committingContext);
         });
     }
 
+    private void commitEventStream(EventCommittingContext context) {
+        ProcessingCommandMailbox mailbox = context.getProcessingCommand().getMailBox();
+        if (!groupCommitEnabled || mailbox == null) {
+            eventCommittingService.commitDomainEventAsync(context);
+            return;
+        }
+        List<EventCommittingContext> contexts = groupCommitContextDict.computeIfAbsent(mailbox, x -> new ArrayList<>());
+        contexts.add(context);
+        if (contexts.size() >= groupCommitMaxSize) {
+            flushGroupCommit(mailbox);
+        }
+    }
+
+    @Override
+    public void onRunCompleted(ProcessingCommandMailbox mailbox) {
+        if (groupCommitEnabled) {
+            flushGroupCommit(mailbox);
+        }
+    }
+
+    private void flushGroupCommit(ProcessingCommandMailbox mailbox) {
+        List<EventCommittingContext> contexts = groupCommitContextDict.remove(mailbox);
+        if (contexts == null || contexts.isEmpty()) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Group commit domain events, aggregateRootId: {}, eventStreamCount: {}", mailbox.getAggregateRootId(), contexts.size());
+        }
+        if (contexts.size() == 1) {
+            eventCommittingService.commitDomainEventAsync(contexts.get(0));
+        } else {
+            eventCommittingService.commitDomainEventsAsync(contexts);
+        }
+    }
+
     private CompletableFuture<Void> republishCommandEvents(ProcessingCommand processingCommand, int retryTimes) {
         CompletableFuture<Void> future = new CompletableFuture<>();
         ICommand command = processingCommand.getMessage();
@@ -316,67 +367,32 @@ public class DefaultProcessingCommandHandler implements IProcessingCommandHandle
         return future;
     }
 
-    private <T extends IObjectProxy> HandlerFindResult<T> getCommandHandler(ProcessingCommand processingCommand, Function<Class<?>, List<MessageHandlerData<T>>> getHandlersFunc) {
-        ICommand command = processingCommand.getMessage();
-        List<MessageHandlerData<T>> handlerDataList = getHandlersFunc.apply(command.getClass());
-        if (handlerDataList == null || handlerDataList.size() == 0) {
-            return HandlerFindResult.NotFound;
-        } else if (handlerDataList.size() > 1) {
-            return HandlerFindResult.TooManyHandlerData;
-        }
-        MessageHandlerData<T> handlerData = handlerDataList.stream().findFirst().orElse(new MessageHandlerData<>());
-        if (handlerData.listHandlers == null || handlerData.listHandlers.size() == 0) {
-            return HandlerFindResult.NotFound;
-        } else if (handlerData.listHandlers.size() > 1) {
-            return HandlerFindResult.TooManyHandler;
-        }
-        return handlerData.listHandlers.stream().findFirst()
-                .map(t -> new HandlerFindResult<>(HandlerFindStatus.Found, t))
-                .orElseGet(() -> HandlerFindResult.NotFound);
-    }
-
     private CompletableFuture<Void> completeCommand(ProcessingCommand processingCommand, CommandStatus commandStatus, String resultType, String result) {
         CommandResult commandResult = new CommandResult(commandStatus, processingCommand.getMessage().getId(), processingCommand.getMessage().getAggregateRootId(), result, resultType);
         return processingCommand.getMailBox().completeMessage(processingCommand, commandResult);
     }
 
-    enum HandlerFindStatus {
-        NotFound,
-        Found,
-        TooManyHandlerData,
-        TooManyHandler
+    public boolean isGroupCommitEnabled() {
+        return groupCommitEnabled;
     }
 
-    static class HandlerFindResult<T extends IObjectProxy> {
-        static HandlerFindResult NotFound = new HandlerFindResult<>(HandlerFindStatus.NotFound);
-        static HandlerFindResult TooManyHandlerData = new HandlerFindResult<>(HandlerFindStatus.TooManyHandlerData);
-        static HandlerFindResult TooManyHandler = new HandlerFindResult<>(HandlerFindStatus.TooManyHandler);
-        private HandlerFindStatus findStatus;
-        private T findHandler;
-
-        HandlerFindResult(HandlerFindStatus findStatus) {
-            this(findStatus, null);
-        }
-
-        public HandlerFindResult(HandlerFindStatus findStatus, T findHandler) {
-            this.findStatus = findStatus;
-            this.findHandler = findHandler;
-        }
+    public void setGroupCommitEnabled(boolean groupCommitEnabled) {
+        this.groupCommitEnabled = groupCommitEnabled;
+    }
 
-        public HandlerFindStatus getFindStatus() {
-            return findStatus;
-        }
+    public int getGroupCommitMaxSize() {
+        return groupCommitMaxSize;
+    }
 
-        public void setFindStatus(HandlerFindStatus findStatus) {
-            this.findStatus = findStatus;
-        }
+    public void setGroupCommitMaxSize(int groupCommitMaxSize) {
+        this.groupCommitMaxSize = groupCommitMaxSize;
+    }
 
-        public T getFindHandler() {
-            return findHandler;
-        }
+    public IAggregateSnapshotter getAggregateSnapshotter() {
+        return aggregateSnapshotter;
+    }
 
-        public void setFindHandler(T findHandler) {
-            this.findHandler = findHandler;
-        }
+    public void setAggregateSnapshotter(IAggregateSnapshotter aggregateSnapshotter) {
+        this.aggregateSnapshotter = aggregateSnapshotter;
     }
 }
@@ -0,0 +1,45 @@
+package org.enodeframework.commanding.impl;
+
+import org.enodeframework.commanding.IProcessingCommandQueue;
+import org.enodeframework.commanding.ProcessingCommand;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 ConcurrentHashMap 的命令队列，Sequence 对应 ProcessingCommand
+ *
+ * @author anruence@gmail.com
+ */
+public class DefaultProcessingCommandQueue implements IProcessingCommandQueue {
+    private final Object lockObj = new Object();
+    private final ConcurrentHashMap<Long, ProcessingCommand> messageDict = new ConcurrentHashMap<>();
+    private volatile long nextSequence;
+
+    @Override
+    public boolean enqueue(ProcessingCommand message) {
+        synchronized (lockObj) {
+            message.setSequence(nextSequence);
+            // If the specified key is not already associated with a value (or is mapped to null) associates it with the given value and returns null, else returns the current value.
+            if (messageDict.putIfAbsent(message.getSequence(), message) == null) {
+                nextSequence++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public ProcessingCommand get(long sequence) {
+        return messageDict.get(sequence);
+    }
+
+    @Override
+    public boolean remove(ProcessingCommand message) {
+        return messageDict.remove(message.getSequence(), message);
+    }
+
+    @Override
+    public long getNextSequence() {
+        return nextSequence;
+    }
+}
@@ -0,0 +1,212 @@
+package org.enodeframework.commanding.impl;
+
+import org.enodeframework.commanding.IProcessingCommandQueue;
+import org.enodeframework.commanding.ProcessingCommand;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于可扩容环形数组的命令队列，Sequence 直接映射到数组下标，避免 Long 装箱和 Map 节点分配。
+ * <p>
+ * 多个生产者无锁放入：先检查 Sequence 对应的槽位空闲，再 CAS 抢占 Sequence，写入命令后写入槽位的发布戳（即该 Sequence）。
+ * 已发布的 Sequence 连续时推进发布游标，{@link #getNextSequence()} 返回游标，消费方只会读到已发布的命令；
+ * 前面的生产者还未发布时，后面的生产者直接返回，由前面的生产者发布后一并推进游标。
+ * <p>
+ * 槽位仍被未完成的命令占用时扩容：扩容的生产者封住当前数组的 Sequence 分配，等已抢占的 Sequence 全部发布后，
+ * 把旧数组的所有槽位标记为 MOVED 并复制到两倍大小的新数组；其他生产者在封住期间等待新数组发布，
+ * 读取方和完成方遇到 MOVED 时同样等待新数组发布后重试。数组达到最大容量时放入失败，不会占用 Sequence。
+ *
+ * @author anruence@gmail.com
+ */
+public class RingBufferProcessingCommandQueue implements IProcessingCommandQueue {
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final long SEALED = Long.MIN_VALUE;
+    private static final ProcessingCommand MOVED = new ProcessingCommand(null, null, null);
+    private final int maximumCapacity;
+    /**
+     * 发布游标，小于它的 Sequence 都已发布
+     */
+    private final AtomicLong publishedSequence = new AtomicLong();
+    private volatile Table table;
+
+    public RingBufferProcessingCommandQueue() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public RingBufferProcessingCommandQueue(int initialCapacity) {
+        this(initialCapacity, MAXIMUM_CAPACITY);
+    }
+
+    public RingBufferProcessingCommandQueue(int initialCapacity, int maximumCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive, initialCapacity: " + initialCapacity);
+        }
+        if (maximumCapacity < initialCapacity) {
+            throw new IllegalArgumentException("maximumCapacity must not be less than initialCapacity, maximumCapacity: " + maximumCapacity);
+        }
+        this.maximumCapacity = tableSizeFor(maximumCapacity);
+        this.table = new Table(tableSizeFor(initialCapacity), 0);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(capacity - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    @Override
+    public boolean enqueue(ProcessingCommand message) {
+        while (true) {
+            Table current = table;
+            long sequence = current.claimSequence.get();
+            if (sequence < 0) {
+                awaitResized(current);
+                continue;
+            }
+            int index = current.indexOf(sequence);
+            if (!current.isFree(index, sequence)) {
+                if (current.length() >= maximumCapacity) {
+                    return false;
+                }
+                grow(current, sequence);
+                continue;
+            }
+            if (!current.claimSequence.compareAndSet(sequence, sequence + 1)) {
+                continue;
+            }
+            message.setSequence(sequence);
+            current.slots.set(index, message);
+            current.stamps.set(index, sequence);
+            advancePublishedSequence();
+            return true;
+        }
+    }
+
+    @Override
+    public ProcessingCommand get(long sequence) {
+        Table current = table;
+        while (true) {
+            ProcessingCommand message = current.slots.get(current.indexOf(sequence));
+            if (message == MOVED) {
+                current = awaitResized(current);
+                continue;
+            }
+            if (message != null && message.getSequence() == sequence) {
+                return message;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public boolean remove(ProcessingCommand message) {
+        long sequence = message.getSequence();
+        Table current = table;
+        while (true) {
+            int index = current.indexOf(sequence);
+            if (current.slots.compareAndSet(index, message, null)) {
+                return true;
+            }
+            if (current.slots.get(index) != MOVED) {
+                return false;
+            }
+            current = awaitResized(current);
+        }
+    }
+
+    @Override
+    public long getNextSequence() {
+        return publishedSequence.get();
+    }
+
+    public int getCapacity() {
+        return table.length();
+    }
+
+    /**
+     * 从当前游标开始，槽位的发布戳等于游标时推进一位；任何生产者都可以帮助推进之前生产者发布的 Sequence
+     */
+    private void advancePublishedSequence() {
+        while (true) {
+            long sequence = publishedSequence.get();
+            Table current = table;
+            if (current.stamps.get(current.indexOf(sequence)) != sequence) {
+                return;
+            }
+            publishedSequence.compareAndSet(sequence, sequence + 1);
+        }
+    }
+
+    /**
+     * 在 sequence 处封住当前数组的分配，等待之前抢占的 Sequence 全部发布后复制到新数组；封住失败说明有其他生产者抢先，由调用方重试
+     */
+    private void grow(Table current, long sequence) {
+        if (!current.claimSequence.compareAndSet(sequence, sequence | SEALED)) {
+            return;
+        }
+        while (publishedSequence.get() != sequence) {
+            Thread.yield();
+        }
+        int length = current.length();
+        Table resized = new Table(length << 1, sequence);
+        for (int i = 0; i < length; i++) {
+            ProcessingCommand message = current.slots.getAndSet(i, MOVED);
+            if (message != null) {
+                resized.slots.set(resized.indexOf(message.getSequence()), message);
+            }
+        }
+        table = resized;
+    }
+
+    private Table awaitResized(Table current) {
+        Table resized;
+        while ((resized = table) == current) {
+            Thread.yield();
+        }
+        return resized;
+    }
+
+    /**
+     * 一代数组：命令槽位、每个槽位最后发布的 Sequence，以及本代数组的 Sequence 分配；扩容时整体替换
+     */
+    private static final class Table {
+        private final AtomicReferenceArray<ProcessingCommand> slots;
+        private final AtomicLongArray stamps;
+        /**
+         * 下一个待分配的 Sequence，最高位为1表示已封住，正在扩容
+         */
+        private final AtomicLong claimSequence;
+        private final int mask;
+
+        /**
+         * 从 startSequence 开始分配，每个槽位的发布戳初始化为上一圈对应的 Sequence，使其在未被占用时可以直接分配
+         */
+        Table(int length, long startSequence) {
+            this.slots = new AtomicReferenceArray<>(length);
+            this.stamps = new AtomicLongArray(length);
+            this.claimSequence = new AtomicLong(startSequence);
+            this.mask = length - 1;
+            for (int i = 0; i < length; i++) {
+                long sequence = startSequence + ((i - startSequence) & mask);
+                stamps.set(i, sequence - length);
+            }
+        }
+
+        int length() {
+            return slots.length();
+        }
+
+        int indexOf(long sequence) {
+            return (int) (sequence & mask);
+        }
+
+        /**
+         * 上一圈的 Sequence 已发布且命令已完成时，槽位可以分配给 sequence
+         */
+        boolean isFree(int index, long sequence) {
+            return stamps.get(index) == sequence - length() && slots.get(index) == null;
+        }
+    }
+}
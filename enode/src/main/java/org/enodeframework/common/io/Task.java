@@ -4,6 +4,9 @@ import org.enodeframework.common.exception.EnodeInterruptException;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author anruence@gmail.com
@@ -24,6 +27,23 @@ public class Task {
         return future.join();
     }
 
+    /**
+     * 最多等待timeoutMillis毫秒，超时返回false，future异常完成时抛出异常
+     */
+    public static boolean await(CompletableFuture<?> future, long timeoutMillis) {
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            throw new EnodeInterruptException(e);
+        } catch (ExecutionException e) {
+            future.join();
+            return true;
+        }
+    }
+
     public static void sleep(long sleepMilliseconds) {
         try {
             Thread.sleep(sleepMilliseconds);
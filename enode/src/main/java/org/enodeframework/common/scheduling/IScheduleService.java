@@ -1,9 +1,24 @@
 package org.enodeframework.common.scheduling;
 
 import org.enodeframework.common.function.Action;
+import org.enodeframework.common.utilities.ObjectId;
+
+import java.util.concurrent.TimeUnit;
 
 public interface IScheduleService {
     void startTask(String name, Action action, int dueTime, int period);
 
     void stopTask(String name);
+
+    /**
+     * 延迟执行一次性任务；默认通过startTask注册一个周期足够长的任务，第一次执行时将其停止
+     */
+    default void schedule(Action action, long delay, TimeUnit unit) {
+        String name = "OneTimeTask_" + ObjectId.generateNewStringId();
+        int dueTime = (int) Math.min(Integer.MAX_VALUE, Math.max(0, unit.toMillis(delay)));
+        startTask(name, () -> {
+            stopTask(name);
+            action.apply();
+        }, dueTime, Integer.MAX_VALUE);
+    }
 }
@@ -48,6 +48,24 @@ public class ScheduleService implements IScheduleService {
         }
     }
 
+    @Override
+    public void schedule(Action action, long delay, TimeUnit unit) {
+        scheduledThreadPool.schedule(() -> {
+            try {
+                action.apply();
+            } catch (Exception ex) {
+                logger.error("Scheduled action has exception, delay: {} {}", delay, unit, ex);
+            }
+        }, delay, unit);
+    }
+
+    public void shutdown() {
+        synchronized (lockObject) {
+            taskDict.clear();
+        }
+        scheduledThreadPool.shutdown();
+    }
+
     static class TimerBasedTask {
         private String name;
         private Action action;
@@ -0,0 +1,82 @@
+package org.enodeframework.common.scheduling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按到期时间分桶的超时轮，每个桶对应一个扫描周期；每次推进只处理已到期的桶，
+ * 开销与到期的元素数量成正比，而不是与元素总数成正比。
+ * <p>
+ * 元素被访问时不需要调整位置，只需要更新自身的最后活跃时间；桶到期时由处理函数根据最后活跃时间决定移除或者重新放入。
+ *
+ * @author anruence@gmail.com
+ */
+public class TimeoutWheel<T> {
+    private static final Logger logger = LoggerFactory.getLogger(TimeoutWheel.class);
+    private final Object lockObj = new Object();
+    private final TreeMap<Long, List<T>> buckets = new TreeMap<>();
+    private final long tickMilliseconds;
+    private int size;
+
+    public TimeoutWheel(long tickMilliseconds) {
+        if (tickMilliseconds <= 0) {
+            throw new IllegalArgumentException("tickMilliseconds must be positive, tickMilliseconds: " + tickMilliseconds);
+        }
+        this.tickMilliseconds = tickMilliseconds;
+    }
+
+    /**
+     * 在指定的时间点（毫秒）之后处理该元素
+     */
+    public void schedule(T element, long deadlineMilliseconds) {
+        long tick = (deadlineMilliseconds + tickMilliseconds - 1) / tickMilliseconds;
+        synchronized (lockObj) {
+            buckets.computeIfAbsent(tick, x -> new ArrayList<>()).add(element);
+            size++;
+        }
+    }
+
+    /**
+     * 处理所有已到期的元素，处理函数返回下一次需要处理的时间点（毫秒），小于等于0表示不再跟踪该元素
+     */
+    public void advance(long nowMilliseconds, ToLongFunction<T> expiredHandler) {
+        long currentTick = nowMilliseconds / tickMilliseconds;
+        while (true) {
+            List<T> expiredList;
+            synchronized (lockObj) {
+                Map.Entry<Long, List<T>> first = buckets.firstEntry();
+                if (first == null || first.getKey() > currentTick) {
+                    return;
+                }
+                buckets.remove(first.getKey());
+                expiredList = first.getValue();
+                size -= expiredList.size();
+            }
+            for (T element : expiredList) {
+                long nextDeadline;
+                try {
+                    nextDeadline = expiredHandler.applyAsLong(element);
+                } catch (Exception ex) {
+                    logger.error("Handle expired element has unknown exception, element: {}", element, ex);
+                    nextDeadline = nowMilliseconds + tickMilliseconds;
+                }
+                if (nextDeadline > 0) {
+                    // 至少推迟到下一个周期，避免同一次推进中重复处理
+                    schedule(element, Math.max(nextDeadline, (currentTick + 1) * tickMilliseconds));
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (lockObj) {
+            return size;
+        }
+    }
+}
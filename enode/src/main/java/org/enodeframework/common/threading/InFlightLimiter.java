@@ -0,0 +1,104 @@
+package org.enodeframework.common.threading;
+
+import org.enodeframework.common.io.Task;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 处理中消息数量的高低水位控制：数量达到高水位时进入暂停状态，降到低水位时恢复。
+ * 子限流器（如单个MailBox）的数量计入父限流器（全局），但暂停状态只由各自的数量决定：
+ * 全局限流器暂停时消费端通过 {@link #waitAsync()} 等待恢复，单个MailBox暂停时通过 {@link #tryAcquire()} 只拒绝该MailBox的消息。
+ *
+ * @author anruence@gmail.com
+ */
+public class InFlightLimiter {
+    private final Object lockObj = new Object();
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final InFlightLimiter parent;
+    private final AtomicInteger inFlightCount = new AtomicInteger(0);
+    private volatile boolean paused;
+    private CompletableFuture<Void> resumeFuture = Task.completedTask;
+
+    /**
+     * @param highWatermark 小于等于0表示不限制自身数量，只汇总子限流器的数量
+     * @param lowWatermark  小于0或不小于高水位时取高水位的一半
+     */
+    public InFlightLimiter(int highWatermark, int lowWatermark, InFlightLimiter parent) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark < 0 || lowWatermark >= highWatermark ? highWatermark / 2 : lowWatermark;
+        this.parent = parent;
+    }
+
+    public void acquire() {
+        int count = inFlightCount.incrementAndGet();
+        if (parent != null) {
+            parent.acquire();
+        }
+        if (!paused && highWatermark > 0 && count >= highWatermark) {
+            updateState();
+        }
+    }
+
+    /**
+     * 处于暂停状态时返回false且不计数，否则同acquire
+     */
+    public boolean tryAcquire() {
+        if (paused) {
+            return false;
+        }
+        acquire();
+        return true;
+    }
+
+    public void release() {
+        int count = inFlightCount.decrementAndGet();
+        if (parent != null) {
+            parent.release();
+        }
+        if (paused && count <= lowWatermark) {
+            updateState();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    /**
+     * 未暂停时返回已完成的Future，否则返回恢复时完成的Future
+     */
+    public CompletableFuture<Void> waitAsync() {
+        if (!paused) {
+            return Task.completedTask;
+        }
+        synchronized (lockObj) {
+            return resumeFuture;
+        }
+    }
+
+    private void updateState() {
+        CompletableFuture<Void> completedFuture = null;
+        synchronized (lockObj) {
+            int count = inFlightCount.get();
+            boolean shouldPause = highWatermark > 0 && (paused ? count > lowWatermark : count >= highWatermark);
+            if (shouldPause != paused) {
+                paused = shouldPause;
+                if (shouldPause) {
+                    resumeFuture = new CompletableFuture<>();
+                } else {
+                    completedFuture = resumeFuture;
+                    resumeFuture = Task.completedTask;
+                }
+            }
+        }
+        if (completedFuture != null) {
+            completedFuture.complete(null);
+        }
+    }
+}
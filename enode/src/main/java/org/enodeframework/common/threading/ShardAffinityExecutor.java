@@ -0,0 +1,173 @@
+package org.enodeframework.common.threading;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按分片键固定线程的执行器，每个工作线程拥有独立的无锁任务队列；
+ * 同一个聚合根的MailBox总是在同一个线程上运行，避免跨线程切换，同时保持聚合根在内存中的缓存局部性。
+ * <p>
+ * 运行在工作线程上的任务不能阻塞等待（包括休眠），否则会阻塞同一分片上的所有MailBox。
+ * 工作线程是守护线程；shutdown后不再接受其他线程提交的任务，工作线程执行完队列中已有的任务后退出。
+ *
+ * @author anruence@gmail.com
+ */
+public class ShardAffinityExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(ShardAffinityExecutor.class);
+    private final AffinityWorker[] workers;
+    private final AtomicInteger roundRobin = new AtomicInteger(0);
+    private volatile boolean shutdown;
+
+    public ShardAffinityExecutor(String threadNamePrefix) {
+        this(Runtime.getRuntime().availableProcessors(), threadNamePrefix);
+    }
+
+    public ShardAffinityExecutor(int workerCount, String threadNamePrefix) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive, workerCount: " + workerCount);
+        }
+        this.workers = new AffinityWorker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new AffinityWorker(threadNamePrefix + (i + 1));
+        }
+        for (AffinityWorker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * 如果给定的执行器是分片执行器，返回分片键对应的工作线程，否则原样返回
+     */
+    public static Executor select(Executor executor, Object shardKey) {
+        if (executor instanceof ShardAffinityExecutor) {
+            return ((ShardAffinityExecutor) executor).select(shardKey);
+        }
+        return executor;
+    }
+
+    /**
+     * 返回分片键固定对应的工作线程
+     */
+    public Executor select(Object shardKey) {
+        int hash = shardKey.hashCode();
+        hash ^= (hash >>> 16);
+        return workers[(hash & Integer.MAX_VALUE) % workers.length];
+    }
+
+    /**
+     * 没有分片键的任务：在工作线程上提交时留在当前线程，否则轮询分配
+     */
+    @Override
+    public void execute(Runnable command) {
+        Thread current = Thread.currentThread();
+        for (AffinityWorker worker : workers) {
+            if (worker.thread == current) {
+                worker.execute(command);
+                return;
+            }
+        }
+        workers[(roundRobin.getAndIncrement() & Integer.MAX_VALUE) % workers.length].execute(command);
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * 停止接受新任务，已提交的任务以及这些任务在工作线程上继续提交的任务会被执行完
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (AffinityWorker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+        logger.info("Shard affinity executor shutdown, workerCount: {}", workers.length);
+    }
+
+    /**
+     * 等待所有工作线程执行完剩余任务并退出，超时返回false
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (AffinityWorker worker : workers) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(worker.thread, remainingNanos);
+            }
+            if (worker.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class AffinityWorker implements Executor, Runnable {
+        private final ConcurrentLinkedQueue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean parked;
+        private volatile boolean terminated;
+
+        AffinityWorker(String threadName) {
+            this.thread = new Thread(this, threadName);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            // 关闭后仍允许工作线程上正在排空的任务继续提交后续任务
+            if (shutdown && Thread.currentThread() != thread) {
+                throw new RejectedExecutionException("ShardAffinityExecutor has been shutdown.");
+            }
+            taskQueue.offer(command);
+            if (terminated && Thread.currentThread() != thread) {
+                // 工作线程已经退出，没有被最后一次排空取走的任务只能拒绝
+                if (taskQueue.remove(command)) {
+                    throw new RejectedExecutionException("ShardAffinityExecutor has been terminated.");
+                }
+                return;
+            }
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task = taskQueue.poll();
+                if (task == null) {
+                    if (shutdown) {
+                        break;
+                    }
+                    parked = true;
+                    if (taskQueue.isEmpty() && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    continue;
+                }
+                runTask(task);
+            }
+            terminated = true;
+            Runnable task;
+            while ((task = taskQueue.poll()) != null) {
+                runTask(task);
+            }
+        }
+
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Throwable ex) {
+                logger.error("Shard affinity worker has unknown exception, threadName: {}", thread.getName(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.enodeframework.common.utilities;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 不可变的一致性哈希环，每个节点对应多个虚拟节点；节点数量变化时只有约 1/n 的Key会改变归属。
+ * 对字符串Key的哈希直接遍历字符计算，不产生临时对象。
+ *
+ * @author anruence@gmail.com
+ */
+public class ConsistentHashRing<T> {
+    private static final int DEFAULT_VIRTUAL_NODE_COUNT = 160;
+    private final List<T> nodes;
+    private final int[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(List<T> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODE_COUNT);
+    }
+
+    /**
+     * 虚拟节点的位置只由节点在列表中的下标决定，相同下标的节点在不同的环中位置相同
+     */
+    public ConsistentHashRing(List<T> nodes, int virtualNodeCount) {
+        if (nodes == null || nodes.isEmpty()) {
+            throw new IllegalArgumentException("nodes cannot be empty");
+        }
+        if (virtualNodeCount <= 0) {
+            throw new IllegalArgumentException("virtualNodeCount must be positive, virtualNodeCount: " + virtualNodeCount);
+        }
+        this.nodes = nodes;
+        int count = nodes.size() * virtualNodeCount;
+        long[] sorted = new long[count];
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int v = 0; v < virtualNodeCount; v++) {
+                int point = mix(i * 0x01000193 ^ (v + 1) * 0x9E3779B9);
+                // 高32位为位置，低32位为节点下标，排序后位置相同时按下标确定归属
+                sorted[i * virtualNodeCount + v] = ((long) point << 32) | i;
+            }
+        }
+        Arrays.sort(sorted);
+        this.points = new int[count];
+        this.owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = (int) (sorted[i] >> 32);
+            owners[i] = (int) sorted[i];
+        }
+    }
+
+    /**
+     * 字符串的哈希，结果与 String.hashCode 的分布无关
+     */
+    public static int hash(String key) {
+        int hash = 0x811C9DC5;
+        for (int i = 0, length = key.length(); i < length; i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    public T select(String key) {
+        return nodes.get(selectIndex(hash(key)));
+    }
+
+    /**
+     * 返回哈希值顺时针方向第一个虚拟节点对应的节点下标
+     */
+    public int selectIndex(int hash) {
+        int low = 0;
+        int high = points.length - 1;
+        if (hash > points[high]) {
+            return owners[0];
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points[mid] < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low];
+    }
+
+    public List<T> getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,236 @@
+package org.enodeframework.common.utilities;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * W-TinyLFU淘汰策略，只跟踪Key和权重，不保存值：新Key先进入占总容量1%的窗口LRU，
+ * 从窗口淘汰时与主区（SLRU，保护区占80%）最久未访问的Key比较访问频率，频率更高的一方留下；
+ * 只访问一次的Key因此很难挤掉经常访问的Key。
+ * <p>
+ * 读操作只在能立即获得锁时调整顺序，竞争时丢弃本次记录；被淘汰的Key在持有锁时交给淘汰回调，回调中不能再调用本策略。
+ *
+ * @author anruence@gmail.com
+ */
+public class WindowTinyLfuPolicy<K> {
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long maximumWeight;
+    private final long maxWindowWeight;
+    private final long maxProtectedWeight;
+    private final FrequencySketch sketch;
+    private final Consumer<K> evictionListener;
+    private final Map<K, Node> nodeDict = new HashMap<>();
+    /**
+     * 各区按从最久未访问到最近访问的顺序保存
+     */
+    private final LinkedHashMap<K, Node> windowDict = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node> probationDict = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node> protectedDict = new LinkedHashMap<>();
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    /**
+     * @param maximumWeight    所有Key的权重之和的上限，权重都为1时即为最大Key数量
+     * @param evictionListener 被淘汰的Key的回调
+     */
+    public WindowTinyLfuPolicy(long maximumWeight, Consumer<K> evictionListener) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight must be positive, maximumWeight: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.maxWindowWeight = Math.max(1, maximumWeight / 100);
+        this.maxProtectedWeight = (long) ((maximumWeight - maxWindowWeight) * 0.8);
+        this.sketch = new FrequencySketch(maximumWeight);
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * 记录一次读取，锁被占用时放弃本次记录
+     */
+    public void recordAccess(K key) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Node node = nodeDict.get(key);
+            if (node != null) {
+                sketch.increment(key);
+                onAccess(key, node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次写入：Key不存在时加入窗口，存在时更新其权重并视为一次访问；之后淘汰超出上限的Key
+     */
+    public void recordWrite(K key, int weight) {
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Node node = nodeDict.get(key);
+            if (node == null) {
+                node = new Node(weight);
+                nodeDict.put(key, node);
+                windowDict.put(key, node);
+                windowWeight += weight;
+            } else {
+                addWeight(node, weight - node.weight);
+                node.weight = weight;
+                onAccess(key, node);
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.lock();
+        try {
+            Node node = nodeDict.remove(key);
+            if (node != null) {
+                regionOf(node).remove(key);
+                addWeight(node, -node.weight);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return nodeDict.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return windowWeight + probationWeight + protectedWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    private void onAccess(K key, Node node) {
+        if (node.region == PROBATION) {
+            // 试用区被再次访问的Key晋升到保护区，保护区超出上限时把最久未访问的Key降回试用区
+            probationDict.remove(key);
+            probationWeight -= node.weight;
+            node.region = PROTECTED;
+            protectedDict.put(key, node);
+            protectedWeight += node.weight;
+            while (protectedWeight > maxProtectedWeight && protectedDict.size() > 1) {
+                Map.Entry<K, Node> eldest = removeEldest(protectedDict);
+                protectedWeight -= eldest.getValue().weight;
+                eldest.getValue().region = PROBATION;
+                probationDict.put(eldest.getKey(), eldest.getValue());
+                probationWeight += eldest.getValue().weight;
+            }
+        } else {
+            LinkedHashMap<K, Node> region = regionOf(node);
+            region.remove(key);
+            region.put(key, node);
+        }
+    }
+
+    private void evict() {
+        while (windowWeight > maxWindowWeight && !windowDict.isEmpty()) {
+            Map.Entry<K, Node> candidate = removeEldest(windowDict);
+            windowWeight -= candidate.getValue().weight;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+        // 主区中的Key权重变大时也可能超出上限
+        while (windowWeight + probationWeight + protectedWeight > maximumWeight) {
+            LinkedHashMap<K, Node> region = !probationDict.isEmpty() ? probationDict : !protectedDict.isEmpty() ? protectedDict : windowDict;
+            if (region.isEmpty()) {
+                return;
+            }
+            Map.Entry<K, Node> victim = removeEldest(region);
+            addWeight(victim.getValue(), -victim.getValue().weight);
+            evictKey(victim.getKey());
+        }
+    }
+
+    /**
+     * 从窗口淘汰的Key在主区有空间时直接进入试用区，否则与主区最久未访问的Key比较频率
+     */
+    private void admit(K candidateKey, Node candidate) {
+        long maxMainWeight = maximumWeight - maxWindowWeight;
+        int candidateFrequency = sketch.frequency(candidateKey);
+        while (probationWeight + protectedWeight + candidate.weight > maxMainWeight) {
+            LinkedHashMap<K, Node> region = !probationDict.isEmpty() ? probationDict : protectedDict;
+            if (region.isEmpty() || candidateFrequency <= sketch.frequency(eldestKey(region))) {
+                evictKey(candidateKey);
+                return;
+            }
+            Map.Entry<K, Node> victim = removeEldest(region);
+            addWeight(victim.getValue(), -victim.getValue().weight);
+            evictKey(victim.getKey());
+        }
+        candidate.region = PROBATION;
+        probationDict.put(candidateKey, candidate);
+        probationWeight += candidate.weight;
+    }
+
+    private void evictKey(K key) {
+        nodeDict.remove(key);
+        evictionListener.accept(key);
+    }
+
+    private void addWeight(Node node, long delta) {
+        if (node.region == WINDOW) {
+            windowWeight += delta;
+        } else if (node.region == PROBATION) {
+            probationWeight += delta;
+        } else {
+            protectedWeight += delta;
+        }
+    }
+
+    private LinkedHashMap<K, Node> regionOf(Node node) {
+        if (node.region == WINDOW) {
+            return windowDict;
+        }
+        return node.region == PROBATION ? probationDict : protectedDict;
+    }
+
+    private K eldestKey(LinkedHashMap<K, Node> region) {
+        return region.keySet().iterator().next();
+    }
+
+    private Map.Entry<K, Node> removeEldest(LinkedHashMap<K, Node> region) {
+        Iterator<Map.Entry<K, Node>> iterator = region.entrySet().iterator();
+        Map.Entry<K, Node> eldest = iterator.next();
+        Map.Entry<K, Node> entry = new AbstractMap.SimpleImmutableEntry<>(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return entry;
+    }
+
+    private static class Node {
+        private int weight;
+        private byte region = WINDOW;
+
+        Node(int weight) {
+            this.weight = weight;
+        }
+    }
+}
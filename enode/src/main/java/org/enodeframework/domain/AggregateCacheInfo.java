@@ -1,26 +1,40 @@
 package org.enodeframework.domain;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * @author anruence@gmail.com
  */
 public class AggregateCacheInfo {
-    private IAggregateRoot aggregateRoot;
-    private Date lastUpdateTime;
+    private static final AtomicReferenceFieldUpdater<AggregateCacheInfo, IAggregateRoot> AGGREGATE_ROOT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(AggregateCacheInfo.class, IAggregateRoot.class, "aggregateRoot");
+    private volatile IAggregateRoot aggregateRoot;
+    private volatile long lastUpdateTime;
 
     public AggregateCacheInfo(IAggregateRoot aggregateRoot) {
         this.aggregateRoot = aggregateRoot;
-        this.lastUpdateTime = new Date();
+        this.lastUpdateTime = System.currentTimeMillis();
     }
 
     public void updateAggregateRoot(IAggregateRoot aggregateRoot) {
         this.aggregateRoot = aggregateRoot;
-        this.lastUpdateTime = new Date();
+        this.lastUpdateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 当前缓存的聚合根仍是expectedAggregateRoot时替换为aggregateRoot，否则返回false，说明缓存已被其他线程重置
+     */
+    public boolean compareAndUpdateAggregateRoot(IAggregateRoot expectedAggregateRoot, IAggregateRoot aggregateRoot) {
+        if (!AGGREGATE_ROOT_UPDATER.compareAndSet(this, expectedAggregateRoot, aggregateRoot)) {
+            return false;
+        }
+        this.lastUpdateTime = System.currentTimeMillis();
+        return true;
     }
 
     public boolean isExpired(int timeoutSeconds) {
-        return ((System.currentTimeMillis() - lastUpdateTime.getTime())) / 1000 >= timeoutSeconds;
+        return (System.currentTimeMillis() - lastUpdateTime) / 1000 >= timeoutSeconds;
     }
 
     public IAggregateRoot getAggregateRoot() {
@@ -32,10 +46,14 @@ public class AggregateCacheInfo {
     }
 
     public Date getLastUpdateTime() {
-        return lastUpdateTime;
+        return new Date(lastUpdateTime);
     }
 
     public void setLastUpdateTime(Date lastUpdateTime) {
-        this.lastUpdateTime = lastUpdateTime;
+        this.lastUpdateTime = lastUpdateTime.getTime();
+    }
+
+    public long getLastUpdateTimeMillis() {
+        return lastUpdateTime;
     }
 }
@@ -1,6 +1,5 @@
 package org.enodeframework.domain;
 
-import com.google.common.collect.Lists;
 import org.enodeframework.common.container.ObjectContainer;
 import org.enodeframework.common.exception.HandlerNotFoundException;
 import org.enodeframework.common.function.Action2;
@@ -9,9 +8,8 @@ import org.enodeframework.eventing.DomainEventStream;
 import org.enodeframework.eventing.IDomainEvent;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * Represents an abstract base aggregate root.
@@ -25,12 +23,14 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
     private static IAggregateRootInternalHandlerProvider aggregateRootInternalHandlerProvider;
     protected TAggregateRootId id;
     protected int version;
-    private List<IDomainEvent<?>> emptyEvents = new ArrayList<>();
-    private Queue<IDomainEvent<?>> uncommittedEvents;
+    /**
+     * 未提交的事件，没有修改时为null；聚合根由命令MailBox单线程修改，不需要并发容器。
+     * 提交时整体丢弃而不是清空，之前通过getChanges返回的只读视图之后不再变化
+     */
+    private List<IDomainEvent<?>> uncommittedEvents;
+    private List<IDomainEvent<?>> uncommittedEventsView;
 
     protected AggregateRoot() {
-        uncommittedEvents = new ConcurrentLinkedDeque<IDomainEvent<?>>() {
-        };
     }
 
     protected AggregateRoot(TAggregateRootId id) {
@@ -82,10 +82,14 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
 
     private void appendUncommittedEvent(IDomainEvent<TAggregateRootId> domainEvent) {
         if (uncommittedEvents == null) {
-            uncommittedEvents = new ConcurrentLinkedDeque<>();
+            uncommittedEvents = new ArrayList<>(2);
+            uncommittedEventsView = Collections.unmodifiableList(uncommittedEvents);
         }
-        if (uncommittedEvents.stream().anyMatch(x -> x.getClass().equals(domainEvent.getClass()))) {
-            throw new UnsupportedOperationException(String.format("Cannot apply duplicated domain event type: %s, current aggregateRoot type: %s, id: %s", domainEvent.getClass(), this.getClass().getName(), id));
+        // 一个命令产生的事件很少，直接比较类型，不为每个命令分配类型集合
+        for (int i = 0; i < uncommittedEvents.size(); i++) {
+            if (uncommittedEvents.get(i).getClass() == domainEvent.getClass()) {
+                throw new UnsupportedOperationException(String.format("Cannot apply duplicated domain event type: %s, current aggregateRoot type: %s, id: %s", domainEvent.getClass(), this.getClass().getName(), id));
+            }
         }
         uncommittedEvents.add(domainEvent);
     }
@@ -109,20 +113,29 @@ public abstract class AggregateRoot<TAggregateRootId> implements IAggregateRoot
         return version;
     }
 
+    /**
+     * 返回未提交事件的只读视图，不复制
+     */
     @Override
     public List<IDomainEvent<?>> getChanges() {
         if (uncommittedEvents == null) {
-            return emptyEvents;
+            return Collections.emptyList();
         }
-        return Lists.newArrayList(uncommittedEvents);
+        return uncommittedEventsView;
+    }
+
+    @Override
+    public boolean hasChanges() {
+        return uncommittedEvents != null && !uncommittedEvents.isEmpty();
     }
 
     @Override
     public void acceptChanges() {
-        if (uncommittedEvents != null && !uncommittedEvents.isEmpty()) {
-            version = uncommittedEvents.peek().getVersion();
-            uncommittedEvents.clear();
+        if (hasChanges()) {
+            version = uncommittedEvents.get(0).getVersion();
         }
+        uncommittedEvents = null;
+        uncommittedEventsView = null;
     }
 
     @Override
@@ -0,0 +1,108 @@
+package org.enodeframework.domain;
+
+import java.util.Date;
+
+/**
+ * 聚合根快照：聚合根在某个版本时序列化后的状态，恢复时先反序列化快照，再回放该版本之后的事件
+ *
+ * @author anruence@gmail.com
+ */
+public class AggregateSnapshot {
+    private String aggregateRootId;
+    private String aggregateRootTypeName;
+    /**
+     * 快照对应的聚合根版本，该版本的事件一定已经持久化
+     */
+    private int version;
+    /**
+     * 序列化格式的版本，与当前格式不一致的快照不会被使用
+     */
+    private int formatVersion;
+    /**
+     * 聚合根状态结构的版本，与聚合根类型当前的结构版本不一致的快照不会被使用
+     */
+    private String schemaVersion;
+    private String payload;
+    private Date createdOn;
+
+    public AggregateSnapshot() {
+    }
+
+    public AggregateSnapshot(String aggregateRootId, String aggregateRootTypeName, int version, int formatVersion, String schemaVersion, String payload, Date createdOn) {
+        this.aggregateRootId = aggregateRootId;
+        this.aggregateRootTypeName = aggregateRootTypeName;
+        this.version = version;
+        this.formatVersion = formatVersion;
+        this.schemaVersion = schemaVersion;
+        this.payload = payload;
+        this.createdOn = createdOn;
+    }
+
+    public String getAggregateRootId() {
+        return aggregateRootId;
+    }
+
+    public void setAggregateRootId(String aggregateRootId) {
+        this.aggregateRootId = aggregateRootId;
+    }
+
+    public String getAggregateRootTypeName() {
+        return aggregateRootTypeName;
+    }
+
+    public void setAggregateRootTypeName(String aggregateRootTypeName) {
+        this.aggregateRootTypeName = aggregateRootTypeName;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(int formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public String getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public void setSchemaVersion(String schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Date getCreatedOn() {
+        return createdOn;
+    }
+
+    public void setCreatedOn(Date createdOn) {
+        this.createdOn = createdOn;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateSnapshot{" +
+                "aggregateRootId='" + aggregateRootId + '\'' +
+                ", aggregateRootTypeName='" + aggregateRootTypeName + '\'' +
+                ", version=" + version +
+                ", formatVersion=" + formatVersion +
+                ", schemaVersion='" + schemaVersion + '\'' +
+                ", createdOn=" + createdOn +
+                '}';
+    }
+}
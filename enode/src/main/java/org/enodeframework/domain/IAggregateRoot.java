@@ -24,6 +24,13 @@ public interface IAggregateRoot {
      */
     List<IDomainEvent<?>> getChanges();
 
+    /**
+     * Whether the aggregate root has uncommitted changes.
+     */
+    default boolean hasChanges() {
+        return !getChanges().isEmpty();
+    }
+
     /**
      * Accept changes of the aggregate root.
      */
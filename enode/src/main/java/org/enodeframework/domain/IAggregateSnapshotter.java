@@ -1,5 +1,7 @@
 package org.enodeframework.domain;
 
+import org.enodeframework.common.io.Task;
+
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -10,4 +12,26 @@ public interface IAggregateSnapshotter {
      * Restore the aggregate from snapshot storage.
      */
     <T extends IAggregateRoot> CompletableFuture<T> restoreFromSnapshotAsync(Class<T> aggregateRootType, String aggregateRootId);
+
+    /**
+     * Called after the aggregate was rebuilt by replaying events from the event store, before it is visible to anyone else.
+     */
+    default void onAggregateRestored(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long elapsedMillis) {
+    }
+
+    /**
+     * Called on the command processing thread right after the aggregate accepted its changes,
+     * returns the snapshot of the current state if one should be taken, otherwise null.
+     * The returned snapshot must only be saved after the events of its version were persisted.
+     */
+    default AggregateSnapshot createSnapshotIfNecessary(IAggregateRoot aggregateRoot) {
+        return null;
+    }
+
+    /**
+     * Save the snapshot, the returned future never completes exceptionally.
+     */
+    default CompletableFuture<Void> saveSnapshotAsync(AggregateSnapshot snapshot) {
+        return Task.completedTask;
+    }
 }
@@ -0,0 +1,20 @@
+package org.enodeframework.domain;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 聚合根快照的存储，每个聚合根只保留最新的一个快照
+ *
+ * @author anruence@gmail.com
+ */
+public interface ISnapshotStore {
+    /**
+     * 保存快照，已存在更新版本的快照时忽略
+     */
+    CompletableFuture<Void> saveSnapshotAsync(AggregateSnapshot snapshot);
+
+    /**
+     * 获取聚合根最新的快照，不存在时返回null
+     */
+    CompletableFuture<AggregateSnapshot> getLatestSnapshotAsync(String aggregateRootId, String aggregateRootTypeName);
+}
@@ -0,0 +1,54 @@
+package org.enodeframework.domain;
+
+/**
+ * 快照策略：聚合根版本每增长指定数量时创建快照；或者聚合根从存储恢复时回放的代价超过阈值，恢复后立即创建快照，
+ * 回放代价按回放的事件流数量和恢复耗时衡量。
+ *
+ * @author anruence@gmail.com
+ */
+public class SnapshotPolicy {
+    private final int versionInterval;
+    private final int replayEventStreamThreshold;
+    private final long replayMillisThreshold;
+
+    /**
+     * @param versionInterval            每隔多少个版本创建一次快照，小于等于0表示不按版本创建
+     * @param replayEventStreamThreshold 恢复时回放的事件流数量达到该值时创建快照，小于等于0表示不按回放数量创建
+     * @param replayMillisThreshold      恢复耗时达到该毫秒数时创建快照，小于等于0表示不按耗时创建
+     */
+    public SnapshotPolicy(int versionInterval, int replayEventStreamThreshold, long replayMillisThreshold) {
+        this.versionInterval = versionInterval;
+        this.replayEventStreamThreshold = replayEventStreamThreshold;
+        this.replayMillisThreshold = replayMillisThreshold;
+    }
+
+    /**
+     * 聚合根接受修改后，新的版本是否需要创建快照；聚合根每次修改版本加1，按版本取模不需要记录上次快照的版本
+     */
+    public boolean shouldSnapshot(int version) {
+        return versionInterval > 0 && version % versionInterval == 0;
+    }
+
+    /**
+     * 聚合根恢复后是否需要创建快照
+     */
+    public boolean shouldSnapshotAfterReplay(int replayedEventStreamCount, long elapsedMillis) {
+        if (replayedEventStreamCount <= 0) {
+            return false;
+        }
+        return (replayEventStreamThreshold > 0 && replayedEventStreamCount >= replayEventStreamThreshold)
+                || (replayMillisThreshold > 0 && elapsedMillis >= replayMillisThreshold);
+    }
+
+    public int getVersionInterval() {
+        return versionInterval;
+    }
+
+    public int getReplayEventStreamThreshold() {
+        return replayEventStreamThreshold;
+    }
+
+    public long getReplayMillisThreshold() {
+        return replayMillisThreshold;
+    }
+}
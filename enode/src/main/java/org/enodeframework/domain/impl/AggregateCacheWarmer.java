@@ -0,0 +1,242 @@
+package org.enodeframework.domain.impl;
+
+import org.enodeframework.common.exception.EnodeInterruptException;
+import org.enodeframework.domain.IAggregateRoot;
+import org.enodeframework.infrastructure.ITypeNameProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动时预热聚合根内存缓存：停止时把最近更新的聚合根（类型名和ID）写入热点文件，
+ * 下次启动时按热点文件以有限的并发从事件存储加载这些聚合根到内存缓存，避免发布后每个聚合根的第一个命令都要完整回放事件。
+ * <p>
+ * 预热不保证在命令消费者启动之前完成（如通过initMethod启动的RocketMQ/ONS消费者），所以只放入缓存中还没有的聚合根，
+ * 命令已经加载或修改过的聚合根不会被替换。预热在超时后停止提交新的加载，已加载的聚合根保留在缓存中；加载失败只记录日志，不影响启动。
+ *
+ * @author anruence@gmail.com
+ */
+public class AggregateCacheWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(AggregateCacheWarmer.class);
+    private static final String SEPARATOR = "\t";
+    private final DefaultMemoryCache memoryCache;
+    private final ITypeNameProvider typeNameProvider;
+    private final Path hotSetFile;
+    private int maxAggregateRootCount = 10000;
+    private int parallelism = 16;
+    private int timeoutSeconds = 60;
+    /**
+     * 每加载多少个聚合根输出一次进度
+     */
+    private int progressLogInterval = 1000;
+    private final AtomicInteger loadedCount = new AtomicInteger();
+    private final AtomicInteger notFoundCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    public AggregateCacheWarmer(DefaultMemoryCache memoryCache, ITypeNameProvider typeNameProvider, String hotSetFile) {
+        this.memoryCache = memoryCache;
+        this.typeNameProvider = typeNameProvider;
+        this.hotSetFile = Paths.get(hotSetFile);
+    }
+
+    /**
+     * 读取热点文件并预热，阻塞到预热完成或超时
+     */
+    public void start() {
+        if (!Files.exists(hotSetFile)) {
+            logger.info("Aggregate cache warm-up skipped, hot set file not found: {}", hotSetFile.toAbsolutePath());
+            return;
+        }
+        List<HotAggregateRoot> hotAggregateRoots;
+        try {
+            hotAggregateRoots = readHotSet();
+        } catch (IOException ex) {
+            logger.error("Read aggregate hot set file has exception, warm-up skipped, file: {}", hotSetFile.toAbsolutePath(), ex);
+            return;
+        }
+        warmUp(hotAggregateRoots);
+    }
+
+    /**
+     * 把内存缓存中最近更新的聚合根写入热点文件，供下次启动预热
+     */
+    public void stop() {
+        List<IAggregateRoot> aggregateRoots = memoryCache.getRecentlyUpdatedAggregateRoots(maxAggregateRootCount);
+        List<String> lines = new ArrayList<>(aggregateRoots.size());
+        for (IAggregateRoot aggregateRoot : aggregateRoots) {
+            lines.add(typeNameProvider.getTypeName(aggregateRoot.getClass()) + SEPARATOR + aggregateRoot.getUniqueId());
+        }
+        try {
+            Path parent = hotSetFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tempFile = Paths.get(hotSetFile.toAbsolutePath() + ".tmp");
+            Files.write(tempFile, lines, StandardCharsets.UTF_8);
+            Files.move(tempFile, hotSetFile, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Aggregate hot set saved, count: {}, file: {}", lines.size(), hotSetFile.toAbsolutePath());
+        } catch (IOException ex) {
+            logger.error("Save aggregate hot set file has exception, file: {}", hotSetFile.toAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * 以最多parallelism个并发加载给定的聚合根，阻塞到全部完成或超时；热点文件之外的来源（如事件表中最近写入的聚合根）也可以直接调用
+     */
+    public void warmUp(List<HotAggregateRoot> hotAggregateRoots) {
+        int total = hotAggregateRoots.size();
+        if (total == 0) {
+            return;
+        }
+        logger.info("Aggregate cache warm-up started, total: {}, parallelism: {}", total, parallelism);
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicInteger completedCount = new AtomicInteger();
+        int submittedCount = 0;
+        try {
+            for (HotAggregateRoot hotAggregateRoot : hotAggregateRoots) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !permits.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                submittedCount++;
+                load(hotAggregateRoot).whenComplete((x, ex) -> {
+                    permits.release();
+                    int completed = completedCount.incrementAndGet();
+                    if (completed % progressLogInterval == 0) {
+                        logger.info("Aggregate cache warm-up progress, completed: {}, total: {}, elapsed: {}ms", completed, total, System.currentTimeMillis() - startTime);
+                    }
+                });
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                permits.tryAcquire(parallelism, remaining, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EnodeInterruptException(ex);
+        }
+        if (completedCount.get() < total) {
+            logger.warn("Aggregate cache warm-up timeout, submitted: {}, completed: {}, total: {}, timeoutSeconds: {}", submittedCount, completedCount.get(), total, timeoutSeconds);
+        }
+        logger.info("Aggregate cache warm-up finished, loaded: {}, notFound: {}, failed: {}, total: {}, elapsed: {}ms",
+                loadedCount.get(), notFoundCount.get(), failedCount.get(), total, System.currentTimeMillis() - startTime);
+    }
+
+    private CompletableFuture<?> load(HotAggregateRoot hotAggregateRoot) {
+        CompletableFuture<IAggregateRoot> future;
+        try {
+            Class<IAggregateRoot> aggregateRootType = (Class<IAggregateRoot>) typeNameProvider.getType(hotAggregateRoot.getAggregateRootTypeName());
+            future = memoryCache.loadAggregateIfAbsentAsync(aggregateRootType, hotAggregateRoot.getAggregateRootId());
+        } catch (Exception ex) {
+            logger.warn("Aggregate cache warm-up has exception, aggregateRootTypeName: {}, aggregateRootId: {}", hotAggregateRoot.getAggregateRootTypeName(), hotAggregateRoot.getAggregateRootId(), ex);
+            failedCount.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        return future.whenComplete((aggregateRoot, ex) -> {
+            if (ex != null) {
+                failedCount.incrementAndGet();
+            } else if (aggregateRoot == null) {
+                notFoundCount.incrementAndGet();
+            } else {
+                loadedCount.incrementAndGet();
+            }
+        });
+    }
+
+    private List<HotAggregateRoot> readHotSet() throws IOException {
+        List<HotAggregateRoot> hotAggregateRoots = new ArrayList<>();
+        for (String line : Files.readAllLines(hotSetFile, StandardCharsets.UTF_8)) {
+            int index = line.indexOf(SEPARATOR);
+            if (index <= 0 || index == line.length() - 1) {
+                continue;
+            }
+            hotAggregateRoots.add(new HotAggregateRoot(line.substring(0, index), line.substring(index + 1)));
+            if (hotAggregateRoots.size() >= maxAggregateRootCount) {
+                break;
+            }
+        }
+        return hotAggregateRoots;
+    }
+
+    public int getMaxAggregateRootCount() {
+        return maxAggregateRootCount;
+    }
+
+    public void setMaxAggregateRootCount(int maxAggregateRootCount) {
+        this.maxAggregateRootCount = maxAggregateRootCount;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive, parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public int getProgressLogInterval() {
+        return progressLogInterval;
+    }
+
+    public void setProgressLogInterval(int progressLogInterval) {
+        this.progressLogInterval = Math.max(1, progressLogInterval);
+    }
+
+    public int getLoadedCount() {
+        return loadedCount.get();
+    }
+
+    /**
+     * 事件存储中不存在的聚合根数量，内存缓存加载失败时只记录错误日志并返回null，也计入其中
+     */
+    public int getNotFoundCount() {
+        return notFoundCount.get();
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    public static class HotAggregateRoot {
+        private final String aggregateRootTypeName;
+        private final String aggregateRootId;
+
+        public HotAggregateRoot(String aggregateRootTypeName, String aggregateRootId) {
+            this.aggregateRootTypeName = aggregateRootTypeName;
+            this.aggregateRootId = aggregateRootId;
+        }
+
+        public String getAggregateRootTypeName() {
+            return aggregateRootTypeName;
+        }
+
+        public String getAggregateRootId() {
+            return aggregateRootId;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.enodeframework.domain.impl;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import org.enodeframework.annotation.SnapshotVersion;
+import org.enodeframework.domain.AggregateRoot;
+import org.enodeframework.domain.IAggregateRoot;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聚合根状态的序列化：按字段（包括私有字段）序列化为JSON，不依赖getter/setter，忽略未提交的事件；
+ * 供堆外二级缓存和快照使用。
+ * <p>
+ * 序列化格式变化时需要递增{@link #FORMAT_VERSION}；聚合根自身字段的变化由{@link #getSchemaVersion(Class)}区分，
+ * 两者任一不一致的快照都不会被用于恢复。
+ * <p>
+ * 声明为Object的字段需要在JSON中记录具体类型，反序列化时只允许JDK的基础类型、框架自身的类型，
+ * 以及已经序列化或反序列化过的聚合根所在的包（及子包）中的类型，其他类型名一律拒绝。
+ *
+ * @author anruence@gmail.com
+ */
+public class AggregateStateSerializer {
+    public static final int FORMAT_VERSION = 1;
+    private static final List<String> ALLOWED_BUILTIN_PREFIXES = Arrays.asList("java.lang.", "java.util.", "java.math.", "java.time.", "org.enodeframework.");
+    private static final Set<String> ALLOWED_PACKAGE_PREFIXES = ConcurrentHashMap.newKeySet();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ClassValue<String> SCHEMA_VERSIONS = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return computeSchemaVersion(type);
+        }
+    };
+
+    static {
+        MAPPER.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        MAPPER.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        MAPPER.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        // 聚合根ID等声明为Object（含泛型）的字段需要保留具体类型
+        MAPPER.activateDefaultTyping(new AggregatePackageTypeValidator(), ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT);
+        MAPPER.addMixIn(AggregateRoot.class, AggregateRootMixIn.class);
+    }
+
+    public byte[] serializeToBytes(IAggregateRoot aggregateRoot) throws IOException {
+        allowPackageOf(aggregateRoot.getClass());
+        return MAPPER.writeValueAsBytes(aggregateRoot);
+    }
+
+    public String serialize(IAggregateRoot aggregateRoot) throws IOException {
+        allowPackageOf(aggregateRoot.getClass());
+        return MAPPER.writeValueAsString(aggregateRoot);
+    }
+
+    public <T extends IAggregateRoot> T deserialize(byte[] data, int offset, int length, Class<T> aggregateRootType) throws IOException {
+        allowPackageOf(aggregateRootType);
+        return MAPPER.readValue(data, offset, length, aggregateRootType);
+    }
+
+    public <T extends IAggregateRoot> T deserialize(String data, Class<T> aggregateRootType) throws IOException {
+        allowPackageOf(aggregateRootType);
+        return MAPPER.readValue(data, aggregateRootType);
+    }
+
+    /**
+     * 聚合根状态结构的版本：标注了{@link SnapshotVersion}时为其值，否则为所有参与序列化的字段（声明类、名称、泛型类型）的哈希
+     */
+    public String getSchemaVersion(Class<?> aggregateRootType) {
+        return SCHEMA_VERSIONS.get(aggregateRootType);
+    }
+
+    private static String computeSchemaVersion(Class<?> aggregateRootType) {
+        SnapshotVersion snapshotVersion = aggregateRootType.getAnnotation(SnapshotVersion.class);
+        if (snapshotVersion != null) {
+            return "v" + snapshotVersion.value();
+        }
+        List<String> fields = new ArrayList<>();
+        for (Class<?> type = aggregateRootType; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                if (type == AggregateRoot.class && (field.getName().equals("uncommittedEvents") || field.getName().equals("uncommittedEventsView"))) {
+                    continue;
+                }
+                fields.add(type.getName() + "#" + field.getName() + ":" + field.getGenericType().getTypeName());
+            }
+        }
+        Collections.sort(fields);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.join(";", fields).getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder("h");
+            for (int i = 0; i < 8; i++) {
+                builder.append(String.format("%02x", hash[i]));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void allowPackageOf(Class<?> aggregateRootType) {
+        String name = aggregateRootType.getName();
+        int index = name.lastIndexOf('.');
+        if (index > 0) {
+            ALLOWED_PACKAGE_PREFIXES.add(name.substring(0, index + 1));
+        }
+    }
+
+    private static boolean isAllowed(String className) {
+        // 数组类型按元素类型判断，基本类型数组直接允许
+        int dimensions = 0;
+        while (className.length() > dimensions && className.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions > 0) {
+            if (className.charAt(dimensions) != 'L') {
+                return true;
+            }
+            className = className.substring(dimensions + 1, className.length() - 1);
+        }
+        for (String prefix : ALLOWED_BUILTIN_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        for (String prefix : ALLOWED_PACKAGE_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class AggregatePackageTypeValidator extends PolymorphicTypeValidator.Base {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Validity validateSubClassName(MapperConfig<?> config, JavaType baseType, String subClassName) {
+            return isAllowed(subClassName) ? Validity.ALLOWED : Validity.DENIED;
+        }
+
+        @Override
+        public Validity validateSubType(MapperConfig<?> config, JavaType baseType, JavaType subType) {
+            return isAllowed(subType.getRawClass().getName()) ? Validity.ALLOWED : Validity.DENIED;
+        }
+    }
+
+    @JsonIgnoreProperties({"uncommittedEvents", "uncommittedEventsView"})
+    private abstract static class AggregateRootMixIn {
+    }
+}
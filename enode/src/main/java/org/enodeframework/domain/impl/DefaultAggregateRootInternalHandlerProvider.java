@@ -9,25 +9,40 @@ import org.enodeframework.domain.IAggregateRootInternalHandlerProvider;
 import org.enodeframework.eventing.IDomainEvent;
 import org.enodeframework.infrastructure.IAssemblyInitializer;
 import org.enodeframework.infrastructure.TypeUtils;
+import org.enodeframework.infrastructure.impl.MethodInvokerFactory;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * 聚合根内部事件处理方法的提供者。
+ * <p>
+ * 初始化时为每个处理方法生成直接调用的{@link Action2}实现（LambdaMetafactory），父类中的处理方法同时登记到子类，
+ * 按聚合根类型保存在只读的ClassValue中，应用和回放事件时不再遍历类层次，也不经过反射或非精确的MethodHandle调用；
+ * 不能生成时退回到精确类型的MethodHandle调用。
+ *
  * @author anruence@gmail.com
  */
 public class DefaultAggregateRootInternalHandlerProvider implements IAggregateRootInternalHandlerProvider, IAssemblyInitializer {
+    private static final MethodType EXACT_HANDLER_TYPE = MethodType.methodType(void.class, IAggregateRoot.class, IDomainEvent.class);
     private final Map<Class<?>, Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>>> MAPPINGS = new HashMap<>();
+    /**
+     * 聚合根类型到（事件类型到处理方法）的分发表，初始化时构建，之后只读
+     */
+    private volatile ClassValue<Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>>> handlerTable = new InternalHandlerTable(Collections.emptyMap());
 
     @Override
     public void initialize(Set<Class<?>> componentTypes) {
         componentTypes.stream().filter(TypeUtils::isAggregateRoot).forEach(this::recurseRegisterInternalHandler);
+        handlerTable = new InternalHandlerTable(new HashMap<>(MAPPINGS));
     }
 
     private void recurseRegisterInternalHandler(Class<?> aggregateRootType) {
@@ -60,43 +75,69 @@ public class DefaultAggregateRootInternalHandlerProvider implements IAggregateRo
 
     private void registerInternalHandler(Class<?> aggregateRootType, Class<?> eventType, Method method) {
         Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>> eventHandlerDic = MAPPINGS.computeIfAbsent(aggregateRootType, k -> new HashMap<>());
+        eventHandlerDic.put(eventType, createApplier(method));
+    }
+
+    /**
+     * 优先用LambdaMetafactory生成直接调用处理方法的实现，否则使用精确类型的MethodHandle
+     */
+    private Action2<IAggregateRoot, IDomainEvent<?>> createApplier(Method method) {
         method.setAccessible(true);
+        MethodHandle methodHandle;
         try {
-            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
-            eventHandlerDic.put(eventType, (aggregateRoot, domainEvent) -> {
-                try {
-                    methodHandle.invoke(aggregateRoot, domainEvent);
-                } catch (Throwable throwable) {
-                    throw new MethodInvokeException(throwable);
-                }
-            });
+            methodHandle = MethodHandles.lookup().unreflect(method);
         } catch (IllegalAccessException e) {
             throw new HandlerRegisterException(e);
         }
+        if (method.getReturnType() == void.class) {
+            Action2<IAggregateRoot, IDomainEvent<?>> applier = MethodInvokerFactory.createLambda(Action2.class, method);
+            if (applier != null) {
+                return applier;
+            }
+        }
+        MethodHandle exactHandle = methodHandle.asType(EXACT_HANDLER_TYPE);
+        return (aggregateRoot, domainEvent) -> {
+            try {
+                exactHandle.invokeExact(aggregateRoot, domainEvent);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new MethodInvokeException(throwable);
+            }
+        };
     }
 
     @Override
     public Action2<IAggregateRoot, IDomainEvent<?>> getInternalEventHandler(Class<? extends IAggregateRoot> aggregateRootType, Class<? extends IDomainEvent> eventType) {
-        Class currentAggregateType = aggregateRootType;
-        while (currentAggregateType != null) {
-            Action2<IAggregateRoot, IDomainEvent<?>> handler = getEventHandler(currentAggregateType, eventType);
-            if (handler != null) {
-                return handler;
-            }
-            if (currentAggregateType.getSuperclass() != null && Arrays.asList(currentAggregateType.getSuperclass().getInterfaces()).contains(IAggregateRoot.class)) {
-                currentAggregateType = currentAggregateType.getSuperclass();
-            } else {
-                break;
-            }
-        }
-        return null;
+        return handlerTable.get(aggregateRootType).get(eventType);
     }
 
-    private Action2<IAggregateRoot, IDomainEvent<?>> getEventHandler(Class<? extends IAggregateRoot> aggregateRootType, Class<? extends IDomainEvent> anEventType) {
-        Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>> eventHandlerDic = MAPPINGS.get(aggregateRootType);
-        if (eventHandlerDic == null) {
-            return null;
+    /**
+     * 未在初始化时扫描到的聚合根类型（如扫描包之外的子类），第一次使用时沿父类合并已登记的处理方法，子类的优先
+     */
+    private static class InternalHandlerTable extends ClassValue<Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>>> {
+        private final Map<Class<?>, Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>>> handlerDict;
+
+        InternalHandlerTable(Map<Class<?>, Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>>> handlerDict) {
+            this.handlerDict = handlerDict;
+        }
+
+        @Override
+        protected Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>> computeValue(Class<?> aggregateRootType) {
+            Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>> eventHandlerDict = handlerDict.get(aggregateRootType);
+            if (eventHandlerDict != null) {
+                return eventHandlerDict;
+            }
+            Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>> mergedDict = new HashMap<>();
+            Class<?> currentType = aggregateRootType.getSuperclass();
+            while (currentType != null && IAggregateRoot.class.isAssignableFrom(currentType)) {
+                Map<Class<?>, Action2<IAggregateRoot, IDomainEvent<?>>> superHandlerDict = handlerDict.get(currentType);
+                if (superHandlerDict != null) {
+                    superHandlerDict.forEach(mergedDict::putIfAbsent);
+                }
+                currentType = currentType.getSuperclass();
+            }
+            return mergedDict;
         }
-        return eventHandlerDic.get(anEventType);
     }
 }
@@ -3,7 +3,9 @@ package org.enodeframework.domain.impl;
 import org.enodeframework.common.exception.AggregateRootTypeNotMatchException;
 import org.enodeframework.common.io.Task;
 import org.enodeframework.common.scheduling.IScheduleService;
+import org.enodeframework.common.scheduling.TimeoutWheel;
 import org.enodeframework.common.utilities.Ensure;
+import org.enodeframework.common.utilities.WindowTinyLfuPolicy;
 import org.enodeframework.domain.AggregateCacheInfo;
 import org.enodeframework.domain.AggregateRootReferenceChangedException;
 import org.enodeframework.domain.IAggregateRoot;
@@ -13,12 +15,16 @@ import org.enodeframework.infrastructure.ITypeNameProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -27,19 +33,46 @@ import java.util.stream.Collectors;
 public class DefaultMemoryCache implements IMemoryCache {
     private static final Logger logger = LoggerFactory.getLogger(DefaultMemoryCache.class);
     private final ConcurrentMap<String, AggregateCacheInfo> aggregateRootInfoDict;
-    private final Object lockObj = new Object();
+    /**
+     * 按最后更新时间跟踪缓存项，清理时只检查已到期的缓存项
+     */
+    private final TimeoutWheel<AggregateCacheInfo> expiredAggregateWheel;
     private final String taskName;
     private final IAggregateStorage aggregateStorage;
     private final ITypeNameProvider typeNameProvider;
     private final IScheduleService scheduleService;
     private int timeoutSeconds = 5000;
     private int scanExpiredAggregateIntervalMilliseconds = 5000;
+    /**
+     * 缓存的聚合根权重之和的上限，小于等于0表示不限制，此时只按时间过期
+     */
+    private long maxCacheWeight = 0;
+    /**
+     * 估算聚合根权重的函数，默认每个聚合根权重为1，即按数量限制
+     */
+    private ToIntFunction<IAggregateRoot> aggregateRootWeigher = x -> 1;
+    /**
+     * 有容量上限时的淘汰策略，为null时不限制容量
+     */
+    private volatile WindowTinyLfuPolicy<String> evictionPolicy;
+    /**
+     * 堆外二级缓存，为null时不使用；从内存缓存中淘汰或过期的聚合根写入二级缓存
+     */
+    private volatile OffHeapAggregateRootCache secondLevelCache;
+    /**
+     * 淘汰回调在策略的锁内执行，淘汰的聚合根先放入队列，释放锁后再序列化写入二级缓存
+     */
+    private final Queue<IAggregateRoot> evictedAggregateRoots = new ConcurrentLinkedQueue<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
 
     public DefaultMemoryCache(IAggregateStorage aggregateStorage, IScheduleService scheduleService, ITypeNameProvider typeNameProvider) {
         this.aggregateStorage = aggregateStorage;
         this.typeNameProvider = typeNameProvider;
         this.scheduleService = scheduleService;
         aggregateRootInfoDict = new ConcurrentHashMap<>();
+        expiredAggregateWheel = new TimeoutWheel<>(1000);
         taskName = "CleanInactiveAggregates_" + System.nanoTime() + new Random().nextInt(10000);
     }
 
@@ -49,13 +82,19 @@ public class DefaultMemoryCache implements IMemoryCache {
         Ensure.notNull(aggregateRootType, "aggregateRootType");
         AggregateCacheInfo aggregateRootInfo = aggregateRootInfoDict.get(aggregateRootId.toString());
         if (aggregateRootInfo == null) {
+            missCount.increment();
             return CompletableFuture.completedFuture(null);
         }
+        hitCount.increment();
+        WindowTinyLfuPolicy<String> policy = evictionPolicy;
+        if (policy != null) {
+            policy.recordAccess(aggregateRootId.toString());
+        }
         T aggregateRoot = (T) aggregateRootInfo.getAggregateRoot();
         if (aggregateRoot.getClass() != aggregateRootType) {
             throw new AggregateRootTypeNotMatchException(String.format("Incorrect aggregate root type, aggregateRootId:%s, type:%s, expecting type:%s", aggregateRootId, aggregateRoot.getClass(), aggregateRootType));
         }
-        if (aggregateRoot.getChanges().size() > 0) {
+        if (aggregateRoot.hasChanges()) {
             CompletableFuture<T> lastestAggregateRootFuture = aggregateStorage.getAsync(aggregateRootType, aggregateRootId.toString());
             return lastestAggregateRootFuture.thenApply(lastestAggregateRoot -> {
                 resetAggregateRootCache(aggregateRootType, aggregateRootId.toString(), lastestAggregateRoot);
@@ -73,32 +112,49 @@ public class DefaultMemoryCache implements IMemoryCache {
         return getAsync(aggregateRootId, IAggregateRoot.class);
     }
 
+    /**
+     * 同一聚合根的修改由命令MailBox保证单线程，这里只需要对缓存项做原子更新：替换缓存的聚合根时比较引用，
+     * 引用已被重置（如从事件存储刷新）时抛出AggregateRootReferenceChangedException
+     */
     @Override
     public CompletableFuture<Void> acceptAggregateRootChanges(IAggregateRoot aggregateRoot) {
-        synchronized (lockObj) {
-            Ensure.notNull(aggregateRoot, "aggregateRoot");
-            AggregateCacheInfo cacheInfo = aggregateRootInfoDict.computeIfAbsent(aggregateRoot.getUniqueId(), x -> {
-                logger.info("Aggregate root in-memory cache initialized, aggregateRootType: {}, aggregateRootId: {}, aggregateRootVersion: {}", aggregateRoot.getClass().getName(), aggregateRoot.getUniqueId(), aggregateRoot.getVersion());
-                return new AggregateCacheInfo(aggregateRoot);
-            });
-            //更新到内存缓存前需要先检查聚合根引用是否有变化，有变化说明此聚合根已经被重置过状态了
-            if (aggregateRoot.getVersion() > 1 && cacheInfo.getAggregateRoot() != aggregateRoot) {
-                throw new AggregateRootReferenceChangedException(aggregateRoot);
-            }
-            //接受聚合根的最新事件修改，更新聚合根版本号
-            int aggregateRootOldVersion = cacheInfo.getAggregateRoot().getVersion();
-            aggregateRoot.acceptChanges();
-            cacheInfo.updateAggregateRoot(aggregateRoot);
-            logger.info("Aggregate root in-memory cache changed, aggregateRootType: {}, aggregateRootId: {}, aggregateRootNewVersion: {}, aggregateRootOldVersion: {}", aggregateRoot.getClass().getName(), aggregateRoot.getUniqueId(), aggregateRoot.getVersion(), aggregateRootOldVersion);
+        Ensure.notNull(aggregateRoot, "aggregateRoot");
+        String aggregateRootId = aggregateRoot.getUniqueId();
+        AggregateCacheInfo cacheInfo = aggregateRootInfoDict.get(aggregateRootId);
+        if (cacheInfo == null) {
+            cacheInfo = putCacheInfoIfAbsent(aggregateRoot);
+        }
+        IAggregateRoot cachedAggregateRoot = cacheInfo.getAggregateRoot();
+        //更新到内存缓存前需要先检查聚合根引用是否有变化，有变化说明此聚合根已经被重置过状态了
+        if (aggregateRoot.getVersion() > 1 && cachedAggregateRoot != aggregateRoot) {
+            throw new AggregateRootReferenceChangedException(aggregateRoot);
+        }
+        int aggregateRootOldVersion = cachedAggregateRoot.getVersion();
+        //先替换缓存的聚合根，替换失败或缓存项已被移出字典时聚合根的修改保持未接受状态
+        if (!cacheInfo.compareAndUpdateAggregateRoot(cachedAggregateRoot, aggregateRoot) || aggregateRootInfoDict.get(aggregateRootId) != cacheInfo) {
+            throw new AggregateRootReferenceChangedException(aggregateRoot);
+        }
+        //接受聚合根的最新事件修改，更新聚合根版本号
+        aggregateRoot.acceptChanges();
+        recordWrite(aggregateRoot);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Aggregate root in-memory cache changed, aggregateRootType: {}, aggregateRootId: {}, aggregateRootNewVersion: {}, aggregateRootOldVersion: {}", aggregateRoot.getClass().getName(), aggregateRootId, aggregateRoot.getVersion(), aggregateRootOldVersion);
         }
         return Task.completedTask;
     }
 
+    /**
+     * 用于冲突后的恢复，二级缓存中的状态可能已经不可信，先移除再从事件存储加载
+     */
     @Override
     public CompletableFuture<IAggregateRoot> refreshAggregateFromEventStoreAsync(String aggregateRootTypeName, String aggregateRootId) {
         Ensure.notNull(aggregateRootTypeName, "aggregateRootTypeName");
         CompletableFuture<IAggregateRoot> future = new CompletableFuture<>();
         try {
+            OffHeapAggregateRootCache offHeapCache = secondLevelCache;
+            if (offHeapCache != null && aggregateRootId != null) {
+                offHeapCache.remove(aggregateRootId);
+            }
             Class<IAggregateRoot> aggregateRootType = (Class<IAggregateRoot>) typeNameProvider.getType(aggregateRootTypeName);
             if (aggregateRootType == null) {
                 logger.error("Could not find aggregate root type by aggregate root type name [{}].", aggregateRootTypeName);
@@ -125,6 +181,32 @@ public class DefaultMemoryCache implements IMemoryCache {
         });
     }
 
+    /**
+     * 聚合根不在缓存中时从存储加载并放入缓存，返回缓存中的聚合根；加载期间命令已经放入缓存的聚合根保持不变。
+     * 用于预热：预热可能和命令消费同时进行，不能像refreshAggregateFromEventStoreAsync那样重置正在使用的聚合根
+     */
+    public <T extends IAggregateRoot> CompletableFuture<T> loadAggregateIfAbsentAsync(Class<T> aggregateRootType, String aggregateRootId) {
+        Ensure.notNull(aggregateRootId, "aggregateRootId");
+        Ensure.notNull(aggregateRootType, "aggregateRootType");
+        AggregateCacheInfo existing = aggregateRootInfoDict.get(aggregateRootId);
+        if (existing != null) {
+            return CompletableFuture.completedFuture((T) existing.getAggregateRoot());
+        }
+        return aggregateStorage.getAsync(aggregateRootType, aggregateRootId).thenApply(aggregateRoot -> {
+            if (aggregateRoot == null) {
+                return null;
+            }
+            AggregateCacheInfo cacheInfo = putCacheInfoIfAbsent(aggregateRoot);
+            if (cacheInfo.getAggregateRoot() == aggregateRoot) {
+                recordWrite(aggregateRoot);
+            }
+            return (T) cacheInfo.getAggregateRoot();
+        }).exceptionally(ex -> {
+            logger.error("Load aggregate from event store has unknown exception, aggregateRootTypeName:{}, aggregateRootId:{}", typeNameProvider.getTypeName(aggregateRootType), aggregateRootId, ex);
+            return null;
+        });
+    }
+
     @Override
     public void start() {
         scheduleService.startTask(taskName, this::cleanInactiveAggregateRoot, scanExpiredAggregateIntervalMilliseconds, scanExpiredAggregateIntervalMilliseconds);
@@ -135,38 +217,181 @@ public class DefaultMemoryCache implements IMemoryCache {
         scheduleService.stopTask(taskName);
     }
 
+    /**
+     * 在原缓存项上替换聚合根，使并发的acceptAggregateRootChanges比较引用失败；新聚合根为null时才移除缓存项
+     */
     private void resetAggregateRootCache(Class<?> aggregateRootType, String aggregateRootId, IAggregateRoot aggregateRoot) {
-        AggregateCacheInfo aggregateCacheInfo = aggregateRootInfoDict.remove(aggregateRootId);
-        if (aggregateCacheInfo != null) {
-            logger.info("Removed dirty in-memory aggregate, aggregateRootType: {}, aggregateRootId: {}, version: {}", aggregateRootType.getName(), aggregateRootId, aggregateCacheInfo.getAggregateRoot().getVersion());
-        }
         if (aggregateRoot == null) {
+            AggregateCacheInfo aggregateCacheInfo = aggregateRootInfoDict.remove(aggregateRootId);
+            if (aggregateCacheInfo != null) {
+                removeFromPolicy(aggregateRootId);
+                logger.info("Removed dirty in-memory aggregate, aggregateRootType: {}, aggregateRootId: {}, version: {}", aggregateRootType.getName(), aggregateRootId, aggregateCacheInfo.getAggregateRoot().getVersion());
+            }
             return;
         }
-        synchronized (lockObj) {
-            AggregateCacheInfo cacheInfo = aggregateRootInfoDict.computeIfAbsent(aggregateRoot.getUniqueId(), x -> {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Aggregate root in-memory cache reset, aggregateRootType: {}, aggregateRootId: {}, aggregateRootVersion: {}", aggregateRoot.getClass().getName(), aggregateRoot.getUniqueId(), aggregateRoot.getVersion());
-                }
-                return new AggregateCacheInfo(aggregateRoot);
-            });
-            int aggregateRootOldVersion = cacheInfo.getAggregateRoot().getVersion();
-            cacheInfo.updateAggregateRoot(aggregateRoot);
-            if (logger.isDebugEnabled()) {
-                logger.debug("Aggregate root in-memory cache reset, aggregateRootType: {}, aggregateRootId: {}, aggregateRootNewVersion: {}, aggregateRootOldVersion: {}", aggregateRoot.getClass().getName(), aggregateRoot.getUniqueId(), aggregateRoot.getVersion(), aggregateRootOldVersion);
-            }
+        AggregateCacheInfo cacheInfo = aggregateRootInfoDict.get(aggregateRootId);
+        if (cacheInfo == null) {
+            cacheInfo = putCacheInfoIfAbsent(aggregateRoot);
+        }
+        IAggregateRoot oldAggregateRoot;
+        do {
+            oldAggregateRoot = cacheInfo.getAggregateRoot();
+        } while (oldAggregateRoot != aggregateRoot && !cacheInfo.compareAndUpdateAggregateRoot(oldAggregateRoot, aggregateRoot));
+        recordWrite(aggregateRoot);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Aggregate root in-memory cache reset, aggregateRootType: {}, aggregateRootId: {}, aggregateRootNewVersion: {}, aggregateRootOldVersion: {}", aggregateRoot.getClass().getName(), aggregateRootId, aggregateRoot.getVersion(), oldAggregateRoot.getVersion());
         }
     }
 
+    /**
+     * 聚合根不在缓存中时放入新的缓存项，返回字典中的缓存项
+     */
+    private AggregateCacheInfo putCacheInfoIfAbsent(IAggregateRoot aggregateRoot) {
+        AggregateCacheInfo cacheInfo = new AggregateCacheInfo(aggregateRoot);
+        AggregateCacheInfo existing = aggregateRootInfoDict.putIfAbsent(aggregateRoot.getUniqueId(), cacheInfo);
+        if (existing != null) {
+            return existing;
+        }
+        expiredAggregateWheel.schedule(cacheInfo, cacheInfo.getLastUpdateTimeMillis() + timeoutSeconds * 1000L);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Aggregate root in-memory cache initialized, aggregateRootType: {}, aggregateRootId: {}, aggregateRootVersion: {}", aggregateRoot.getClass().getName(), aggregateRoot.getUniqueId(), aggregateRoot.getVersion());
+        }
+        return cacheInfo;
+    }
+
     private void cleanInactiveAggregateRoot() {
-        List<Map.Entry<String, AggregateCacheInfo>> inactiveList = aggregateRootInfoDict.entrySet().stream()
-                .filter(entry -> entry.getValue().isExpired(timeoutSeconds))
-                .collect(Collectors.toList());
-        inactiveList.forEach(entry -> {
-            if (aggregateRootInfoDict.remove(entry.getKey()) != null) {
-                logger.info("Removed inactive aggregate root, id: {}", entry.getKey());
+        expiredAggregateWheel.advance(System.currentTimeMillis(), this::tryRemoveExpiredAggregateRoot);
+    }
+
+    /**
+     * 移除到期的缓存项，返回下一次检查的时间点，返回0表示缓存项已经不在字典中
+     */
+    private long tryRemoveExpiredAggregateRoot(AggregateCacheInfo cacheInfo) {
+        String aggregateRootId = cacheInfo.getAggregateRoot().getUniqueId();
+        boolean[] expired = new boolean[1];
+        AggregateCacheInfo current = aggregateRootInfoDict.computeIfPresent(aggregateRootId, (key, value) -> {
+            if (value != cacheInfo || !value.isExpired(timeoutSeconds)) {
+                return value;
             }
+            logger.info("Removed inactive aggregate root, id: {}", key);
+            expired[0] = true;
+            return null;
         });
+        if (current == null) {
+            removeFromPolicy(aggregateRootId);
+        }
+        OffHeapAggregateRootCache offHeapCache = secondLevelCache;
+        if (expired[0] && offHeapCache != null) {
+            offHeapCache.put(cacheInfo.getAggregateRoot());
+        }
+        if (current != cacheInfo) {
+            return 0;
+        }
+        return cacheInfo.getLastUpdateTimeMillis() + timeoutSeconds * 1000L;
+    }
+
+    /**
+     * 在写入聚合根后更新它在淘汰策略中的权重，必须在ConcurrentHashMap的计算函数之外调用，淘汰回调会移除字典中的缓存项
+     */
+    private void recordWrite(IAggregateRoot aggregateRoot) {
+        WindowTinyLfuPolicy<String> policy = evictionPolicy;
+        if (policy != null) {
+            policy.recordWrite(aggregateRoot.getUniqueId(), Math.max(1, aggregateRootWeigher.applyAsInt(aggregateRoot)));
+            flushEvictedAggregateRoots();
+        }
+    }
+
+    private void flushEvictedAggregateRoots() {
+        IAggregateRoot evicted;
+        while ((evicted = evictedAggregateRoots.poll()) != null) {
+            OffHeapAggregateRootCache offHeapCache = secondLevelCache;
+            if (offHeapCache != null) {
+                offHeapCache.put(evicted);
+            }
+        }
+    }
+
+    private void removeFromPolicy(String aggregateRootId) {
+        WindowTinyLfuPolicy<String> policy = evictionPolicy;
+        if (policy != null) {
+            policy.remove(aggregateRootId);
+        }
+    }
+
+    private void evictAggregateRoot(String aggregateRootId) {
+        AggregateCacheInfo removed = aggregateRootInfoDict.remove(aggregateRootId);
+        if (removed != null) {
+            evictionCount.increment();
+            if (secondLevelCache != null) {
+                evictedAggregateRoots.offer(removed.getAggregateRoot());
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Evicted aggregate root by cache capacity, id: {}", aggregateRootId);
+            }
+        }
+    }
+
+    public long getMaxCacheWeight() {
+        return maxCacheWeight;
+    }
+
+    /**
+     * 设置缓存容量上限并开启W-TinyLFU淘汰，小于等于0时关闭；需要在缓存使用前设置
+     */
+    public void setMaxCacheWeight(long maxCacheWeight) {
+        this.maxCacheWeight = maxCacheWeight;
+        this.evictionPolicy = maxCacheWeight > 0 ? new WindowTinyLfuPolicy<>(maxCacheWeight, this::evictAggregateRoot) : null;
+    }
+
+    public OffHeapAggregateRootCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    public void setSecondLevelCache(OffHeapAggregateRootCache secondLevelCache) {
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    public ToIntFunction<IAggregateRoot> getAggregateRootWeigher() {
+        return aggregateRootWeigher;
+    }
+
+    public void setAggregateRootWeigher(ToIntFunction<IAggregateRoot> aggregateRootWeigher) {
+        this.aggregateRootWeigher = aggregateRootWeigher;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 按最后更新时间从近到远返回缓存中的聚合根，最多maxCount个
+     */
+    public List<IAggregateRoot> getRecentlyUpdatedAggregateRoots(int maxCount) {
+        return aggregateRootInfoDict.values().stream()
+                .sorted(Comparator.comparingLong(AggregateCacheInfo::getLastUpdateTimeMillis).reversed())
+                .limit(Math.max(0, maxCount))
+                .map(AggregateCacheInfo::getAggregateRoot)
+                .collect(Collectors.toList());
+    }
+
+    public int getCacheSize() {
+        return aggregateRootInfoDict.size();
+    }
+
+    /**
+     * 当前缓存的聚合根权重之和，不限制容量时返回缓存项数量
+     */
+    public long getCacheWeight() {
+        WindowTinyLfuPolicy<String> policy = evictionPolicy;
+        return policy != null ? policy.weightedSize() : aggregateRootInfoDict.size();
     }
 
     public int getTimeoutSeconds() {
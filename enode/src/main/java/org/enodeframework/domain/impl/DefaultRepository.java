@@ -1,11 +1,14 @@
 package org.enodeframework.domain.impl;
 
+import org.enodeframework.common.exception.AggregateRootTypeNotMatchException;
 import org.enodeframework.common.utilities.Ensure;
 import org.enodeframework.domain.IAggregateRoot;
 import org.enodeframework.domain.IMemoryCache;
 import org.enodeframework.domain.IRepository;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author anruence@gmail.com
@@ -13,6 +16,10 @@ import java.util.concurrent.CompletableFuture;
 public class DefaultRepository implements IRepository {
 
     private final IMemoryCache memoryCache;
+    /**
+     * 正在从事件存储加载的聚合根，同一聚合根并发的缓存未命中共享同一个加载
+     */
+    private final ConcurrentMap<String, CompletableFuture<IAggregateRoot>> loadingAggregateRootDict = new ConcurrentHashMap<>();
 
     public DefaultRepository(IMemoryCache memoryCache) {
         this.memoryCache = memoryCache;
@@ -25,12 +32,45 @@ public class DefaultRepository implements IRepository {
         CompletableFuture<T> future = memoryCache.getAsync(aggregateRootId, aggregateRootType);
         return future.thenCompose(aggregateRoot -> {
             if (aggregateRoot == null) {
-                return memoryCache.refreshAggregateFromEventStoreAsync(aggregateRootType, aggregateRootId.toString());
+                return loadAsync(aggregateRootType, aggregateRootId.toString());
             }
             return CompletableFuture.completedFuture(aggregateRoot);
         });
     }
 
+    /**
+     * 已有同一聚合根的加载时直接等待其结果，否则发起加载；加载完成时先移除登记再完成，之后的请求会命中内存缓存
+     */
+    private <T extends IAggregateRoot> CompletableFuture<T> loadAsync(Class<T> aggregateRootType, String aggregateRootId) {
+        CompletableFuture<IAggregateRoot> loadingFuture = new CompletableFuture<>();
+        CompletableFuture<IAggregateRoot> existingFuture = loadingAggregateRootDict.putIfAbsent(aggregateRootId, loadingFuture);
+        if (existingFuture != null) {
+            return existingFuture.thenApply(aggregateRoot -> {
+                if (aggregateRoot != null && !aggregateRootType.isInstance(aggregateRoot)) {
+                    throw new AggregateRootTypeNotMatchException(String.format("Incorrect aggregate root type, aggregateRootId:%s, type:%s, expecting type:%s", aggregateRootId, aggregateRoot.getClass(), aggregateRootType));
+                }
+                return (T) aggregateRoot;
+            });
+        }
+        CompletableFuture<T> future;
+        try {
+            future = memoryCache.refreshAggregateFromEventStoreAsync(aggregateRootType, aggregateRootId);
+        } catch (Exception ex) {
+            loadingAggregateRootDict.remove(aggregateRootId, loadingFuture);
+            loadingFuture.completeExceptionally(ex);
+            throw ex;
+        }
+        future.whenComplete((aggregateRoot, ex) -> {
+            loadingAggregateRootDict.remove(aggregateRootId, loadingFuture);
+            if (ex != null) {
+                loadingFuture.completeExceptionally(ex);
+            } else {
+                loadingFuture.complete(aggregateRoot);
+            }
+        });
+        return future;
+    }
+
     /**
      * Get an aggregate from memory cache, if not exist, get it from event store.
      */
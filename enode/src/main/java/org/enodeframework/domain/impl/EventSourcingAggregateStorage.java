@@ -7,25 +7,32 @@ import org.enodeframework.domain.IAggregateRoot;
 import org.enodeframework.domain.IAggregateRootFactory;
 import org.enodeframework.domain.IAggregateSnapshotter;
 import org.enodeframework.domain.IAggregateStorage;
-import org.enodeframework.eventing.DomainEventStream;
 import org.enodeframework.eventing.IEventStore;
 import org.enodeframework.infrastructure.ITypeNameProvider;
 
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author anruence@gmail.com
  */
 public class EventSourcingAggregateStorage implements IAggregateStorage {
 
-    private static final int MINVERSION = 1;
-
     private static final int MAXVERSION = Integer.MAX_VALUE;
     private final IAggregateRootFactory aggregateRootFactory;
     private final IEventStore eventStore;
     private final IAggregateSnapshotter aggregateSnapshotter;
     private final ITypeNameProvider typeNameProvider;
+    /**
+     * 堆外二级缓存，为null时不使用
+     */
+    private OffHeapAggregateRootCache secondLevelCache;
+    /**
+     * 回放时每次从事件存储读取的事件流数量，内存中最多同时持有一页
+     */
+    private int replayPageSize = 1000;
 
     public EventSourcingAggregateStorage(IEventStore eventStore, IAggregateRootFactory aggregateRootFactory, IAggregateSnapshotter aggregateSnapshotter, ITypeNameProvider typeNameProvider) {
         this.aggregateRootFactory = aggregateRootFactory;
@@ -38,13 +45,16 @@ public class EventSourcingAggregateStorage implements IAggregateStorage {
     public <T extends IAggregateRoot> CompletableFuture<T> getAsync(Class<T> aggregateRootType, String aggregateRootId) {
         Ensure.notNull(aggregateRootId, "aggregateRootId");
         Ensure.notNull(aggregateRootType, "aggregateRootType");
-        return tryGetFromSnapshot(aggregateRootId, aggregateRootType).thenCompose(aggregateRoot -> {
+        long startTime = System.currentTimeMillis();
+        T cachedAggregateRoot = secondLevelCache != null ? secondLevelCache.get(aggregateRootType, aggregateRootId) : null;
+        if (cachedAggregateRoot != null) {
+            return replayEventsAfterVersion(aggregateRootType, cachedAggregateRoot, startTime);
+        }
+        return tryGetFromSnapshot(aggregateRootId, aggregateRootType, startTime).thenCompose(aggregateRoot -> {
             if (aggregateRoot != null) {
                 return CompletableFuture.completedFuture(aggregateRoot);
             }
-            String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
-            return tryQueryAggregateEventsAsync(aggregateRootType, aggregateRootTypeName, aggregateRootId, MINVERSION, MAXVERSION, 0, new CompletableFuture<>())
-                    .thenApply(eventStreams -> rebuildAggregateRoot(aggregateRootType, eventStreams));
+            return rebuildAggregateRoot(aggregateRootType, aggregateRootId, startTime);
         });
     }
 
@@ -58,17 +68,44 @@ public class EventSourcingAggregateStorage implements IAggregateStorage {
         return taskSource;
     }
 
-    private CompletableFuture<List<DomainEventStream>> tryQueryAggregateEventsAsync(Class<?> aggregateRootType, String aggregateRootTypeName, String aggregateRootId, int minVersion, int maxVersion, int retryTimes, CompletableFuture<List<DomainEventStream>> taskSource) {
-        IOHelper.tryAsyncActionRecursively("TryQueryAggregateEventsAsync",
-                () -> eventStore.queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, minVersion, maxVersion),
-                taskSource::complete,
+    /**
+     * 分页回放聚合根当前版本之后的事件，每页回放完即可回收；读取失败重试时从聚合根已回放到的版本继续，
+     * 已回放的事件不会重复回放；回放本身抛出的异常（如事件版本不连续）不重试，直接返回失败
+     */
+    private CompletableFuture<Integer> tryReplayAggregateEventsAsync(IAggregateRoot aggregateRoot, String aggregateRootTypeName, String aggregateRootId) {
+        CompletableFuture<Integer> taskSource = new CompletableFuture<>();
+        AtomicInteger replayedCount = new AtomicInteger();
+        AtomicReference<RuntimeException> replayException = new AtomicReference<>();
+        IOHelper.tryAsyncActionRecursively("TryReplayAggregateEventsAsync",
+                () -> eventStore.queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, aggregateRoot.getVersion() + 1, MAXVERSION, replayPageSize, eventStreams -> {
+                    try {
+                        aggregateRoot.replayEvents(eventStreams);
+                    } catch (RuntimeException ex) {
+                        replayException.set(ex);
+                        throw ex;
+                    }
+                    replayedCount.addAndGet(eventStreams.size());
+                }).exceptionally(ex -> {
+                    if (replayException.get() != null) {
+                        return 0;
+                    }
+                    throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                }),
+                x -> {
+                    RuntimeException ex = replayException.get();
+                    if (ex != null) {
+                        taskSource.completeExceptionally(ex);
+                        return;
+                    }
+                    taskSource.complete(replayedCount.get());
+                },
                 () -> String.format("eventStore.queryAggregateEventsAsync has unknown exception, aggregateRootTypeName: %s, aggregateRootId: %s", aggregateRootTypeName, aggregateRootId),
                 null,
-                retryTimes, true);
+                0, true);
         return taskSource;
     }
 
-    private <T extends IAggregateRoot> CompletableFuture<T> tryGetFromSnapshot(String aggregateRootId, Class<T> aggregateRootType) {
+    private <T extends IAggregateRoot> CompletableFuture<T> tryGetFromSnapshot(String aggregateRootId, Class<T> aggregateRootType, long startTime) {
         CompletableFuture<T> aggregateRootFuture = tryRestoreFromSnapshotAsync(aggregateRootType, aggregateRootId, 0, new CompletableFuture<>());
         return aggregateRootFuture.thenCompose((aggregateRoot) -> {
             if (aggregateRoot == null) {
@@ -81,22 +118,59 @@ public class EventSourcingAggregateStorage implements IAggregateStorage {
                         aggregateRootType,
                         aggregateRootId));
             }
-            String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
-            CompletableFuture<List<DomainEventStream>> eventStreamsFuture = tryQueryAggregateEventsAsync(aggregateRootType, aggregateRootTypeName, aggregateRootId, aggregateRoot.getVersion() + 1, MAXVERSION, 0, new CompletableFuture<>());
-            return eventStreamsFuture.thenApply(eventStreams -> {
-                List<DomainEventStream> eventStreamsAfterSnapshot = eventStreams;
-                aggregateRoot.replayEvents(eventStreamsAfterSnapshot);
-                return aggregateRoot;
-            });
+            return replayEventsAfterVersion(aggregateRootType, aggregateRoot, startTime);
+        });
+    }
+
+    /**
+     * 从快照或二级缓存恢复的聚合根，回放其版本之后的事件
+     */
+    private <T extends IAggregateRoot> CompletableFuture<T> replayEventsAfterVersion(Class<T> aggregateRootType, T aggregateRoot, long startTime) {
+        String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
+        return tryReplayAggregateEventsAsync(aggregateRoot, aggregateRootTypeName, aggregateRoot.getUniqueId()).thenApply(replayedCount -> {
+            notifyRestored(aggregateRoot, replayedCount, startTime);
+            return aggregateRoot;
         });
     }
 
-    private <T extends IAggregateRoot> T rebuildAggregateRoot(Class<T> aggregateRootType, List<DomainEventStream> eventStreams) {
-        if (eventStreams == null || eventStreams.isEmpty()) {
-            return null;
+    /**
+     * 聚合根返回给调用方之前通知快照器，由快照策略决定是否需要创建快照
+     */
+    private void notifyRestored(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long startTime) {
+        if (replayedEventStreamCount == 0) {
+            return;
+        }
+        aggregateSnapshotter.onAggregateRestored(aggregateRoot, replayedEventStreamCount, System.currentTimeMillis() - startTime);
+    }
+
+    public OffHeapAggregateRootCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    public void setSecondLevelCache(OffHeapAggregateRootCache secondLevelCache) {
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    public int getReplayPageSize() {
+        return replayPageSize;
+    }
+
+    public void setReplayPageSize(int replayPageSize) {
+        if (replayPageSize <= 0) {
+            throw new IllegalArgumentException("replayPageSize must be positive, replayPageSize: " + replayPageSize);
         }
+        this.replayPageSize = replayPageSize;
+    }
+
+    private <T extends IAggregateRoot> CompletableFuture<T> rebuildAggregateRoot(Class<T> aggregateRootType, String aggregateRootId, long startTime) {
         T aggregateRoot = aggregateRootFactory.createAggregateRoot(aggregateRootType);
-        aggregateRoot.replayEvents(eventStreams);
-        return aggregateRoot;
+        String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
+        return tryReplayAggregateEventsAsync(aggregateRoot, aggregateRootTypeName, aggregateRootId).thenApply(replayedCount -> {
+            if (replayedCount == 0) {
+                return null;
+            }
+            notifyRestored(aggregateRoot, replayedCount, startTime);
+            return aggregateRoot;
+        });
     }
 }
@@ -0,0 +1,31 @@
+package org.enodeframework.domain.impl;
+
+import org.enodeframework.common.io.Task;
+import org.enodeframework.domain.AggregateSnapshot;
+import org.enodeframework.domain.ISnapshotStore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author anruence@gmail.com
+ */
+public class InMemorySnapshotStore implements ISnapshotStore {
+    private final ConcurrentMap<String, AggregateSnapshot> snapshotDict = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<Void> saveSnapshotAsync(AggregateSnapshot snapshot) {
+        snapshotDict.merge(snapshot.getAggregateRootId(), snapshot, (oldValue, newValue) -> newValue.getVersion() > oldValue.getVersion() || !newValue.getSchemaVersion().equals(oldValue.getSchemaVersion()) ? newValue : oldValue);
+        return Task.completedTask;
+    }
+
+    @Override
+    public CompletableFuture<AggregateSnapshot> getLatestSnapshotAsync(String aggregateRootId, String aggregateRootTypeName) {
+        AggregateSnapshot snapshot = snapshotDict.get(aggregateRootId);
+        if (snapshot != null && !snapshot.getAggregateRootTypeName().equals(aggregateRootTypeName)) {
+            snapshot = null;
+        }
+        return CompletableFuture.completedFuture(snapshot);
+    }
+}
@@ -0,0 +1,274 @@
+package org.enodeframework.domain.impl;
+
+import org.enodeframework.domain.IAggregateRoot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聚合根的堆外二级缓存：聚合根从内存缓存中淘汰时，将其序列化后的状态和版本号追加写入堆外的直接内存块（slab），
+ * 再次加载时先从这里恢复，然后只需要从事件存储回放该版本之后的事件。
+ * <p>
+ * 所有slab组成一个环，写满后覆盖最早写入的slab，覆盖前移除其中记录的索引，总占用不超过设置的字节数；
+ * 读取时通过slab的代数判断数据是否在读取过程中被覆盖，被覆盖则视为未命中。
+ * 聚合根状态通过字段序列化，不能序列化的聚合根不会进入二级缓存。
+ *
+ * @author anruence@gmail.com
+ */
+public class OffHeapAggregateRootCache {
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapAggregateRootCache.class);
+    private static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+    private static final int END_OF_SLAB = -1;
+    private final AggregateStateSerializer stateSerializer = new AggregateStateSerializer();
+    private final Object lockObj = new Object();
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final int[] slabLimits;
+    private final AtomicLongArray slabGenerations;
+    private final ConcurrentHashMap<String, Location> locationDict = new ConcurrentHashMap<>();
+    /**
+     * 序列化失败或同一条记录两次反序列化失败的聚合根类型，不再进入二级缓存
+     */
+    private final Set<Class<?>> unsupportedTypeSet = ConcurrentHashMap.newKeySet();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private int writeSlab;
+    private int writePosition;
+
+    public OffHeapAggregateRootCache(long capacityBytes) {
+        this(capacityBytes, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param capacityBytes 占用的堆外内存上限
+     * @param slabSize      单个slab的字节数，单个聚合根的记录不能超过该大小
+     */
+    public OffHeapAggregateRootCache(long capacityBytes, int slabSize) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize must be positive, slabSize: " + slabSize);
+        }
+        if (capacityBytes < slabSize * 2L) {
+            throw new IllegalArgumentException("capacityBytes must be at least two slabs, capacityBytes: " + capacityBytes + ", slabSize: " + slabSize);
+        }
+        this.slabSize = slabSize;
+        int slabCount = (int) Math.min(Integer.MAX_VALUE, capacityBytes / slabSize);
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabLimits = new int[slabCount];
+        this.slabGenerations = new AtomicLongArray(slabCount);
+    }
+
+    /**
+     * 保存聚合根当前的状态，有未提交修改或不能序列化的聚合根会被忽略
+     */
+    public void put(IAggregateRoot aggregateRoot) {
+        if (unsupportedTypeSet.contains(aggregateRoot.getClass()) || aggregateRoot.hasChanges()) {
+            return;
+        }
+        String aggregateRootId = aggregateRoot.getUniqueId();
+        int version = aggregateRoot.getVersion();
+        byte[] payload;
+        try {
+            payload = stateSerializer.serializeToBytes(aggregateRoot);
+        } catch (Exception ex) {
+            markUnsupported(aggregateRoot.getClass(), ex);
+            return;
+        }
+        // 序列化期间聚合根被修改过则放弃，避免保存不一致的状态
+        if (aggregateRoot.getVersion() != version || aggregateRoot.hasChanges()) {
+            return;
+        }
+        byte[] key = aggregateRootId.getBytes(StandardCharsets.UTF_8);
+        byte[] typeName = aggregateRoot.getClass().getName().getBytes(StandardCharsets.UTF_8);
+        int recordLength = 4 + 4 + 4 + key.length + 4 + typeName.length + payload.length;
+        if (recordLength > slabSize) {
+            return;
+        }
+        synchronized (lockObj) {
+            if (writePosition + recordLength > slabSize) {
+                if (writePosition + 4 <= slabSize) {
+                    slabs[writeSlab].putInt(writePosition, END_OF_SLAB);
+                }
+                slabLimits[writeSlab] = writePosition;
+                writeSlab = (writeSlab + 1) % slabs.length;
+                writePosition = 0;
+                reclaimSlab(writeSlab);
+            }
+            if (slabs[writeSlab] == null) {
+                slabs[writeSlab] = ByteBuffer.allocateDirect(slabSize);
+            }
+            ByteBuffer buffer = slabs[writeSlab].duplicate();
+            buffer.position(writePosition);
+            buffer.putInt(recordLength);
+            buffer.putInt(version);
+            buffer.putInt(key.length);
+            buffer.put(key);
+            buffer.putInt(typeName.length);
+            buffer.put(typeName);
+            buffer.put(payload);
+            Location location = new Location(writeSlab, writePosition, recordLength, slabGenerations.get(writeSlab));
+            writePosition += recordLength;
+            slabLimits[writeSlab] = writePosition;
+            locationDict.put(aggregateRootId, location);
+        }
+    }
+
+    /**
+     * 恢复聚合根，返回的是新创建的对象；未命中、类型不匹配或数据已被覆盖时返回null
+     */
+    public <T extends IAggregateRoot> T get(Class<T> aggregateRootType, String aggregateRootId) {
+        Location location = locationDict.get(aggregateRootId);
+        if (location == null) {
+            missCount.increment();
+            return null;
+        }
+        byte[] record = new byte[location.length];
+        ByteBuffer buffer = slabs[location.slab].duplicate();
+        buffer.position(location.offset);
+        buffer.get(record);
+        // 读取后再检查代数，并校验记录头，读取过程中slab被覆盖时视为未命中
+        if (slabGenerations.get(location.slab) != location.generation || !isRecordOf(record, aggregateRootId)) {
+            locationDict.remove(aggregateRootId, location);
+            missCount.increment();
+            return null;
+        }
+        ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+        recordBuffer.position(4);
+        int version = recordBuffer.getInt();
+        int keyLength = recordBuffer.getInt();
+        recordBuffer.position(recordBuffer.position() + keyLength);
+        int typeNameLength = recordBuffer.getInt();
+        String typeName = new String(record, recordBuffer.position(), typeNameLength, StandardCharsets.UTF_8);
+        int payloadOffset = recordBuffer.position() + typeNameLength;
+        if (!aggregateRootType.getName().equals(typeName) || unsupportedTypeSet.contains(aggregateRootType)) {
+            missCount.increment();
+            return null;
+        }
+        T aggregateRoot;
+        try {
+            aggregateRoot = stateSerializer.deserialize(record, payloadOffset, record.length - payloadOffset, aggregateRootType);
+        } catch (Exception ex) {
+            // 反序列化期间slab被覆盖说明读到的是不完整的数据，只当作未命中
+            if (slabGenerations.get(location.slab) != location.generation) {
+                locationDict.remove(aggregateRootId, location);
+                missCount.increment();
+                return null;
+            }
+            // 同一条记录第二次失败才认为该类型不能反序列化
+            if (location.deserializeFailed) {
+                markUnsupported(aggregateRootType, ex);
+                locationDict.remove(aggregateRootId, location);
+            } else {
+                location.deserializeFailed = true;
+            }
+            missCount.increment();
+            return null;
+        }
+        if (slabGenerations.get(location.slab) != location.generation
+                || aggregateRoot.getVersion() != version || !aggregateRootId.equals(aggregateRoot.getUniqueId())) {
+            locationDict.remove(aggregateRootId, location);
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return aggregateRoot;
+    }
+
+    private boolean isRecordOf(byte[] record, String aggregateRootId) {
+        if (record.length < 12 || ByteBuffer.wrap(record).getInt() != record.length) {
+            return false;
+        }
+        int keyLength = ByteBuffer.wrap(record, 8, 4).getInt();
+        if (keyLength < 0 || 12 + keyLength > record.length) {
+            return false;
+        }
+        return aggregateRootId.equals(new String(record, 12, keyLength, StandardCharsets.UTF_8));
+    }
+
+    private void markUnsupported(Class<?> aggregateRootType, Exception ex) {
+        if (unsupportedTypeSet.add(aggregateRootType)) {
+            logger.warn("Aggregate root type cannot be stored in off-heap cache, aggregateRootType: {}", aggregateRootType.getName(), ex);
+        }
+    }
+
+    public void remove(String aggregateRootId) {
+        locationDict.remove(aggregateRootId);
+    }
+
+    /**
+     * 覆盖slab前更新代数并移除其中记录的索引
+     */
+    private void reclaimSlab(int slab) {
+        long generation = slabGenerations.getAndIncrement(slab);
+        ByteBuffer buffer = slabs[slab];
+        if (buffer == null) {
+            return;
+        }
+        int position = 0;
+        int limit = slabLimits[slab];
+        while (position + 4 <= limit) {
+            int recordLength = buffer.getInt(position);
+            if (recordLength == END_OF_SLAB || recordLength <= 0) {
+                break;
+            }
+            int keyLength = buffer.getInt(position + 8);
+            byte[] key = new byte[keyLength];
+            ByteBuffer keyBuffer = buffer.duplicate();
+            keyBuffer.position(position + 12);
+            keyBuffer.get(key);
+            // 只统计本次移除的索引，已被移除或已指向新位置的聚合根不计入淘汰
+            String aggregateRootId = new String(key, StandardCharsets.UTF_8);
+            Location location = locationDict.get(aggregateRootId);
+            if (location != null && location.slab == slab && location.offset == position && location.generation == generation
+                    && locationDict.remove(aggregateRootId, location)) {
+                evictionCount.increment();
+            }
+            position += recordLength;
+        }
+        slabLimits[slab] = 0;
+    }
+
+    public int size() {
+        return locationDict.size();
+    }
+
+    public long getCapacityBytes() {
+        return (long) slabSize * slabs.length;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private static class Location {
+        private final int slab;
+        private final int offset;
+        private final int length;
+        private final long generation;
+        /**
+         * 该记录反序列化失败过一次
+         */
+        private volatile boolean deserializeFailed;
+
+        Location(int slab, int offset, int length, long generation) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.enodeframework.domain.impl;
+
+import org.enodeframework.common.io.Task;
+import org.enodeframework.domain.AggregateSnapshot;
+import org.enodeframework.domain.IAggregateRoot;
+import org.enodeframework.domain.IAggregateSnapshotter;
+import org.enodeframework.domain.ISnapshotStore;
+import org.enodeframework.domain.SnapshotPolicy;
+import org.enodeframework.infrastructure.ITypeNameProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于快照存储的聚合根快照器：按快照策略创建快照并异步保存，恢复时从快照存储读取最新的快照，
+ * 由聚合根存储回放快照版本之后的事件。
+ * <p>
+ * 命令产生的快照在事件持久化成功后才保存，所以快照的版本一定不超过事件存储中的版本；
+ * 快照读取或反序列化失败时退回到fallbackSnapshotter或完整回放事件，快照只影响恢复速度，不影响正确性。
+ *
+ * @author anruence@gmail.com
+ */
+public class SnapshotStoreAggregateSnapshotter implements IAggregateSnapshotter {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStoreAggregateSnapshotter.class);
+    private final ISnapshotStore snapshotStore;
+    private final ITypeNameProvider typeNameProvider;
+    private final SnapshotPolicy snapshotPolicy;
+    private final AggregateStateSerializer stateSerializer = new AggregateStateSerializer();
+    /**
+     * 序列化或反序列化失败过的聚合根类型，不再创建和使用快照
+     */
+    private final Set<Class<?>> unsupportedTypeSet = ConcurrentHashMap.newKeySet();
+    /**
+     * 快照存储中没有可用快照时使用，为null时直接完整回放事件
+     */
+    private IAggregateSnapshotter fallbackSnapshotter;
+
+    public SnapshotStoreAggregateSnapshotter(ISnapshotStore snapshotStore, ITypeNameProvider typeNameProvider, SnapshotPolicy snapshotPolicy) {
+        this.snapshotStore = snapshotStore;
+        this.typeNameProvider = typeNameProvider;
+        this.snapshotPolicy = snapshotPolicy;
+    }
+
+    @Override
+    public <T extends IAggregateRoot> CompletableFuture<T> restoreFromSnapshotAsync(Class<T> aggregateRootType, String aggregateRootId) {
+        CompletableFuture<AggregateSnapshot> snapshotFuture;
+        String aggregateRootTypeName = typeNameProvider.getTypeName(aggregateRootType);
+        if (unsupportedTypeSet.contains(aggregateRootType)) {
+            snapshotFuture = CompletableFuture.completedFuture(null);
+        } else {
+            snapshotFuture = snapshotStore.getLatestSnapshotAsync(aggregateRootId, aggregateRootTypeName).exceptionally(ex -> {
+                logger.warn("Get aggregate snapshot has exception, restore from events, aggregateRootTypeName: {}, aggregateRootId: {}", aggregateRootTypeName, aggregateRootId, ex);
+                return null;
+            });
+        }
+        return snapshotFuture.thenCompose(snapshot -> {
+            T aggregateRoot = snapshot == null ? null : deserialize(aggregateRootType, aggregateRootId, aggregateRootTypeName, snapshot);
+            if (aggregateRoot != null || fallbackSnapshotter == null) {
+                return CompletableFuture.completedFuture(aggregateRoot);
+            }
+            return fallbackSnapshotter.restoreFromSnapshotAsync(aggregateRootType, aggregateRootId);
+        });
+    }
+
+    @Override
+    public void onAggregateRestored(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long elapsedMillis) {
+        if (!snapshotPolicy.shouldSnapshotAfterReplay(replayedEventStreamCount, elapsedMillis)) {
+            return;
+        }
+        AggregateSnapshot snapshot = createSnapshot(aggregateRoot);
+        if (snapshot != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Take aggregate snapshot after replay, replayedEventStreamCount: {}, elapsed: {}ms, {}", replayedEventStreamCount, elapsedMillis, snapshot);
+            }
+            saveSnapshotAsync(snapshot);
+        }
+    }
+
+    @Override
+    public AggregateSnapshot createSnapshotIfNecessary(IAggregateRoot aggregateRoot) {
+        if (!snapshotPolicy.shouldSnapshot(aggregateRoot.getVersion())) {
+            return null;
+        }
+        return createSnapshot(aggregateRoot);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveSnapshotAsync(AggregateSnapshot snapshot) {
+        CompletableFuture<Void> future;
+        try {
+            future = snapshotStore.saveSnapshotAsync(snapshot);
+        } catch (Exception ex) {
+            logger.warn("Save aggregate snapshot has exception, {}", snapshot, ex);
+            return Task.completedTask;
+        }
+        return future.handle((x, ex) -> {
+            if (ex != null) {
+                logger.warn("Save aggregate snapshot has exception, {}", snapshot, ex);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 序列化聚合根当前的状态，有未提交修改或不能序列化时返回null；调用方需要保证序列化期间聚合根不被修改
+     */
+    public AggregateSnapshot createSnapshot(IAggregateRoot aggregateRoot) {
+        if (aggregateRoot.hasChanges() || unsupportedTypeSet.contains(aggregateRoot.getClass())) {
+            return null;
+        }
+        try {
+            String payload = stateSerializer.serialize(aggregateRoot);
+            return new AggregateSnapshot(aggregateRoot.getUniqueId(), typeNameProvider.getTypeName(aggregateRoot.getClass()),
+                    aggregateRoot.getVersion(), AggregateStateSerializer.FORMAT_VERSION, stateSerializer.getSchemaVersion(aggregateRoot.getClass()), payload, new Date());
+        } catch (Exception ex) {
+            markUnsupported(aggregateRoot.getClass(), ex);
+            return null;
+        }
+    }
+
+    private <T extends IAggregateRoot> T deserialize(Class<T> aggregateRootType, String aggregateRootId, String aggregateRootTypeName, AggregateSnapshot snapshot) {
+        if (snapshot.getFormatVersion() != AggregateStateSerializer.FORMAT_VERSION || !aggregateRootTypeName.equals(snapshot.getAggregateRootTypeName())) {
+            return null;
+        }
+        String schemaVersion = stateSerializer.getSchemaVersion(aggregateRootType);
+        if (!schemaVersion.equals(snapshot.getSchemaVersion())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Aggregate snapshot schema version is not matched, restore from events, expected schemaVersion: {}, {}", schemaVersion, snapshot);
+            }
+            return null;
+        }
+        try {
+            T aggregateRoot = stateSerializer.deserialize(snapshot.getPayload(), aggregateRootType);
+            if (aggregateRoot.getVersion() != snapshot.getVersion() || !aggregateRootId.equals(aggregateRoot.getUniqueId())) {
+                logger.warn("Aggregate snapshot is not matched, restore from events, aggregateRootId: {}, version: {}, {}", aggregateRoot.getUniqueId(), aggregateRoot.getVersion(), snapshot);
+                return null;
+            }
+            return aggregateRoot;
+        } catch (Exception ex) {
+            markUnsupported(aggregateRootType, ex);
+            return null;
+        }
+    }
+
+    private void markUnsupported(Class<?> aggregateRootType, Exception ex) {
+        if (unsupportedTypeSet.add(aggregateRootType)) {
+            logger.warn("Aggregate root type cannot be snapshotted, aggregateRootType: {}", aggregateRootType.getName(), ex);
+        }
+    }
+
+    public SnapshotPolicy getSnapshotPolicy() {
+        return snapshotPolicy;
+    }
+
+    public IAggregateSnapshotter getFallbackSnapshotter() {
+        return fallbackSnapshotter;
+    }
+
+    public void setFallbackSnapshotter(IAggregateSnapshotter fallbackSnapshotter) {
+        this.fallbackSnapshotter = fallbackSnapshotter;
+    }
+}
@@ -0,0 +1,81 @@
+package org.enodeframework.eventing;
+
+import org.enodeframework.common.scheduling.IScheduleService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件持久化的攒批策略：待持久化的事件数量少于最小批次时，等待一段时间再组装批次，用有上限的延迟换取更大的批次。
+ * <p>
+ * 等待时间随事件存储的持久化耗时自适应：取最近持久化耗时的指数移动平均乘以比例，且不超过最大等待时间；
+ * 存储很快时几乎不等待，存储变慢时每批次攒更多的事件。
+ *
+ * @author anruence@gmail.com
+ */
+public class BatchLingerPolicy {
+    private static final double SMOOTHING_FACTOR = 0.2;
+    private final IScheduleService scheduleService;
+    private final long maxLingerNanos;
+    private final int minBatchSize;
+    private final double latencyRatio;
+    /**
+     * 平均持久化耗时（double的位表示），所有MailBox共享同一个策略，通过CAS更新
+     */
+    private final AtomicLong averageLatencyBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    /**
+     * @param scheduleService       用于到期后重新组装批次的调度服务
+     * @param maxLingerMilliseconds 最长等待时间，小于等于0表示不等待
+     * @param minBatchSize          待持久化的事件数量达到该值时不再等待
+     * @param latencyRatio          等待时间占平均持久化耗时的比例
+     */
+    public BatchLingerPolicy(IScheduleService scheduleService, int maxLingerMilliseconds, int minBatchSize, double latencyRatio) {
+        if (minBatchSize <= 0) {
+            throw new IllegalArgumentException("minBatchSize must be positive, minBatchSize: " + minBatchSize);
+        }
+        if (latencyRatio < 0) {
+            throw new IllegalArgumentException("latencyRatio cannot be negative, latencyRatio: " + latencyRatio);
+        }
+        this.scheduleService = scheduleService;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLingerMilliseconds));
+        this.minBatchSize = minBatchSize;
+        this.latencyRatio = latencyRatio;
+    }
+
+    /**
+     * 记录一次批量持久化的耗时
+     */
+    public void recordLatency(long latencyNanos) {
+        while (true) {
+            long bits = averageLatencyBits.get();
+            double average = Double.longBitsToDouble(bits);
+            double updated = average == 0 ? latencyNanos : average + SMOOTHING_FACTOR * (latencyNanos - average);
+            if (averageLatencyBits.compareAndSet(bits, Double.doubleToRawLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前待持久化的事件数量下需要等待的时间，返回0表示立即组装批次
+     */
+    public long getLingerNanos(long pendingCount) {
+        if (maxLingerNanos <= 0 || pendingCount >= minBatchSize) {
+            return 0;
+        }
+        return Math.min(maxLingerNanos, (long) (Double.longBitsToDouble(averageLatencyBits.get()) * latencyRatio));
+    }
+
+    public void schedule(Runnable action, long delayNanos) {
+        scheduleService.schedule(action::run, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getAverageLatencyNanos() {
+        return (long) Double.longBitsToDouble(averageLatencyBits.get());
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+}
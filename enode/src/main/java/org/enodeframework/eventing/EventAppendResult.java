@@ -3,6 +3,7 @@ package org.enodeframework.eventing;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,7 +16,10 @@ public class EventAppendResult {
     private List<String> duplicateEventAggregateRootIdList = Lists.newArrayList();
 
     private Map<String, List<String>> duplicateCommandAggregateRootIdList = Maps.newHashMap();
-
+    /**
+     * 聚合根ID -> 持久化结果，按聚合根查询结果时不需要遍历各个列表
+     */
+    private Map<String, EventAppendStatus> aggregateRootStatusDict = new HashMap<>();
 
     public List<String> getSuccessAggregateRootIdList() {
         return successAggregateRootIdList;
@@ -23,6 +27,7 @@ public class EventAppendResult {
 
     public void setSuccessAggregateRootIdList(List<String> successAggregateRootIdList) {
         this.successAggregateRootIdList = successAggregateRootIdList;
+        rebuildStatusDict();
     }
 
     public List<String> getDuplicateEventAggregateRootIdList() {
@@ -31,6 +36,7 @@ public class EventAppendResult {
 
     public void setDuplicateEventAggregateRootIdList(List<String> duplicateEventAggregateRootIdList) {
         this.duplicateEventAggregateRootIdList = duplicateEventAggregateRootIdList;
+        rebuildStatusDict();
     }
 
 
@@ -40,11 +46,12 @@ public class EventAppendResult {
 
     public void setDuplicateCommandAggregateRootIdList(Map<String, List<String>> duplicateCommandAggregateRootIdList) {
         this.duplicateCommandAggregateRootIdList = duplicateCommandAggregateRootIdList;
+        rebuildStatusDict();
     }
 
     public void addSuccessAggregateRootId(String aggregateRootId) {
         synchronized (lockObj) {
-            if (!successAggregateRootIdList.contains(aggregateRootId)) {
+            if (aggregateRootStatusDict.putIfAbsent(aggregateRootId, EventAppendStatus.Success) == null) {
                 successAggregateRootIdList.add(aggregateRootId);
             }
         }
@@ -52,7 +59,7 @@ public class EventAppendResult {
 
     public void addDuplicateEventAggregateRootId(String aggregateRootId) {
         synchronized (lockObj) {
-            if (!duplicateEventAggregateRootIdList.contains(aggregateRootId)) {
+            if (aggregateRootStatusDict.putIfAbsent(aggregateRootId, EventAppendStatus.DuplicateEvent) == null) {
                 duplicateEventAggregateRootIdList.add(aggregateRootId);
             }
         }
@@ -60,9 +67,34 @@ public class EventAppendResult {
 
     public void addDuplicateCommandIds(String aggregateRootId, List<String> aggregateDuplicateCommandIdList) {
         synchronized (lockObj) {
-            if (!duplicateCommandAggregateRootIdList.containsKey(aggregateRootId)) {
+            if (aggregateRootStatusDict.putIfAbsent(aggregateRootId, EventAppendStatus.DuplicateCommand) == null) {
                 duplicateCommandAggregateRootIdList.put(aggregateRootId, aggregateDuplicateCommandIdList);
             }
         }
     }
+
+    /**
+     * 返回聚合根的持久化结果，聚合根不在结果中时返回null
+     */
+    public EventAppendStatus getStatus(String aggregateRootId) {
+        synchronized (lockObj) {
+            return aggregateRootStatusDict.get(aggregateRootId);
+        }
+    }
+
+    public List<String> getDuplicateCommandIds(String aggregateRootId) {
+        synchronized (lockObj) {
+            return duplicateCommandAggregateRootIdList.get(aggregateRootId);
+        }
+    }
+
+    private void rebuildStatusDict() {
+        synchronized (lockObj) {
+            Map<String, EventAppendStatus> statusDict = new HashMap<>();
+            successAggregateRootIdList.forEach(x -> statusDict.putIfAbsent(x, EventAppendStatus.Success));
+            duplicateCommandAggregateRootIdList.keySet().forEach(x -> statusDict.putIfAbsent(x, EventAppendStatus.DuplicateCommand));
+            duplicateEventAggregateRootIdList.forEach(x -> statusDict.putIfAbsent(x, EventAppendStatus.DuplicateEvent));
+            aggregateRootStatusDict = statusDict;
+        }
+    }
 }
@@ -1,6 +1,9 @@
 package org.enodeframework.eventing;
 
 import org.enodeframework.commanding.ProcessingCommand;
+import org.enodeframework.domain.AggregateSnapshot;
+
+import java.util.List;
 
 /**
  * @author anruence@gmail.com
@@ -9,6 +12,18 @@ public class EventCommittingContext {
     private EventCommittingContextMailBox mailBox;
     private DomainEventStream eventStream;
     private ProcessingCommand processingCommand;
+    /**
+     * 本次批量持久化的结果，持久化完成前为null
+     */
+    private EventAppendStatus appendStatus;
+    /**
+     * 持久化结果为DuplicateCommand时，该聚合根重复的命令ID
+     */
+    private List<String> duplicateCommandIds;
+    /**
+     * 聚合根接受本次修改后创建的快照，事件持久化成功后保存，为null表示本次不需要快照
+     */
+    private AggregateSnapshot snapshot;
 
     public EventCommittingContext(DomainEventStream eventStream, ProcessingCommand processingCommand) {
         this.eventStream = eventStream;
@@ -30,4 +45,28 @@ public class EventCommittingContext {
     public void setMailBox(EventCommittingContextMailBox mailBox) {
         this.mailBox = mailBox;
     }
+
+    public EventAppendStatus getAppendStatus() {
+        return appendStatus;
+    }
+
+    public void setAppendStatus(EventAppendStatus appendStatus) {
+        this.appendStatus = appendStatus;
+    }
+
+    public List<String> getDuplicateCommandIds() {
+        return duplicateCommandIds;
+    }
+
+    public void setDuplicateCommandIds(List<String> duplicateCommandIds) {
+        this.duplicateCommandIds = duplicateCommandIds;
+    }
+
+    public AggregateSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(AggregateSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
 }
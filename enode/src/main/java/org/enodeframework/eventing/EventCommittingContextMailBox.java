@@ -1,19 +1,24 @@
 package org.enodeframework.eventing;
 
+import org.enodeframework.commanding.ProcessingCommandMailbox;
 import org.enodeframework.common.exception.DuplicateEventStreamException;
 import org.enodeframework.common.function.Action1;
-import org.enodeframework.common.io.Task;
 import org.enodeframework.messaging.IMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class EventCommittingContextMailBox {
@@ -26,15 +31,61 @@ public class EventCommittingContextMailBox {
     private final int number;
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, Byte>> aggregateDictDict;
     private final ConcurrentLinkedQueue<EventCommittingContext> messageQueue;
+    /**
+     * 所属聚合根仍有事件在持久化中的消息，按放入顺序保存，聚合根释放后优先处理；只在processMessages中访问
+     */
+    private final LinkedList<EventCommittingContext> deferredMessageList;
+    /**
+     * 聚合根ID -> 持有该聚合根的批次数量，被持有的聚合根的后续事件不会进入新的批次
+     */
+    private final ConcurrentHashMap<String, Integer> inFlightAggregateDict;
     private final Action1<List<EventCommittingContext>> handleMessageAction;
     private final int batchSize;
     private Date lastActiveTime;
-    private boolean running;
+    /**
+     * 是否正在组装批次
+     */
+    private volatile boolean running;
+    /**
+     * 组装批次期间有聚合根被释放等需要重新运行的情况，本次运行结束时再运行一次，避免延迟的消息无人唤醒
+     */
+    private boolean rerunRequested;
+    /**
+     * 已组装、尚未完成的批次数量，以及允许同时持久化的最大批次数量
+     */
+    private int inFlightBatchCount;
+    private int maxInFlightBatchCount = 1;
+    private volatile int deferredMessageCount;
+    /**
+     * 路由版本，使用旧版本路由的消息会被拒绝，由调用方按新的路由重新放入
+     */
+    private int routingVersion;
+    /**
+     * 已放入、已取出、已处理完成的消息数量，用于在调整MailBox数量时等待旧消息处理完成
+     */
+    private long enqueuedCount;
+    private volatile long polledCount;
+    private final AtomicLong completedCount = new AtomicLong(0);
+    /**
+     * 本次允许取出的消息数量上限，调整MailBox数量期间为调整前已放入的消息数量，之后放入的消息需要等待所有MailBox排空后再处理
+     */
+    private volatile long drainLimit = Long.MAX_VALUE;
+    private Runnable drainedAction;
+    /**
+     * 攒批策略，为null时不等待
+     */
+    private BatchLingerPolicy lingerPolicy;
+    /**
+     * 本次等待的截止时间（纳秒），0表示当前没有在等待
+     */
+    private long lingerDeadline;
 
     public EventCommittingContextMailBox(int number, int batchSize, Action1<List<EventCommittingContext>> handleMessageAction, Executor executor) {
         this.executor = executor;
         this.aggregateDictDict = new ConcurrentHashMap<>();
         this.messageQueue = new ConcurrentLinkedQueue<>();
+        this.deferredMessageList = new LinkedList<>();
+        this.inFlightAggregateDict = new ConcurrentHashMap<>();
         this.handleMessageAction = handleMessageAction;
         this.number = number;
         this.batchSize = batchSize;
@@ -50,7 +101,7 @@ public class EventCommittingContextMailBox {
     }
 
     public long getTotalUnHandledMessageCount() {
-        return messageQueue.size();
+        return messageQueue.size() + deferredMessageCount;
     }
 
     /**
@@ -58,38 +109,127 @@ public class EventCommittingContextMailBox {
      */
     public void enqueueMessage(EventCommittingContext message) {
         synchronized (lockObj) {
-            ConcurrentHashMap<String, Byte> eventDict = aggregateDictDict.computeIfAbsent(message.getEventStream().getAggregateRootId(), x -> new ConcurrentHashMap<>());
-            // If the specified key is not already associated with a value (or is mapped to null) associates it with the given value and returns null, else returns the current value.
-            if (eventDict.putIfAbsent(message.getEventStream().getId(), ONE_BYTE) == null) {
-                message.setMailBox(this);
-                messageQueue.add(message);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("{} enqueued new message, mailboxNumber: {}, aggregateRootId: {}, commandId: {}, eventVersion: {}, eventStreamId: {}, eventIds: {}",
-                            getClass().getName(),
-                            number,
-                            message.getEventStream().getAggregateRootId(),
-                            message.getProcessingCommand().getMessage().getId(),
-                            message.getEventStream().getVersion(),
-                            message.getEventStream().getId(),
-                            message.getEventStream().getEvents().stream().map(IMessage::getId).collect(Collectors.joining("|"))
-                    );
-                }
-                lastActiveTime = new Date();
+            addMessage(message);
+            lastActiveTime = new Date();
+            tryRun();
+        }
+    }
+
+    /**
+     * 按指定的路由版本放入一个消息，路由版本已过期时返回false
+     */
+    public boolean enqueueMessage(EventCommittingContext message, int routingVersion) {
+        synchronized (lockObj) {
+            if (routingVersion != this.routingVersion) {
+                return false;
+            }
+            enqueueMessage(message);
+            return true;
+        }
+    }
+
+    /**
+     * 一次放入多个消息到MailBox，保证它们在同一次运行中被处理（不超过batchSize时），并自动尝试运行MailBox
+     */
+    public void enqueueMessages(List<EventCommittingContext> messages) {
+        synchronized (lockObj) {
+            for (EventCommittingContext message : messages) {
+                addMessage(message);
+            }
+            lastActiveTime = new Date();
+            tryRun();
+        }
+    }
+
+    /**
+     * 按指定的路由版本放入多个消息，路由版本已过期时返回false
+     */
+    public boolean enqueueMessages(List<EventCommittingContext> messages, int routingVersion) {
+        synchronized (lockObj) {
+            if (routingVersion != this.routingVersion) {
+                return false;
+            }
+            enqueueMessages(messages);
+            return true;
+        }
+    }
+
+    /**
+     * 开始排空：切换到新的路由版本，之后放入的消息在调用endDrain前不会被处理；
+     * 此前放入的消息全部处理完成时执行drainedAction，返回true表示当前已经排空，drainedAction不会被执行
+     */
+    public boolean beginDrain(int routingVersion, Runnable drainedAction) {
+        synchronized (lockObj) {
+            this.routingVersion = routingVersion;
+            this.drainLimit = enqueuedCount;
+            if (completedCount.get() >= drainLimit) {
+                return true;
+            }
+            this.drainedAction = drainedAction;
+            return false;
+        }
+    }
+
+    /**
+     * 结束排空，继续处理排空期间放入的消息
+     */
+    public void endDrain() {
+        synchronized (lockObj) {
+            drainLimit = Long.MAX_VALUE;
+            drainedAction = null;
+            if (getTotalUnHandledMessageCount() > 0) {
                 tryRun();
-            } else {
-                throw new DuplicateEventStreamException(message.getEventStream());
             }
         }
     }
 
+    private boolean isDrainLimitReached() {
+        return polledCount >= drainLimit;
+    }
+
+    private void addMessage(EventCommittingContext message) {
+        ConcurrentHashMap<String, Byte> eventDict = aggregateDictDict.computeIfAbsent(message.getEventStream().getAggregateRootId(), x -> new ConcurrentHashMap<>());
+        // If the specified key is not already associated with a value (or is mapped to null) associates it with the given value and returns null, else returns the current value.
+        if (eventDict.putIfAbsent(message.getEventStream().getId(), ONE_BYTE) == null) {
+            message.setMailBox(this);
+            messageQueue.add(message);
+            enqueuedCount++;
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} enqueued new message, mailboxNumber: {}, aggregateRootId: {}, commandId: {}, eventVersion: {}, eventStreamId: {}, eventIds: {}",
+                        getClass().getName(),
+                        number,
+                        message.getEventStream().getAggregateRootId(),
+                        message.getProcessingCommand().getMessage().getId(),
+                        message.getEventStream().getVersion(),
+                        message.getEventStream().getId(),
+                        message.getEventStream().getEvents().stream().map(IMessage::getId).collect(Collectors.joining("|"))
+                );
+            }
+        } else {
+            throw new DuplicateEventStreamException(message.getEventStream());
+        }
+    }
+
     /**
-     * 尝试运行一次MailBox，一次运行会处理一个消息或者一批消息，当前MailBox不能是运行中或者暂停中或者已暂停
+     * 尝试运行一次MailBox，一次运行会组装一批消息并交给处理器，当前MailBox不能是组装中或者持久化中的批次已达到上限
      */
     public void tryRun() {
         synchronized (lockObj) {
             if (isRunning()) {
+                rerunRequested = true;
                 return;
             }
+            if (inFlightBatchCount >= maxInFlightBatchCount) {
+                return;
+            }
+            if (isDrainLimitReached() && deferredMessageCount == 0) {
+                return;
+            }
+            if (shouldLinger()) {
+                return;
+            }
+            lingerDeadline = 0;
+            rerunRequested = false;
             setAsRunning();
             if (logger.isDebugEnabled()) {
                 logger.debug("{} start run, mailboxNumber: {}", getClass().getName(), number);
@@ -98,20 +238,104 @@ public class EventCommittingContextMailBox {
         }
     }
 
+    /**
+     * 待持久化的消息不足最小批次时等待，等待期间放入的消息达到最小批次或等待超时后再组装批次；调整MailBox数量期间不等待
+     */
+    private boolean shouldLinger() {
+        if (lingerPolicy == null || drainLimit != Long.MAX_VALUE) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (lingerDeadline != 0) {
+            return now - lingerDeadline < 0 && enqueuedCount - polledCount + deferredMessageCount < lingerPolicy.getMinBatchSize();
+        }
+        long lingerNanos = lingerPolicy.getLingerNanos(enqueuedCount - polledCount + deferredMessageCount);
+        if (lingerNanos <= 0) {
+            return false;
+        }
+        lingerDeadline = now + lingerNanos;
+        lingerPolicy.schedule(this::tryRun, lingerNanos);
+        return true;
+    }
+
     /**
      * 请求完成MailBox的单次运行，如果MailBox中还有剩余消息，则继续尝试运行下一次
      */
     public void completeRun() {
+        completeRun(true);
+    }
+
+    /**
+     * 运行期间被请求过重新运行或者有新消息时继续运行；本次组装出了批次且有延迟的消息时也继续运行，
+     * 组装出空批次时延迟的消息都在等待聚合根释放，只有释放时的重新运行请求才能唤醒，否则会空转
+     */
+    private void completeRun(boolean rerunIfDeferred) {
         lastActiveTime = new Date();
         if (logger.isDebugEnabled()) {
             logger.debug("{} complete run, mailboxNumber: {}", getClass().getName(), number);
         }
-        setAsNotRunning();
+        synchronized (lockObj) {
+            setAsNotRunning();
+            if (rerunRequested || !messageQueue.isEmpty() || (rerunIfDeferred && deferredMessageCount > 0)) {
+                tryRun();
+            }
+        }
+    }
+
+    /**
+     * 完成一个批次：释放该批次持有的聚合根，并继续处理后续的消息
+     */
+    public void completeBatch(List<EventCommittingContext> messageList) {
+        lastActiveTime = new Date();
+        Set<String> aggregateRootIds = new HashSet<>();
+        for (EventCommittingContext message : messageList) {
+            aggregateRootIds.add(message.getEventStream().getAggregateRootId());
+        }
+        aggregateRootIds.forEach(this::releaseAggregate);
+        synchronized (lockObj) {
+            inFlightBatchCount--;
+        }
+        completeMessages(messageList.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("{} complete batch, mailboxNumber: {}, messageCount: {}", getClass().getName(), number, messageList.size());
+        }
         if (getTotalUnHandledMessageCount() > 0) {
             tryRun();
         }
     }
 
+    /**
+     * 在批次完成后继续持有聚合根（如处理冲突期间），该聚合根的后续事件在releaseAggregate前不会被持久化
+     */
+    public void holdAggregate(String aggregateRootId) {
+        inFlightAggregateDict.merge(aggregateRootId, 1, Integer::sum);
+    }
+
+    /**
+     * 释放聚合根，有延迟的消息时重新运行；正在组装批次时deferredMessageCount可能还没有更新，需要先检查running，
+     * 由tryRun记录重新运行请求，在本次运行结束时处理
+     */
+    public void releaseAggregate(String aggregateRootId) {
+        Integer count = inFlightAggregateDict.computeIfPresent(aggregateRootId, (key, value) -> value > 1 ? value - 1 : null);
+        if (count == null && (isRunning() || deferredMessageCount > 0)) {
+            tryRun();
+        }
+    }
+
+    private void completeMessages(long count) {
+        long completed = completedCount.addAndGet(count);
+        Runnable action = null;
+        synchronized (lockObj) {
+            if (drainedAction != null && completed >= drainLimit) {
+                action = drainedAction;
+                drainedAction = null;
+            }
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
     public void removeAggregateAllEventCommittingContexts(String aggregateRootId) {
         aggregateDictDict.remove(aggregateRootId);
     }
@@ -121,34 +345,117 @@ public class EventCommittingContextMailBox {
     }
 
     private void processMessages() {
+        List<EventCommittingContext> messageList = new ArrayList<>();
         synchronized (processMessageLockObj) {
             lastActiveTime = new Date();
-            List<EventCommittingContext> messageList = new ArrayList<>();
-            while (messageList.size() < batchSize) {
+            Set<String> batchAggregateRootIds = new HashSet<>();
+            Set<String> blockedAggregateRootIds = new HashSet<>();
+            long discardedCount = 0;
+            Iterator<EventCommittingContext> iterator = deferredMessageList.iterator();
+            while (iterator.hasNext() && messageList.size() < batchSize) {
+                EventCommittingContext message = iterator.next();
+                if (isDiscarded(message)) {
+                    iterator.remove();
+                    discardedCount++;
+                } else if (tryAddToBatch(message, messageList, batchAggregateRootIds, blockedAggregateRootIds)) {
+                    iterator.remove();
+                }
+            }
+            while (messageList.size() < batchSize && !isDrainLimitReached()) {
                 EventCommittingContext message = messageQueue.poll();
-                if (message != null) {
-                    ConcurrentHashMap<String, Byte> eventDict = aggregateDictDict.getOrDefault(message.getEventStream().getAggregateRootId(), null);
-                    if (eventDict != null) {
-                        if (eventDict.remove(message.getEventStream().getId()) != null) {
-                            messageList.add(message);
-                        }
-                    }
-                } else {
+                if (message == null) {
                     break;
                 }
+                polledCount++;
+                if (isDiscarded(message)) {
+                    discardedCount++;
+                } else if (!tryAddToBatch(message, messageList, batchAggregateRootIds, blockedAggregateRootIds)) {
+                    deferredMessageList.add(message);
+                }
             }
-            if (messageList.size() == 0) {
-                completeRun();
-                return;
+            deferredMessageCount = deferredMessageList.size();
+            if (!messageList.isEmpty()) {
+                synchronized (lockObj) {
+                    inFlightBatchCount++;
+                }
+            }
+            if (discardedCount > 0) {
+                completeMessages(discardedCount);
             }
-            try {
-                handleMessageAction.apply(messageList);
-            } catch (Exception ex) {
-                logger.error("{} run has unknown exception, mailboxNumber: {}", getClass().getName(), number, ex);
-                Task.sleep(1);
-                completeRun();
+        }
+        if (messageList.isEmpty()) {
+            completeRun(false);
+            return;
+        }
+        // 批次组装完成，未达到批次上限时可以继续组装下一批
+        completeRun();
+        try {
+            handleMessageAction.apply(messageList);
+        } catch (Exception ex) {
+            logger.error("{} run has unknown exception, mailboxNumber: {}", getClass().getName(), number, ex);
+            completeBatch(messageList);
+        }
+    }
+
+    /**
+     * 同一聚合根的事件必须按顺序持久化：聚合根有事件在其他批次中持久化，或者它更早的事件被延迟时，当前事件也需要延迟
+     */
+    private boolean tryAddToBatch(EventCommittingContext message, List<EventCommittingContext> messageList, Set<String> batchAggregateRootIds, Set<String> blockedAggregateRootIds) {
+        String aggregateRootId = message.getEventStream().getAggregateRootId();
+        if (!batchAggregateRootIds.contains(aggregateRootId)) {
+            if (blockedAggregateRootIds.contains(aggregateRootId) || inFlightAggregateDict.containsKey(aggregateRootId)) {
+                blockedAggregateRootIds.add(aggregateRootId);
+                return false;
             }
+            batchAggregateRootIds.add(aggregateRootId);
+            holdAggregate(aggregateRootId);
+        }
+        removeFromEventDict(message);
+        messageList.add(message);
+        return true;
+    }
+
+    /**
+     * 消息被延迟时仍保留在聚合根的事件字典中，直到进入批次或被丢弃时才移除，这样再次检查延迟的消息时不会被误判为已丢弃
+     */
+    private boolean isDiscarded(EventCommittingContext message) {
+        ConcurrentHashMap<String, Byte> eventDict = aggregateDictDict.getOrDefault(message.getEventStream().getAggregateRootId(), null);
+        if (eventDict == null) {
+            return true;
+        }
+        if (!eventDict.containsKey(message.getEventStream().getId())) {
+            return true;
         }
+        if (isCommandMailBoxPausing(message)) {
+            eventDict.remove(message.getEventStream().getId());
+            return true;
+        }
+        return false;
+    }
+
+    private void removeFromEventDict(EventCommittingContext message) {
+        ConcurrentHashMap<String, Byte> eventDict = aggregateDictDict.getOrDefault(message.getEventStream().getAggregateRootId(), null);
+        if (eventDict != null) {
+            eventDict.remove(message.getEventStream().getId());
+        }
+    }
+
+    /**
+     * 命令MailBox正在暂停时说明该聚合根正在处理冲突，它提交的事件会在恢复后重新产生，这里直接丢弃
+     */
+    private boolean isCommandMailBoxPausing(EventCommittingContext message) {
+        ProcessingCommandMailbox commandMailBox = message.getProcessingCommand().getMailBox();
+        if (commandMailBox == null || !(commandMailBox.isPauseRequested() || commandMailBox.isPaused())) {
+            return false;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("{} discard message of pausing command mailbox, mailboxNumber: {}, aggregateRootId: {}, commandId: {}",
+                    getClass().getName(),
+                    number,
+                    message.getEventStream().getAggregateRootId(),
+                    message.getProcessingCommand().getMessage().getId());
+        }
+        return true;
     }
 
     private void setAsRunning() {
@@ -162,5 +469,26 @@ public class EventCommittingContextMailBox {
     public int getNumber() {
         return number;
     }
-}
 
+    public BatchLingerPolicy getLingerPolicy() {
+        return lingerPolicy;
+    }
+
+    public void setLingerPolicy(BatchLingerPolicy lingerPolicy) {
+        synchronized (lockObj) {
+            this.lingerPolicy = lingerPolicy;
+            this.lingerDeadline = 0;
+        }
+    }
+
+    public int getMaxInFlightBatchCount() {
+        return maxInFlightBatchCount;
+    }
+
+    /**
+     * 允许同时持久化的最大批次数量，大于1时开启流水线模式：前一批次的结果仍在处理时，下一批次即可开始写入
+     */
+    public void setMaxInFlightBatchCount(int maxInFlightBatchCount) {
+        this.maxInFlightBatchCount = maxInFlightBatchCount;
+    }
+}
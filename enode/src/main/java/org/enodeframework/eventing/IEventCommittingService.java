@@ -2,12 +2,19 @@ package org.enodeframework.eventing;
 
 import org.enodeframework.commanding.ProcessingCommand;
 
+import java.util.List;
+
 public interface IEventCommittingService {
     /**
      * Commit the given aggregate's domain events to the eventstore async and publish the domain events.
      */
     void commitDomainEventAsync(EventCommittingContext eventCommittingContext);
 
+    /**
+     * Commit the given domain events together, the event streams of the same aggregate will be appended in one batch.
+     */
+    void commitDomainEventsAsync(List<EventCommittingContext> eventCommittingContexts);
+
     /**
      * Publish the given domain event stream async.
      */
@@ -1,5 +1,7 @@
 package org.enodeframework.eventing;
 
+import org.enodeframework.common.function.Action1;
+
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -24,4 +26,32 @@ public interface IEventStore {
      * Query a range of event streams of a single aggregate from event store async.
      */
     CompletableFuture<List<DomainEventStream>> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion);
+
+    /**
+     * Query a range of event streams of a single aggregate page by page in version order, each page holds at most pageSize event streams.
+     * The next page is only read after pageHandler returned, so callers never need to hold more than one page in memory.
+     * If pageHandler throws, no more pages are read and the returned future completes exceptionally with that exception.
+     * Returns the total count of event streams handed to pageHandler.
+     * <p>
+     * The default implementation reads version windows through {@link #queryAggregateEventsAsync(String, String, int, int)},
+     * relying on the versions of an aggregate being contiguous.
+     */
+    default CompletableFuture<Integer> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, int pageSize, Action1<List<DomainEventStream>> pageHandler) {
+        if (minVersion > maxVersion) {
+            return CompletableFuture.completedFuture(0);
+        }
+        int pageMaxVersion = (int) Math.min(maxVersion, (long) minVersion + pageSize - 1);
+        return queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, minVersion, pageMaxVersion).thenCompose(eventStreams -> {
+            if (eventStreams.isEmpty()) {
+                return CompletableFuture.completedFuture(0);
+            }
+            pageHandler.apply(eventStreams);
+            int count = eventStreams.size();
+            int lastVersion = eventStreams.get(count - 1).getVersion();
+            if (count < pageSize || lastVersion >= maxVersion) {
+                return CompletableFuture.completedFuture(count);
+            }
+            return queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, lastVersion + 1, maxVersion, pageSize, pageHandler).thenApply(x -> x + count);
+        });
+    }
 }
@@ -2,12 +2,10 @@ package org.enodeframework.eventing;
 
 import org.enodeframework.common.exception.MailBoxProcessException;
 import org.enodeframework.common.function.Action1;
-import org.enodeframework.common.io.Task;
 import org.enodeframework.messaging.IMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -22,13 +20,15 @@ public class ProcessingEventMailBox {
     private final String aggregateRootId;
     private final Executor executor;
     private final String aggregateRootTypeName;
-    private final AtomicInteger isUsing = new AtomicInteger(0);
-    private final AtomicInteger isRemoved = new AtomicInteger(0);
+    /**
+     * 正在使用当前MailBox的调用方数量，-1表示已移除
+     */
+    private final AtomicInteger usingCount = new AtomicInteger(0);
     private final AtomicInteger isRunning = new AtomicInteger(0);
     private final ConcurrentHashMap<Integer, ProcessingEvent> waitingProcessingEventDict = new ConcurrentHashMap<>();
     private final ConcurrentLinkedQueue<ProcessingEvent> processingEventQueue;
     private final Action1<ProcessingEvent> handleProcessingEventAction;
-    private Date lastActiveTime;
+    private volatile long lastActiveTime;
     private Integer nextExpectingEventVersion;
 
     public ProcessingEventMailBox(String aggregateRootTypeName, String aggregateRootId, Action1<ProcessingEvent> handleProcessingEventAction, Executor executor) {
@@ -37,7 +37,7 @@ public class ProcessingEventMailBox {
         this.aggregateRootId = aggregateRootId;
         this.aggregateRootTypeName = aggregateRootTypeName;
         this.handleProcessingEventAction = handleProcessingEventAction;
-        lastActiveTime = new Date();
+        lastActiveTime = System.currentTimeMillis();
     }
 
     private void tryRemovedInvalidWaitingMessages(int version) {
@@ -82,7 +82,7 @@ public class ProcessingEventMailBox {
                 this.nextExpectingEventVersion = version;
                 logger.info("{} refreshed nextExpectingEventVersion, aggregateRootId: {}, aggregateRootTypeName: {}, version: {}", getClass().getName(), aggregateRootId, aggregateRootTypeName, this.nextExpectingEventVersion);
                 tryEnqueueValidWaitingMessage();
-                lastActiveTime = new Date();
+                lastActiveTime = System.currentTimeMillis();
                 tryRun();
             } else {
                 logger.info("{} nextExpectingEventVersion ignored, aggregateRootId: {}, aggregateRootTypeName: {}, version: {}, current nextExpectingEventVersion: {}", getClass().getName(), aggregateRootId, aggregateRootTypeName, version, this.nextExpectingEventVersion);
@@ -134,7 +134,7 @@ public class ProcessingEventMailBox {
             } else if (eventStream.getVersion() == this.nextExpectingEventVersion) {
                 enqueueEventStream(processingEvent);
                 tryEnqueueValidWaitingMessage();
-                lastActiveTime = new Date();
+                lastActiveTime = System.currentTimeMillis();
                 tryRun();
                 return EnqueueMessageResult.Success;
             }
@@ -162,7 +162,7 @@ public class ProcessingEventMailBox {
      * 请求完成MailBox的单次运行，如果MailBox中还有剩余消息，则继续尝试运行下一次
      */
     public void completeRun() {
-        lastActiveTime = new Date();
+        lastActiveTime = System.currentTimeMillis();
         if (logger.isDebugEnabled()) {
             logger.debug("{} complete run, aggregateRootId: {}", getClass().getName(), aggregateRootId);
         }
@@ -172,19 +172,22 @@ public class ProcessingEventMailBox {
         }
     }
 
+    public long getLastActiveTimeMillis() {
+        return this.lastActiveTime;
+    }
+
     public boolean isInactive(int timeoutSeconds) {
-        return (System.currentTimeMillis() - lastActiveTime.getTime()) >= timeoutSeconds;
+        return (System.currentTimeMillis() - lastActiveTime) / 1000 >= timeoutSeconds;
     }
 
     private void processMessages() {
         ProcessingEvent message = processingEventQueue.poll();
         if (message != null) {
-            lastActiveTime = new Date();
+            lastActiveTime = System.currentTimeMillis();
             try {
                 handleProcessingEventAction.apply(message);
             } catch (Exception ex) {
                 logger.error("{} run has unknown exception, aggregateRootId: {}", getClass().getName(), aggregateRootId, ex);
-                Task.sleep(1);
                 completeRun();
             }
         } else {
@@ -200,16 +203,34 @@ public class ProcessingEventMailBox {
         return aggregateRootId;
     }
 
+    /**
+     * 增加使用计数，MailBox已被移除时返回false，调用方需要换一个新的MailBox
+     */
     public boolean tryUsing() {
-        return isUsing.compareAndSet(0, 1);
+        while (true) {
+            int count = usingCount.get();
+            if (count < 0) {
+                return false;
+            }
+            if (usingCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
     }
 
     public void exitUsing() {
-        isUsing.set(0);
+        usingCount.decrementAndGet();
+    }
+
+    /**
+     * 没有任何使用者时将MailBox标记为已移除，标记成功后不会再有新的使用者
+     */
+    public boolean tryMarkAsRemoved() {
+        return usingCount.compareAndSet(0, -1);
     }
 
-    public void markAsRemoved() {
-        isRemoved.set(1);
+    public void cancelRemoved() {
+        usingCount.compareAndSet(-1, 0);
     }
 
     private void setAsRunning() {
@@ -221,7 +242,7 @@ public class ProcessingEventMailBox {
     }
 
     public boolean isRemoved() {
-        return isRemoved.get() == 1;
+        return usingCount.get() < 0;
     }
 
     private void setAsNotRunning() {
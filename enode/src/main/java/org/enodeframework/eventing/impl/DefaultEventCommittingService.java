@@ -7,10 +7,16 @@ import org.enodeframework.commanding.ProcessingCommand;
 import org.enodeframework.commanding.ProcessingCommandMailbox;
 import org.enodeframework.common.exception.MailBoxInvalidException;
 import org.enodeframework.common.io.IOHelper;
+import org.enodeframework.common.io.Task;
 import org.enodeframework.common.serializing.ISerializeService;
+import org.enodeframework.common.threading.ShardAffinityExecutor;
+import org.enodeframework.common.utilities.ConsistentHashRing;
+import org.enodeframework.domain.IAggregateSnapshotter;
 import org.enodeframework.domain.IMemoryCache;
+import org.enodeframework.eventing.BatchLingerPolicy;
 import org.enodeframework.eventing.DomainEventStream;
 import org.enodeframework.eventing.DomainEventStreamMessage;
+import org.enodeframework.eventing.EventAppendStatus;
 import org.enodeframework.eventing.EventCommittingContext;
 import org.enodeframework.eventing.EventCommittingContextMailBox;
 import org.enodeframework.eventing.IEventCommittingService;
@@ -20,12 +26,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author anruence@gmail.com
@@ -33,73 +41,228 @@ import java.util.stream.Collectors;
 public class DefaultEventCommittingService implements IEventCommittingService {
     private static final Logger logger = LoggerFactory.getLogger(DefaultEventCommittingService.class);
 
-    private final int eventMailBoxCount;
+    private final Object lockObj = new Object();
     private final IMemoryCache memoryCache;
     private final IEventStore eventStore;
     private final Executor executor;
     private final ISerializeService serializeService;
     private final IMessagePublisher<DomainEventStreamMessage> domainEventPublisher;
+    /**
+     * 所有创建过的MailBox，下标即MailBox编号，缩容后多出的MailBox保留以便再次扩容时复用
+     */
     private final List<EventCommittingContextMailBox> eventCommittingContextMailBoxList;
+    private volatile MailBoxRouting routing;
+    /**
+     * 当前调整MailBox数量的任务，调整完成前新的调整会排在其后
+     */
+    private CompletableFuture<Void> resizeFuture = Task.completedTask;
+    /**
+     * 每个MailBox允许同时持久化的批次数量，大于1时开启流水线持久化
+     */
+    private volatile int maxInFlightBatchCount = 1;
+    /**
+     * 事件持久化的攒批策略，为null时不等待
+     */
+    private volatile BatchLingerPolicy lingerPolicy;
+    /**
+     * 保存事件流附带的聚合根快照，为null表示不保存
+     */
+    private IAggregateSnapshotter aggregateSnapshotter;
 
     public DefaultEventCommittingService(IMemoryCache memoryCache, IEventStore eventStore, ISerializeService serializeService, IMessagePublisher<DomainEventStreamMessage> domainEventPublisher, Executor executor) {
-        this(memoryCache, eventStore, serializeService, domainEventPublisher, 4, executor);
+        this(memoryCache, eventStore, serializeService, domainEventPublisher, defaultEventMailBoxCount(0), executor);
     }
 
     public DefaultEventCommittingService(IMemoryCache memoryCache, IEventStore eventStore, ISerializeService serializeService, IMessagePublisher<DomainEventStreamMessage> domainEventPublisher, int eventMailBoxCount, Executor executor) {
+        if (eventMailBoxCount <= 0) {
+            throw new IllegalArgumentException("eventMailBoxCount must be positive, eventMailBoxCount: " + eventMailBoxCount);
+        }
         this.memoryCache = memoryCache;
         this.eventStore = eventStore;
         this.serializeService = serializeService;
         this.domainEventPublisher = domainEventPublisher;
-        this.eventMailBoxCount = eventMailBoxCount;
         this.executor = executor;
         this.eventCommittingContextMailBoxList = new ArrayList<>();
-        for (int i = 0; i < this.eventMailBoxCount; i++) {
-            EventCommittingContextMailBox mailBox = new EventCommittingContextMailBox(i, 1000, x -> batchPersistEventAsync(x, 0), this.executor);
-            eventCommittingContextMailBoxList.add(mailBox);
+        for (int i = 0; i < eventMailBoxCount; i++) {
+            eventCommittingContextMailBoxList.add(createMailBox(i));
         }
+        this.routing = new MailBoxRouting(0, new ArrayList<>(eventCommittingContextMailBoxList));
     }
 
+    /**
+     * 默认的MailBox数量：取CPU核数与数据库连接池大小的较小值，且不小于4；dbPoolSize小于等于0表示未知
+     */
+    public static int defaultEventMailBoxCount(int dbPoolSize) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = dbPoolSize > 0 ? Math.min(processors, dbPoolSize) : processors;
+        return Math.max(4, count);
+    }
+
+    private EventCommittingContextMailBox createMailBox(int number) {
+        EventCommittingContextMailBox mailBox = new EventCommittingContextMailBox(number, 1000, x -> batchPersistEventAsync(x, 0), ShardAffinityExecutor.select(this.executor, number));
+        mailBox.setMaxInFlightBatchCount(maxInFlightBatchCount);
+        mailBox.setLingerPolicy(lingerPolicy);
+        return mailBox;
+    }
 
     @Override
     public void commitDomainEventAsync(EventCommittingContext eventCommittingContext) {
-        int eventMailboxIndex = getEventMailBoxIndex(eventCommittingContext.getEventStream().getAggregateRootId());
-        EventCommittingContextMailBox eventMailbox = eventCommittingContextMailBoxList.get(eventMailboxIndex);
-        eventMailbox.enqueueMessage(eventCommittingContext);
+        int hash = ConsistentHashRing.hash(eventCommittingContext.getEventStream().getAggregateRootId());
+        while (true) {
+            MailBoxRouting current = routing;
+            if (current.select(hash).enqueueMessage(eventCommittingContext, current.version)) {
+                return;
+            }
+            // 正在切换路由，等待新的路由发布
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void commitDomainEventsAsync(List<EventCommittingContext> eventCommittingContexts) {
+        List<EventCommittingContext> remainingContexts = eventCommittingContexts;
+        while (!remainingContexts.isEmpty()) {
+            MailBoxRouting current = routing;
+            Map<EventCommittingContextMailBox, List<EventCommittingContext>> mailboxContextDict = new LinkedHashMap<>();
+            for (EventCommittingContext eventCommittingContext : remainingContexts) {
+                EventCommittingContextMailBox mailBox = current.select(ConsistentHashRing.hash(eventCommittingContext.getEventStream().getAggregateRootId()));
+                mailboxContextDict.computeIfAbsent(mailBox, x -> new ArrayList<>()).add(eventCommittingContext);
+            }
+            List<EventCommittingContext> rejectedContexts = new ArrayList<>();
+            mailboxContextDict.forEach((mailBox, contexts) -> {
+                if (!mailBox.enqueueMessages(contexts, current.version)) {
+                    rejectedContexts.addAll(contexts);
+                }
+            });
+            if (!rejectedContexts.isEmpty()) {
+                Thread.yield();
+            }
+            remainingContexts = rejectedContexts;
+        }
+    }
+
+    /**
+     * 运行时调整MailBox数量。所有MailBox先处理完调整前已放入的事件，期间按新的一致性哈希环放入的事件暂不处理，
+     * 排空后再继续处理，因此同一聚合根的事件不会在新旧两个MailBox中同时被持久化。
+     */
+    public CompletableFuture<Void> resizeEventMailBoxesAsync(int eventMailBoxCount) {
+        if (eventMailBoxCount <= 0) {
+            throw new IllegalArgumentException("eventMailBoxCount must be positive, eventMailBoxCount: " + eventMailBoxCount);
+        }
+        synchronized (lockObj) {
+            resizeFuture = resizeFuture.thenCompose(x -> resizeEventMailBoxes(eventMailBoxCount));
+            return resizeFuture;
+        }
+    }
+
+    private CompletableFuture<Void> resizeEventMailBoxes(int eventMailBoxCount) {
+        MailBoxRouting current = routing;
+        if (current.mailBoxes.size() == eventMailBoxCount) {
+            return Task.completedTask;
+        }
+        List<EventCommittingContextMailBox> allMailBoxes;
+        synchronized (lockObj) {
+            for (int i = eventCommittingContextMailBoxList.size(); i < eventMailBoxCount; i++) {
+                eventCommittingContextMailBoxList.add(createMailBox(i));
+            }
+            allMailBoxes = new ArrayList<>(eventCommittingContextMailBoxList);
+        }
+        MailBoxRouting next = new MailBoxRouting(current.version + 1, new ArrayList<>(allMailBoxes.subList(0, eventMailBoxCount)));
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(allMailBoxes.size() + 1);
+        Runnable drainedAction = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                allMailBoxes.forEach(EventCommittingContextMailBox::endDrain);
+                logger.info("Event committing mailboxes resized, from: {}, to: {}", current.mailBoxes.size(), eventMailBoxCount);
+                future.complete(null);
+            }
+        };
+        // 先让所有MailBox拒绝旧路由并记录排空位置，再发布新路由，保证按新路由放入的事件都在排空位置之后
+        for (EventCommittingContextMailBox mailBox : allMailBoxes) {
+            if (mailBox.beginDrain(next.version, drainedAction)) {
+                drainedAction.run();
+            }
+        }
+        routing = next;
+        drainedAction.run();
+        return future;
+    }
+
+    public int getEventMailBoxCount() {
+        return routing.mailBoxes.size();
     }
 
     @Override
     public void publishDomainEventAsync(ProcessingCommand processingCommand, DomainEventStream eventStream) {
+        publishDomainEventAsync(processingCommand, createEventStreamMessage(processingCommand, eventStream), 0);
+    }
+
+    private DomainEventStreamMessage createEventStreamMessage(ProcessingCommand processingCommand, DomainEventStream eventStream) {
         if (eventStream.getItems() == null || eventStream.getItems().size() == 0) {
             eventStream.setItems(processingCommand.getItems());
         }
-        DomainEventStreamMessage eventStreamMessage = new DomainEventStreamMessage(
+        return new DomainEventStreamMessage(
                 processingCommand.getMessage().getId(),
                 eventStream.getAggregateRootId(),
                 eventStream.getVersion(),
                 eventStream.getAggregateRootTypeName(),
                 eventStream.events(),
                 eventStream.getItems());
-        publishDomainEventAsync(processingCommand, eventStreamMessage, 0);
     }
 
-    private int getEventMailBoxIndex(String aggregateRootId) {
-        int hash = 23;
-        for (char c : aggregateRootId.toCharArray()) {
-            hash = (hash << 5) - hash + c;
+    /**
+     * 一次发布本批次持久化成功的事件，每个事件被确认后单独完成对应的命令；发送失败的事件按单个事件重试
+     */
+    private void publishDomainEventsAsync(List<EventCommittingContext> committingContexts) {
+        if (committingContexts.isEmpty()) {
+            return;
+        }
+        List<DomainEventStreamMessage> eventStreamMessages = new ArrayList<>(committingContexts.size());
+        for (EventCommittingContext committingContext : committingContexts) {
+            eventStreamMessages.add(createEventStreamMessage(committingContext.getProcessingCommand(), committingContext.getEventStream()));
         }
-        if (hash < 0) {
-            hash = Math.abs(hash);
+        List<CompletableFuture<Void>> futures;
+        try {
+            futures = domainEventPublisher.publishAllAsync(eventStreamMessages);
+        } catch (Exception ex) {
+            logger.error("Batch publish domain events has exception, retry one by one, eventStreamCount: {}", eventStreamMessages.size(), ex);
+            futures = null;
+        }
+        for (int i = 0; i < eventStreamMessages.size(); i++) {
+            ProcessingCommand processingCommand = committingContexts.get(i).getProcessingCommand();
+            DomainEventStreamMessage eventStreamMessage = eventStreamMessages.get(i);
+            CompletableFuture<Void> future = futures == null || futures.size() != eventStreamMessages.size() ? null : futures.get(i);
+            if (future == null) {
+                publishDomainEventAsync(processingCommand, eventStreamMessage, 1);
+                continue;
+            }
+            future.whenComplete((x, ex) -> {
+                if (ex != null) {
+                    logger.error("Publish domain events has exception, retry it, {}", eventStreamMessage, ex);
+                    publishDomainEventAsync(processingCommand, eventStreamMessage, 1);
+                    return;
+                }
+                completePublishedCommand(processingCommand, eventStreamMessage);
+            });
         }
-        return hash % eventMailBoxCount;
     }
 
     private void batchPersistEventAsync(List<EventCommittingContext> committingContexts, int retryTimes) {
         if (committingContexts == null || committingContexts.size() == 0) {
             return;
         }
+        List<DomainEventStream> eventStreams = new ArrayList<>(committingContexts.size());
+        for (EventCommittingContext committingContext : committingContexts) {
+            eventStreams.add(committingContext.getEventStream());
+        }
+        long startTime = System.nanoTime();
         IOHelper.tryAsyncActionRecursively("BatchPersistEventAsync",
-                () -> eventStore.batchAppendAsync(committingContexts.stream().map(EventCommittingContext::getEventStream).collect(Collectors.toList())),
+                () -> eventStore.batchAppendAsync(eventStreams),
                 result -> {
+                    BatchLingerPolicy currentLingerPolicy = lingerPolicy;
+                    if (currentLingerPolicy != null) {
+                        currentLingerPolicy.recordLatency(System.nanoTime() - startTime);
+                    }
                     EventCommittingContextMailBox eventMailBox = committingContexts.stream()
                             .findFirst()
                             .orElseThrow(() -> new MailBoxInvalidException("eventMailBox can not be null"))
@@ -108,74 +271,100 @@ public class DefaultEventCommittingService implements IEventCommittingService {
                         logger.error("Batch persist events success, but the persist result is null, the current event committing mailbox should be pending, mailboxNumber: {}", eventMailBox.getNumber());
                         return;
                     }
-                    //针对持久化成功的聚合根，正常发布这些聚合根的事件到Q端
-                    if (result.getSuccessAggregateRootIdList().size() > 0) {
-                        for (String aggregateRootId : result.getSuccessAggregateRootIdList()) {
-                            List<EventCommittingContext> committingContextList = committingContexts.stream()
-                                    .filter(x -> x.getEventStream().getAggregateRootId().equals(aggregateRootId))
-                                    .collect(Collectors.toList());
-                            if (committingContextList.size() > 0) {
-                                for (EventCommittingContext committingContext : committingContextList) {
-                                    publishDomainEventAsync(committingContext.getProcessingCommand(), committingContext.getEventStream());
-                                }
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("Batch persist events success, mailboxNumber: {}, aggregateRootId: {}",
-                                            eventMailBox.getNumber(),
-                                            aggregateRootId);
-                                }
-                            }
+                    //按聚合根的持久化结果一次遍历本批次：成功的正常发布事件到Q端，重复的命令和版本冲突只由该聚合根在本批次中的第一个事件流处理
+                    Set<String> handledAggregateRootIds = new HashSet<>();
+                    List<EventCommittingContext> successContexts = new ArrayList<>(committingContexts.size());
+                    boolean duplicateEventLogged = false;
+                    for (EventCommittingContext committingContext : committingContexts) {
+                        String aggregateRootId = committingContext.getEventStream().getAggregateRootId();
+                        EventAppendStatus appendStatus = result.getStatus(aggregateRootId);
+                        committingContext.setAppendStatus(appendStatus);
+                        if (appendStatus == null) {
+                            continue;
                         }
-                    }
-                    //针对持久化出现重复的命令ID，在命令MailBox中标记为已重复，在事件MailBox中清除对应聚合根产生的事件，且重新发布这些命令对应的领域事件到Q端
-                    if (result.getDuplicateCommandAggregateRootIdList().size() > 0) {
-                        for (Map.Entry<String, List<String>> entry : result.getDuplicateCommandAggregateRootIdList().entrySet()) {
-                            Optional<EventCommittingContext> committingContextOptional = committingContexts.stream()
-                                    .filter(x -> entry.getKey().equals(x.getEventStream().getAggregateRootId()))
-                                    .findFirst();
-                            if (committingContextOptional.isPresent()) {
-                                logger.warn("Batch persist events has duplicate commandIds, mailboxNumber: {}, aggregateRootId: {}, commandIds: {}",
+                        boolean first = handledAggregateRootIds.add(aggregateRootId);
+                        if (appendStatus == EventAppendStatus.Success) {
+                            if (aggregateSnapshotter != null && committingContext.getSnapshot() != null) {
+                                aggregateSnapshotter.saveSnapshotAsync(committingContext.getSnapshot());
+                            }
+                            successContexts.add(committingContext);
+                            if (first && logger.isDebugEnabled()) {
+                                logger.debug("Batch persist events success, mailboxNumber: {}, aggregateRootId: {}",
                                         eventMailBox.getNumber(),
-                                        entry.getKey(),
-                                        String.join(",", entry.getValue()));
-                                EventCommittingContext committingContext = committingContextOptional.get();
-                                resetCommandMailBoxConsumingSequence(committingContext, committingContext.getProcessingCommand().getSequence() + 1, entry.getValue())
-                                        .thenAccept(x -> tryToRepublishEventAsync(committingContext, 0));
+                                        aggregateRootId);
                             }
-                        }
-                    }
-
-                    //针对持久化出现版本冲突的聚合根，则自动处理每个聚合根的冲突
-                    if (result.getDuplicateEventAggregateRootIdList().size() > 0) {
-                        for (String aggregateRootId : result.getDuplicateEventAggregateRootIdList()) {
-                            Optional<EventCommittingContext> committingContextOptional = committingContexts.stream().filter(x -> x.getEventStream().getAggregateRootId().equals(aggregateRootId)).findFirst();
-                            if (committingContextOptional.isPresent()) {
+                        } else if (appendStatus == EventAppendStatus.DuplicateCommand) {
+                            committingContext.setDuplicateCommandIds(result.getDuplicateCommandIds(aggregateRootId));
+                            if (first) {
+                                handleDuplicateCommand(eventMailBox, committingContext);
+                            }
+                        } else if (first) {
+                            if (!duplicateEventLogged) {
+                                duplicateEventLogged = true;
                                 logger.warn("Batch persist events, mailboxNumber: {}, duplicateEventAggregateRootCount: {}, detail: {}",
                                         eventMailBox.getNumber(),
                                         result.getDuplicateEventAggregateRootIdList().size(),
                                         serializeService.serialize(result.getDuplicateEventAggregateRootIdList()));
-                                EventCommittingContext eventCommittingContext = committingContextOptional.get();
-                                if (eventCommittingContext.getEventStream().getVersion() == 1) {
-                                    handleFirstEventDuplicationAsync(eventCommittingContext, 0);
-                                } else {
-                                    resetCommandMailBoxConsumingSequence(eventCommittingContext, eventCommittingContext.getProcessingCommand().getSequence(), null);
-                                }
                             }
+                            handleDuplicateEvent(eventMailBox, committingContext);
                         }
                     }
-                    //最终，将当前的EventMailBox的本次处理标记为处理完成，然后继续可以处理下一批事件
-                    eventMailBox.completeRun();
+                    publishDomainEventsAsync(successContexts);
+                    //最终，将当前的EventMailBox的本批次标记为处理完成，释放本批次持有的聚合根，然后继续可以处理下一批事件
+                    eventMailBox.completeBatch(committingContexts);
                 },
                 () -> String.format("[contextListCount:%d]", committingContexts.size()),
                 null, retryTimes, true);
     }
 
+    /**
+     * 针对持久化出现重复的命令ID，在命令MailBox中标记为已重复，在事件MailBox中清除对应聚合根产生的事件，且重新发布这些命令对应的领域事件到Q端
+     */
+    private void handleDuplicateCommand(EventCommittingContextMailBox eventMailBox, EventCommittingContext committingContext) {
+        String aggregateRootId = committingContext.getEventStream().getAggregateRootId();
+        List<String> duplicateCommandIds = committingContext.getDuplicateCommandIds();
+        logger.warn("Batch persist events has duplicate commandIds, mailboxNumber: {}, aggregateRootId: {}, commandIds: {}",
+                eventMailBox.getNumber(),
+                aggregateRootId,
+                String.join(",", duplicateCommandIds));
+        //冲突处理完成前继续持有该聚合根，它后续的事件不会进入新的批次
+        eventMailBox.holdAggregate(aggregateRootId);
+        CompletableFuture<Void> resetFuture;
+        if (duplicateCommandIds.contains(committingContext.getProcessingCommand().getMessage().getId())) {
+            resetFuture = resetCommandMailBoxConsumingSequence(committingContext, committingContext.getProcessingCommand().getSequence() + 1, duplicateCommandIds);
+            resetFuture.thenAccept(x -> tryToRepublishEventAsync(committingContext, 0));
+        } else {
+            //重复的命令不是该聚合根在本批次中的第一个命令（如合并提交），则从第一个命令开始重新处理，重复的命令会在处理时重新发布事件
+            resetFuture = resetCommandMailBoxConsumingSequence(committingContext, committingContext.getProcessingCommand().getSequence(), duplicateCommandIds);
+        }
+        resetFuture.whenComplete((x, ex) -> eventMailBox.releaseAggregate(aggregateRootId));
+    }
+
+    /**
+     * 针对持久化出现版本冲突的聚合根，自动处理该聚合根的冲突
+     */
+    private void handleDuplicateEvent(EventCommittingContextMailBox eventMailBox, EventCommittingContext committingContext) {
+        String aggregateRootId = committingContext.getEventStream().getAggregateRootId();
+        eventMailBox.holdAggregate(aggregateRootId);
+        CompletableFuture<Void> recoverFuture;
+        if (committingContext.getEventStream().getVersion() == 1) {
+            recoverFuture = handleFirstEventDuplicationAsync(committingContext, 0);
+        } else {
+            recoverFuture = resetCommandMailBoxConsumingSequence(committingContext, committingContext.getProcessingCommand().getSequence(), null);
+        }
+        recoverFuture.whenComplete((x, ex) -> eventMailBox.releaseAggregate(aggregateRootId));
+    }
+
     private CompletableFuture<Void> resetCommandMailBoxConsumingSequence(EventCommittingContext context, long consumingSequence, List<String> duplicateCommandIdList) {
         ProcessingCommandMailbox commandMailBox = context.getProcessingCommand().getMailBox();
-        EventCommittingContextMailBox eventMailBox = context.getMailBox();
         String aggregateRootId = context.getEventStream().getAggregateRootId();
-        commandMailBox.pause();
-        eventMailBox.removeAggregateAllEventCommittingContexts(aggregateRootId);
-        return memoryCache.refreshAggregateFromEventStoreAsync(context.getEventStream().getAggregateRootTypeName(), aggregateRootId).thenAccept(x -> {
+        CompletableFuture<Void> pauseFuture = commandMailBox.pauseAsync();
+        removeAggregateAllEventCommittingContexts(context, aggregateRootId);
+        return pauseFuture.thenCompose(x -> {
+            //命令MailBox在本次运行结束前可能又提交了该聚合根的事件，这些事件基于旧的聚合根状态，需要再清除一次
+            removeAggregateAllEventCommittingContexts(context, aggregateRootId);
+            return memoryCache.refreshAggregateFromEventStoreAsync(context.getEventStream().getAggregateRootTypeName(), aggregateRootId);
+        }).thenAccept(x -> {
             try {
                 if (duplicateCommandIdList != null) {
                     for (String commandId : duplicateCommandIdList) {
@@ -193,6 +382,17 @@ public class DefaultEventCommittingService implements IEventCommittingService {
         });
     }
 
+    /**
+     * 调整MailBox数量期间，同一聚合根的事件可能分布在新旧两个MailBox中，需要都清除
+     */
+    private void removeAggregateAllEventCommittingContexts(EventCommittingContext context, String aggregateRootId) {
+        context.getMailBox().removeAggregateAllEventCommittingContexts(aggregateRootId);
+        EventCommittingContextMailBox currentMailBox = routing.select(ConsistentHashRing.hash(aggregateRootId));
+        if (currentMailBox != context.getMailBox()) {
+            currentMailBox.removeAggregateAllEventCommittingContexts(aggregateRootId);
+        }
+    }
+
     private void tryToRepublishEventAsync(EventCommittingContext context, int retryTimes) {
         ICommand command = context.getProcessingCommand().getMessage();
         IOHelper.tryAsyncActionRecursively("FindEventByCommandIdAsync",
@@ -276,15 +476,68 @@ public class DefaultEventCommittingService implements IEventCommittingService {
                     if (logger.isDebugEnabled()) {
                         logger.debug("Publish domain events success, {}", eventStream);
                     }
-                    String commandHandleResult = processingCommand.getCommandExecuteContext().getResult();
-                    CommandResult commandResult = new CommandResult(CommandStatus.Success, processingCommand.getMessage().getId(), eventStream.getAggregateRootId(), commandHandleResult, String.class.getName());
-                    completeCommand(processingCommand, commandResult);
+                    completePublishedCommand(processingCommand, eventStream);
                 },
                 () -> String.format("[eventStream:%s]", eventStream),
                 null, retryTimes, true);
     }
 
+    private void completePublishedCommand(ProcessingCommand processingCommand, DomainEventStreamMessage eventStream) {
+        String commandHandleResult = processingCommand.getCommandExecuteContext().getResult();
+        CommandResult commandResult = new CommandResult(CommandStatus.Success, processingCommand.getMessage().getId(), eventStream.getAggregateRootId(), commandHandleResult, String.class.getName());
+        completeCommand(processingCommand, commandResult);
+    }
+
     private CompletableFuture<Void> completeCommand(ProcessingCommand processingCommand, CommandResult commandResult) {
         return processingCommand.getMailBox().completeMessage(processingCommand, commandResult);
     }
-}
\ No newline at end of file
+
+    public int getMaxInFlightBatchCount() {
+        return maxInFlightBatchCount;
+    }
+
+    public void setMaxInFlightBatchCount(int maxInFlightBatchCount) {
+        if (maxInFlightBatchCount <= 0) {
+            throw new IllegalArgumentException("maxInFlightBatchCount must be positive, maxInFlightBatchCount: " + maxInFlightBatchCount);
+        }
+        synchronized (lockObj) {
+            this.maxInFlightBatchCount = maxInFlightBatchCount;
+            eventCommittingContextMailBoxList.forEach(x -> x.setMaxInFlightBatchCount(maxInFlightBatchCount));
+        }
+    }
+
+    public BatchLingerPolicy getLingerPolicy() {
+        return lingerPolicy;
+    }
+
+    public void setLingerPolicy(BatchLingerPolicy lingerPolicy) {
+        synchronized (lockObj) {
+            this.lingerPolicy = lingerPolicy;
+            eventCommittingContextMailBoxList.forEach(x -> x.setLingerPolicy(lingerPolicy));
+        }
+    }
+
+    public IAggregateSnapshotter getAggregateSnapshotter() {
+        return aggregateSnapshotter;
+    }
+
+    public void setAggregateSnapshotter(IAggregateSnapshotter aggregateSnapshotter) {
+        this.aggregateSnapshotter = aggregateSnapshotter;
+    }
+
+    private static class MailBoxRouting {
+        private final int version;
+        private final List<EventCommittingContextMailBox> mailBoxes;
+        private final ConsistentHashRing<EventCommittingContextMailBox> ring;
+
+        MailBoxRouting(int version, List<EventCommittingContextMailBox> mailBoxes) {
+            this.version = version;
+            this.mailBoxes = mailBoxes;
+            this.ring = new ConsistentHashRing<>(mailBoxes);
+        }
+
+        EventCommittingContextMailBox select(int hash) {
+            return mailBoxes.get(ring.selectIndex(hash));
+        }
+    }
+}
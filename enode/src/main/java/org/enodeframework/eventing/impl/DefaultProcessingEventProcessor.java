@@ -3,8 +3,9 @@ package org.enodeframework.eventing.impl;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import org.enodeframework.common.io.IOHelper;
-import org.enodeframework.common.io.Task;
 import org.enodeframework.common.scheduling.IScheduleService;
+import org.enodeframework.common.scheduling.TimeoutWheel;
+import org.enodeframework.common.threading.ShardAffinityExecutor;
 import org.enodeframework.eventing.DomainEventStreamMessage;
 import org.enodeframework.eventing.EnqueueMessageResult;
 import org.enodeframework.eventing.IProcessingEventProcessor;
@@ -16,11 +17,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
 
 /**
  * @author anruence@gmail.com
@@ -33,6 +32,10 @@ public class DefaultProcessingEventProcessor implements IProcessingEventProcesso
     private final ConcurrentHashMap<String, ProcessingEventMailBox> toRefreshAggregateRootMailBoxDict;
     private final String name = "DefaultEventProcessor";
     private final ConcurrentHashMap<String, ProcessingEventMailBox> mailboxDict;
+    /**
+     * 按最后活跃时间跟踪邮箱，清理时只检查已到期的邮箱
+     */
+    private final TimeoutWheel<ProcessingEventMailBox> inactiveMailboxWheel;
     private final ConcurrentHashMap<String, Boolean> refreshingAggregateRootDict;
     private final IScheduleService scheduleService;
     private final IMessageDispatcher messageDispatcher;
@@ -48,6 +51,7 @@ public class DefaultProcessingEventProcessor implements IProcessingEventProcesso
         this.publishedVersionStore = publishedVersionStore;
         this.executor = executor;
         this.mailboxDict = new ConcurrentHashMap<>();
+        this.inactiveMailboxWheel = new TimeoutWheel<>(1000);
         this.toRefreshAggregateRootMailBoxDict = new ConcurrentHashMap<>();
         this.refreshingAggregateRootDict = new ConcurrentHashMap<>();
         this.scanInactiveMailBoxTaskName = "CleanInactiveProcessingEventMailBoxes_" + System.currentTimeMillis() + new Random().nextInt(10000);
@@ -61,25 +65,20 @@ public class DefaultProcessingEventProcessor implements IProcessingEventProcesso
             throw new IllegalArgumentException("aggregateRootId of domain event stream cannot be null or empty, domainEventStreamId:" + processingMessage.getMessage().getId());
         }
         ProcessingEventMailBox mailbox = mailboxDict.computeIfAbsent(aggregateRootId, key -> buildProcessingEventMailBox(processingMessage));
-        long mailboxTryUsingCount = 0L;
         while (!mailbox.tryUsing()) {
-            Task.sleep(1);
-            mailboxTryUsingCount++;
-            if (mailboxTryUsingCount % 10000 == 0) {
-                logger.warn("Event mailbox try using count: {}, aggregateRootId: {}, aggregateRootTypeName: {}", mailboxTryUsingCount, mailbox.getAggregateRootId(), mailbox.getAggregateRootTypeName());
-            }
+            // 邮箱已被清理，原子地替换为新的邮箱
+            mailbox = mailboxDict.compute(aggregateRootId, (key, current) -> current == null || current.isRemoved() ? buildProcessingEventMailBox(processingMessage) : current);
         }
-        if (mailbox.isRemoved()) {
-            mailbox = buildProcessingEventMailBox(processingMessage);
-            mailboxDict.putIfAbsent(aggregateRootId, mailbox);
-        }
-        EnqueueMessageResult enqueueResult = mailbox.enqueueMessage(processingMessage);
-        if (enqueueResult == EnqueueMessageResult.Ignored) {
-            processingMessage.getProcessContext().notifyEventProcessed();
-        } else if (enqueueResult == EnqueueMessageResult.AddToWaitingList) {
-            addToRefreshAggregateMailBoxToDict(mailbox);
+        try {
+            EnqueueMessageResult enqueueResult = mailbox.enqueueMessage(processingMessage);
+            if (enqueueResult == EnqueueMessageResult.Ignored) {
+                processingMessage.getProcessContext().notifyEventProcessed();
+            } else if (enqueueResult == EnqueueMessageResult.AddToWaitingList) {
+                addToRefreshAggregateMailBoxToDict(mailbox);
+            }
+        } finally {
+            mailbox.exitUsing();
         }
-        mailbox.exitUsing();
     }
 
     private void addToRefreshAggregateMailBoxToDict(ProcessingEventMailBox mailbox) {
@@ -90,7 +89,9 @@ public class DefaultProcessingEventProcessor implements IProcessingEventProcesso
     }
 
     private ProcessingEventMailBox buildProcessingEventMailBox(ProcessingEvent processingMessage) {
-        return new ProcessingEventMailBox(processingMessage.getMessage().getAggregateRootTypeName(), processingMessage.getMessage().getAggregateRootId(), y -> dispatchProcessingMessageAsync(y, 0), executor);
+        ProcessingEventMailBox mailbox = new ProcessingEventMailBox(processingMessage.getMessage().getAggregateRootTypeName(), processingMessage.getMessage().getAggregateRootId(), y -> dispatchProcessingMessageAsync(y, 0), ShardAffinityExecutor.select(executor, processingMessage.getMessage().getAggregateRootId()));
+        inactiveMailboxWheel.schedule(mailbox, mailbox.getLastActiveTimeMillis() + timeoutSeconds * 1000L);
+        return mailbox;
     }
 
     private void tryToRefreshAggregateMailBoxNextExpectingEventVersion(ProcessingEventMailBox processingEventMailBox) {
@@ -178,20 +179,28 @@ public class DefaultProcessingEventProcessor implements IProcessingEventProcesso
     }
 
     private void cleanInactiveMailbox() {
-        List<Map.Entry<String, ProcessingEventMailBox>> inactiveList = mailboxDict.entrySet().stream()
-                .filter(x -> isMailBoxAllowRemove(x.getValue()))
-                .collect(Collectors.toList());
-        inactiveList.forEach(entry -> {
-            if (entry.getValue().tryUsing()) {
-                if (isMailBoxAllowRemove(entry.getValue())) {
-                    ProcessingEventMailBox removed = mailboxDict.remove(entry.getKey());
-                    if (removed != null) {
-                        removed.markAsRemoved();
-                        logger.info("Removed inactive domain event stream mailbox, aggregateRootTypeName: {}, aggregateRootId: {}", removed.getAggregateRootTypeName(), removed.getAggregateRootId());
-                    }
-                }
+        inactiveMailboxWheel.advance(System.currentTimeMillis(), this::tryRemoveInactiveMailbox);
+    }
+
+    /**
+     * 移除到期的邮箱，返回下一次检查的时间点，返回0表示邮箱已经不在字典中
+     */
+    private long tryRemoveInactiveMailbox(ProcessingEventMailBox mailbox) {
+        ProcessingEventMailBox current = mailboxDict.computeIfPresent(mailbox.getAggregateRootId(), (key, value) -> {
+            if (value != mailbox || !isMailBoxAllowRemove(value) || !value.tryMarkAsRemoved()) {
+                return value;
             }
+            if (!isMailBoxAllowRemove(value)) {
+                value.cancelRemoved();
+                return value;
+            }
+            logger.info("Removed inactive domain event stream mailbox, aggregateRootTypeName: {}, aggregateRootId: {}", value.getAggregateRootTypeName(), value.getAggregateRootId());
+            return null;
         });
+        if (current != mailbox) {
+            return 0;
+        }
+        return mailbox.getLastActiveTimeMillis() + timeoutSeconds * 1000L;
     }
 
     private boolean isMailBoxAllowRemove(ProcessingEventMailBox mailbox) {
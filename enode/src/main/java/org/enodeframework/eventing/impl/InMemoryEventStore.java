@@ -124,9 +124,7 @@ public class InMemoryEventStore implements IEventStore {
                 aggregateInfo.setCurrentVersion(eventStream.getVersion());
             }
 
-            if (!eventAppendResult.getSuccessAggregateRootIdList().contains(aggregateRootId)) {
-                eventAppendResult.addSuccessAggregateRootId(aggregateRootId);
-            }
+            eventAppendResult.addSuccessAggregateRootId(aggregateRootId);
         }
     }
 
@@ -1,14 +1,14 @@
 package org.enodeframework.infrastructure;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 
 public interface MethodInvocation {
     Method getMethod();
 
+    /**
+     * 设置处理方法，实现类在此时生成调用处理方法的调用器
+     */
     void setMethod(Method method);
 
     void setHandlerType(Class<?> handlerType);
-
-    void setMethodHandle(MethodHandle methodHandle);
 }
@@ -13,12 +13,10 @@ import org.enodeframework.infrastructure.MethodInvocation;
 import org.enodeframework.messaging.MessageHandlerData;
 import org.reflections.ReflectionUtils;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -29,7 +27,6 @@ import java.util.stream.Collectors;
 public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface extends IObjectProxy & MethodInvocation, THandlerSource> implements IAssemblyInitializer {
     private final Map<TKey, List<THandlerProxyInterface>> handlerDict = new HashMap<>();
     private final Map<TKey, MessageHandlerData<THandlerProxyInterface>> messageHandlerDict = new HashMap<>();
-    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
 
     protected abstract TKey getKey(Method method);
 
@@ -55,6 +52,13 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
         return handlerDataList;
     }
 
+    /**
+     * 初始化完成后的处理器数据，以注册的Key为索引
+     */
+    protected Map<TKey, MessageHandlerData<THandlerProxyInterface>> getMessageHandlerDict() {
+        return Collections.unmodifiableMap(messageHandlerDict);
+    }
+
     private void initializeHandlerPriority() {
         handlerDict.forEach((key, handlers) -> {
             MessageHandlerData<THandlerProxyInterface> handlerData = new MessageHandlerData<>();
@@ -119,8 +123,6 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
         Set<Method> handleMethods = ReflectionUtils.getMethods(handlerType, this::isHandleMethodMatch);
         handleMethods.forEach(method -> {
             try {
-                // 反射Method转换为MethodHandle，提高效率
-                MethodHandle handleMethod = lookup.findVirtual(handlerType, method.getName(), MethodType.methodType(method.getReturnType(), method.getParameterTypes()));
                 TKey key = getKey(method);
                 List<THandlerProxyInterface> handlers = handlerDict.computeIfAbsent(key, k -> new ArrayList<>());
                 IObjectContainer objectContainer = getObjectContainer();
@@ -128,8 +130,8 @@ public abstract class AbstractHandlerProvider<TKey, THandlerProxyInterface exten
                 THandlerProxyInterface handlerProxy = objectContainer.resolve(getHandlerProxyImplementationType());
                 Ensure.notNull(handlerProxy, "handlerProxy: " + getHandlerProxyImplementationType().getName());
                 handlerProxy.setHandlerType(handlerType);
+                // 设置处理方法时生成直接调用的调用器，分发时不经过反射或MethodHandle
                 handlerProxy.setMethod(method);
-                handlerProxy.setMethodHandle(handleMethod);
                 handlers.add(handlerProxy);
             } catch (Exception e) {
                 throw new HandlerRegisterException(e);
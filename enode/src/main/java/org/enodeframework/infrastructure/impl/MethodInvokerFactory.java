@@ -0,0 +1,182 @@
+package org.enodeframework.infrastructure.impl;
+
+import org.enodeframework.common.exception.HandlerRegisterException;
+import org.enodeframework.common.function.Action2;
+import org.enodeframework.common.function.Action3;
+import org.enodeframework.common.function.Action4;
+import org.enodeframework.common.function.Func2;
+import org.enodeframework.common.function.Func3;
+import org.enodeframework.common.function.Func4;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 把处理方法编译为直接调用的函数式接口实现（LambdaMetafactory），调用时没有反射、装箱参数数组或MethodHandle的类型适配；
+ * 不能生成时（如Java 8下的非公开方法）退回到精确类型的MethodHandle调用。
+ * <p>
+ * 生成的调用器第一个参数是处理器对象，其后依次是方法参数，返回方法的返回值，void方法返回null；方法抛出的异常原样抛出。
+ *
+ * @author anruence@gmail.com
+ */
+public final class MethodInvokerFactory {
+    /**
+     * Java 9及以上的MethodHandles.privateLookupIn，用于为非公开方法生成直接调用；Java 8下为null
+     */
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    private MethodInvokerFactory() {
+    }
+
+    public static Func2<Object, Object, Object> createInvoker1(Method method) {
+        checkParameterCount(method, 1);
+        if (method.getReturnType() == void.class) {
+            Action2<Object, Object> action = createLambda(Action2.class, method);
+            if (action != null) {
+                return (target, arg1) -> {
+                    action.apply(target, arg1);
+                    return null;
+                };
+            }
+        } else {
+            Func2<Object, Object, Object> func = createLambda(Func2.class, method);
+            if (func != null) {
+                return func;
+            }
+        }
+        MethodHandle methodHandle = exactMethodHandle(method);
+        return (target, arg1) -> {
+            try {
+                return (Object) methodHandle.invokeExact(target, arg1);
+            } catch (Throwable throwable) {
+                throw MethodInvokerFactory.<RuntimeException>sneakyThrow(throwable);
+            }
+        };
+    }
+
+    public static Func3<Object, Object, Object, Object> createInvoker2(Method method) {
+        checkParameterCount(method, 2);
+        if (method.getReturnType() == void.class) {
+            Action3<Object, Object, Object> action = createLambda(Action3.class, method);
+            if (action != null) {
+                return (target, arg1, arg2) -> {
+                    action.apply(target, arg1, arg2);
+                    return null;
+                };
+            }
+        } else {
+            Func3<Object, Object, Object, Object> func = createLambda(Func3.class, method);
+            if (func != null) {
+                return func;
+            }
+        }
+        MethodHandle methodHandle = exactMethodHandle(method);
+        return (target, arg1, arg2) -> {
+            try {
+                return (Object) methodHandle.invokeExact(target, arg1, arg2);
+            } catch (Throwable throwable) {
+                throw MethodInvokerFactory.<RuntimeException>sneakyThrow(throwable);
+            }
+        };
+    }
+
+    public static Func4<Object, Object, Object, Object, Object> createInvoker3(Method method) {
+        checkParameterCount(method, 3);
+        if (method.getReturnType() == void.class) {
+            Action4<Object, Object, Object, Object> action = createLambda(Action4.class, method);
+            if (action != null) {
+                return (target, arg1, arg2, arg3) -> {
+                    action.apply(target, arg1, arg2, arg3);
+                    return null;
+                };
+            }
+        } else {
+            Func4<Object, Object, Object, Object, Object> func = createLambda(Func4.class, method);
+            if (func != null) {
+                return func;
+            }
+        }
+        MethodHandle methodHandle = exactMethodHandle(method);
+        return (target, arg1, arg2, arg3) -> {
+            try {
+                return (Object) methodHandle.invokeExact(target, arg1, arg2, arg3);
+            } catch (Throwable throwable) {
+                throw MethodInvokerFactory.<RuntimeException>sneakyThrow(throwable);
+            }
+        };
+    }
+
+    /**
+     * 用LambdaMetafactory生成调用实例方法的函数式接口实现，接口方法名为apply，参数依次为目标对象和方法参数；不能生成时返回null
+     */
+    public static <T> T createLambda(Class<?> functionalType, Method method) {
+        MethodHandles.Lookup lookup = lookupFor(method);
+        if (lookup == null) {
+            return null;
+        }
+        try {
+            MethodHandle implMethod = lookup.unreflect(method);
+            MethodType instantiatedMethodType = implMethod.type();
+            MethodType samMethodType = instantiatedMethodType.generic();
+            if (method.getReturnType() == void.class) {
+                samMethodType = samMethodType.changeReturnType(void.class);
+            }
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(functionalType), samMethodType, implMethod, instantiatedMethodType);
+            return (T) callSite.getTarget().invoke();
+        } catch (Throwable ignored) {
+            // 类加载器或访问限制导致不能生成时，由调用方退回到MethodHandle
+            return null;
+        }
+    }
+
+    private static MethodHandles.Lookup lookupFor(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (PRIVATE_LOOKUP_IN != null) {
+            try {
+                return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, declaringClass, MethodHandles.lookup());
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+        if (Modifier.isPublic(declaringClass.getModifiers()) && Modifier.isPublic(method.getModifiers())) {
+            return MethodHandles.lookup();
+        }
+        return null;
+    }
+
+    /**
+     * 参数和返回值都适配为Object的MethodHandle，可以用invokeExact调用
+     */
+    private static MethodHandle exactMethodHandle(Method method) {
+        method.setAccessible(true);
+        try {
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+            return methodHandle.asType(MethodType.genericMethodType(method.getParameterCount() + 1));
+        } catch (IllegalAccessException e) {
+            throw new HandlerRegisterException(e);
+        }
+    }
+
+    private static void checkParameterCount(Method method, int parameterCount) {
+        if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != parameterCount) {
+            throw new HandlerRegisterException(String.format("Handler method must be an instance method with %d parameters, method: %s", parameterCount, method));
+        }
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static <T extends Throwable> T sneakyThrow(Throwable throwable) throws T {
+        throw (T) throwable;
+    }
+}
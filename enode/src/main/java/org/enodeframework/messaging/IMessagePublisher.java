@@ -1,7 +1,20 @@
 package org.enodeframework.messaging;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface IMessagePublisher<TMessage extends IMessage> {
     CompletableFuture<Void> publishAsync(TMessage message);
+
+    /**
+     * 一次发布多个消息，返回与消息一一对应的Future，每个消息的发送结果单独完成
+     */
+    default List<CompletableFuture<Void>> publishAllAsync(List<TMessage> messages) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(messages.size());
+        for (TMessage message : messages) {
+            futures.add(publishAsync(message));
+        }
+        return futures;
+    }
 }
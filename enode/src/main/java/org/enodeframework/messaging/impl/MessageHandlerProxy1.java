@@ -1,10 +1,11 @@
 package org.enodeframework.messaging.impl;
 
 import org.enodeframework.common.container.ObjectContainer;
+import org.enodeframework.common.function.Func2;
+import org.enodeframework.infrastructure.impl.MethodInvokerFactory;
 import org.enodeframework.messaging.IMessage;
 import org.enodeframework.messaging.IMessageHandlerProxy1;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -15,14 +16,14 @@ public class MessageHandlerProxy1 implements IMessageHandlerProxy1 {
 
     private Class<?> handlerType;
     private Object handler;
-    private MethodHandle methodHandle;
+    private Func2<Object, Object, Object> methodInvoker;
     private Method method;
 
     @Override
     public CompletableFuture<Void> handleAsync(IMessage message) {
         CompletableFuture<Void> future = new CompletableFuture<>();
         try {
-            Object result = methodHandle.invoke(getInnerObject(), message);
+            Object result = methodInvoker.apply(getInnerObject(), message);
             if (result instanceof CompletableFuture) {
                 return (CompletableFuture<Void>) result;
             }
@@ -47,11 +48,6 @@ public class MessageHandlerProxy1 implements IMessageHandlerProxy1 {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -60,5 +56,6 @@ public class MessageHandlerProxy1 implements IMessageHandlerProxy1 {
     @Override
     public void setMethod(Method method) {
         this.method = method;
+        this.methodInvoker = MethodInvokerFactory.createInvoker1(method);
     }
 }
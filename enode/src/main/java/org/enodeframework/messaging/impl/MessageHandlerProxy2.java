@@ -1,10 +1,11 @@
 package org.enodeframework.messaging.impl;
 
 import org.enodeframework.common.container.ObjectContainer;
+import org.enodeframework.common.function.Func3;
+import org.enodeframework.infrastructure.impl.MethodInvokerFactory;
 import org.enodeframework.messaging.IMessage;
 import org.enodeframework.messaging.IMessageHandlerProxy2;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 
@@ -14,7 +15,7 @@ import java.util.concurrent.CompletableFuture;
 public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
     private Class<?> handlerType;
     private Object handler;
-    private MethodHandle methodHandle;
+    private Func3<Object, Object, Object, Object> methodInvoker;
     private Method method;
     private Class<?>[] methodParameterTypes;
 
@@ -24,9 +25,9 @@ public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
         CompletableFuture<Void> future = new CompletableFuture<>();
         try {
             if (methodParameterTypes[0].isAssignableFrom(message1.getClass())) {
-                result = methodHandle.invoke(getInnerObject(), message1, message2);
+                result = methodInvoker.apply(getInnerObject(), message1, message2);
             } else {
-                result = methodHandle.invoke(getInnerObject(), message2, message1);
+                result = methodInvoker.apply(getInnerObject(), message2, message1);
             }
             if (result instanceof CompletableFuture) {
                 return (CompletableFuture<Void>) result;
@@ -52,11 +53,6 @@ public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -66,5 +62,6 @@ public class MessageHandlerProxy2 implements IMessageHandlerProxy2 {
     public void setMethod(Method method) {
         this.method = method;
         methodParameterTypes = method.getParameterTypes();
+        methodInvoker = MethodInvokerFactory.createInvoker2(method);
     }
 }
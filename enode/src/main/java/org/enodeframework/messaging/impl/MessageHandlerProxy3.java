@@ -1,10 +1,11 @@
 package org.enodeframework.messaging.impl;
 
 import org.enodeframework.common.container.ObjectContainer;
+import org.enodeframework.common.function.Func4;
+import org.enodeframework.infrastructure.impl.MethodInvokerFactory;
 import org.enodeframework.messaging.IMessage;
 import org.enodeframework.messaging.IMessageHandlerProxy3;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,7 +20,7 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
 
     private Class<?> handlerType;
     private Object handler;
-    private MethodHandle methodHandle;
+    private Func4<Object, Object, Object, Object, Object> methodInvoker;
     private Method method;
     private Class<?>[] methodParameterTypes;
 
@@ -36,7 +37,7 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
         );
         try {
             //参数按照方法定义参数类型列表传递
-            Object result = methodHandle.invoke(getInnerObject(), params.get(0), params.get(1), params.get(2));
+            Object result = methodInvoker.apply(getInnerObject(), params.get(0), params.get(1), params.get(2));
             if (result instanceof CompletableFuture) {
                 return (CompletableFuture<Void>) result;
             }
@@ -72,11 +73,6 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
         this.handlerType = handlerType;
     }
 
-    @Override
-    public void setMethodHandle(MethodHandle methodHandle) {
-        this.methodHandle = methodHandle;
-    }
-
     @Override
     public Method getMethod() {
         return method;
@@ -86,5 +82,6 @@ public class MessageHandlerProxy3 implements IMessageHandlerProxy3 {
     public void setMethod(Method method) {
         this.method = method;
         methodParameterTypes = method.getParameterTypes();
+        methodInvoker = MethodInvokerFactory.createInvoker3(method);
     }
 }
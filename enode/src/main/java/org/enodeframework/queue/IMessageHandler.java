@@ -1,5 +1,16 @@
 package org.enodeframework.queue;
 
+import org.enodeframework.common.io.Task;
+
+import java.util.concurrent.CompletableFuture;
+
 public interface IMessageHandler {
     void handle(QueueMessage queueMessage, IMessageContext context);
+
+    /**
+     * 背压信号：处理中的消息超过高水位时返回未完成的Future，降到低水位后完成，消费端据此暂停和恢复消费
+     */
+    default CompletableFuture<Void> waitForCapacityAsync() {
+        return Task.completedTask;
+    }
 }
@@ -1,7 +1,20 @@
 package org.enodeframework.queue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface ISendMessageService {
     CompletableFuture<Void> sendMessageAsync(QueueMessage queueMessage);
+
+    /**
+     * 一次发送多个消息，返回与消息一一对应的Future，每个消息被确认时单独完成；支持批量发送的实现应覆盖该方法
+     */
+    default List<CompletableFuture<Void>> sendMessagesAsync(List<QueueMessage> queueMessages) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(queueMessages.size());
+        for (QueueMessage queueMessage : queueMessages) {
+            futures.add(sendMessageAsync(queueMessage));
+        }
+        return futures;
+    }
 }
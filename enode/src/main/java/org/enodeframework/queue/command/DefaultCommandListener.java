@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class DefaultCommandListener implements IMessageHandler {
 
@@ -60,4 +61,9 @@ public class DefaultCommandListener implements IMessageHandler {
         }
         commandProcessor.process(new ProcessingCommand(command, commandExecuteContext, commandItems));
     }
+
+    @Override
+    public CompletableFuture<Void> waitForCapacityAsync() {
+        return commandProcessor.waitForCapacityAsync();
+    }
 }
@@ -8,6 +8,8 @@ import org.enodeframework.messaging.IMessagePublisher;
 import org.enodeframework.queue.ISendMessageService;
 import org.enodeframework.queue.QueueMessage;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class DefaultDomainEventPublisher implements IMessagePublisher<DomainEventStreamMessage> {
@@ -52,4 +54,13 @@ public class DefaultDomainEventPublisher implements IMessagePublisher<DomainEven
     public CompletableFuture<Void> publishAsync(DomainEventStreamMessage message) {
         return sendMessageService.sendMessageAsync(createDomainEventStreamMessage(message));
     }
+
+    @Override
+    public List<CompletableFuture<Void>> publishAllAsync(List<DomainEventStreamMessage> messages) {
+        List<QueueMessage> queueMessages = new ArrayList<>(messages.size());
+        for (DomainEventStreamMessage message : messages) {
+            queueMessages.add(createDomainEventStreamMessage(message));
+        }
+        return sendMessageService.sendMessagesAsync(queueMessages);
+    }
 }
@@ -32,6 +32,10 @@ public class DBConfiguration {
      * 聚合根已发布事件表的聚合根已发布版本唯一索引的默认名称；默认为：uk_processor_name_aggregate_root_id_version
      */
     private String publishedVersionUniqueIndexName;
+    /**
+     * 聚合根快照表的默认名称；默认为：aggregate_snapshot
+     */
+    private String snapshotTableName;
 
     public DBConfiguration() {
         eventTableName = "event_stream";
@@ -40,6 +44,7 @@ public class DBConfiguration {
         eventTableVersionUniqueIndexName = "uk_aggregate_root_id_version";
         eventTableCommandIdUniqueIndexName = "uk_aggregate_root_id_command_id";
         publishedVersionUniqueIndexName = "uk_processor_name_aggregate_root_id_version";
+        snapshotTableName = "aggregate_snapshot";
         sqlState = "23000";
     }
 
@@ -105,6 +110,14 @@ public class DBConfiguration {
         this.publishedVersionUniqueIndexName = publishedVersionUniqueIndexName;
     }
 
+    public String getSnapshotTableName() {
+        return snapshotTableName;
+    }
+
+    public void setSnapshotTableName(String snapshotTableName) {
+        this.snapshotTableName = snapshotTableName;
+    }
+
     public String getSqlState() {
         return sqlState;
     }
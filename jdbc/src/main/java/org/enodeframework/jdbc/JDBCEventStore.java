@@ -9,11 +9,13 @@ import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.jackson.DatabindCodec;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.SQLClient;
 import io.vertx.ext.sql.SQLConnection;
 import org.enodeframework.common.exception.EventStoreException;
 import org.enodeframework.common.exception.IORuntimeException;
+import org.enodeframework.common.function.Action1;
 import org.enodeframework.common.io.IOHelper;
 import org.enodeframework.common.serializing.ISerializeService;
 import org.enodeframework.common.utilities.Ensure;
@@ -30,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -48,6 +51,7 @@ public abstract class JDBCEventStore extends AbstractVerticle implements IEventS
 
     private static final String INSERT_EVENT_SQL = "INSERT INTO %s (aggregate_root_id, aggregate_root_type_name, command_id, version, gmt_create, events) VALUES (?, ?, ?, ?, ?, ?)";
     private static final String SELECT_MANY_BY_VERSION_SQL = "SELECT * FROM %s WHERE aggregate_root_id = ? AND version >= ? AND Version <= ? ORDER BY version";
+    private static final String SELECT_PAGE_BY_VERSION_SQL = "SELECT command_id, aggregate_root_id, aggregate_root_type_name, gmt_create, events FROM %s WHERE aggregate_root_id = ? AND version >= ? AND version <= ? ORDER BY version LIMIT ?";
     private static final String SELECT_ONE_BY_VERSION_SQL = "SELECT * FROM %s WHERE aggregate_root_id = ? AND version = ?";
     private static final String SELECT_ONE_BY_COMMAND_ID_SQL = "SELECT * FROM %s WHERE aggregate_root_id = ? AND command_id = ?";
 
@@ -266,6 +270,61 @@ public abstract class JDBCEventStore extends AbstractVerticle implements IEventS
         }, "QueryAggregateEventsAsync");
     }
 
+    /**
+     * 以版本号为游标分页读取，每页一次查询，只映射需要的列，不经过JsonObject和StreamRecord
+     */
+    @Override
+    public CompletableFuture<Integer> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, int pageSize, Action1<List<DomainEventStream>> pageHandler) {
+        if (minVersion > maxVersion) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return queryAggregateEventsPageAsync(aggregateRootId, aggregateRootTypeName, minVersion, maxVersion, pageSize).thenCompose(eventStreams -> {
+            if (eventStreams.isEmpty()) {
+                return CompletableFuture.completedFuture(0);
+            }
+            pageHandler.apply(eventStreams);
+            int count = eventStreams.size();
+            int lastVersion = eventStreams.get(count - 1).getVersion();
+            if (count < pageSize || lastVersion >= maxVersion) {
+                return CompletableFuture.completedFuture(count);
+            }
+            return queryAggregateEventsAsync(aggregateRootId, aggregateRootTypeName, lastVersion + 1, maxVersion, pageSize, pageHandler).thenApply(x -> x + count);
+        });
+    }
+
+    private CompletableFuture<List<DomainEventStream>> queryAggregateEventsPageAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, int pageSize) {
+        return IOHelper.tryIOFuncAsync(() -> {
+            CompletableFuture<List<DomainEventStream>> future = new CompletableFuture<>();
+            String sql = String.format(SELECT_PAGE_BY_VERSION_SQL, getTableName(aggregateRootId));
+            JsonArray array = new JsonArray();
+            array.add(aggregateRootId);
+            array.add(minVersion);
+            array.add(maxVersion);
+            array.add(pageSize);
+            sqlClient.queryWithParams(sql, array, x -> {
+                if (x.succeeded()) {
+                    List<JsonArray> rows = x.result().getResults();
+                    List<DomainEventStream> streams = Lists.newArrayListWithCapacity(rows.size());
+                    for (JsonArray row : rows) {
+                        streams.add(convertFrom(row));
+                    }
+                    future.complete(streams);
+                    return;
+                }
+                future.completeExceptionally(x.cause());
+            });
+            return future.exceptionally(throwable -> {
+                if (throwable instanceof SQLException) {
+                    SQLException ex = (SQLException) throwable;
+                    logger.error("Failed to query aggregate events page async, aggregateRootId: {}, aggregateRootType: {}, minVersion: {}", aggregateRootId, aggregateRootTypeName, minVersion, ex);
+                    throw new IORuntimeException(throwable);
+                }
+                logger.error("Failed to query aggregate events page async, aggregateRootId: {}, aggregateRootType: {}, minVersion: {}", aggregateRootId, aggregateRootTypeName, minVersion, throwable);
+                throw new EventStoreException(throwable);
+            });
+        }, "QueryAggregateEventsPageAsync");
+    }
+
     @Override
     public CompletableFuture<DomainEventStream> findAsync(String aggregateRootId, int version) {
         return IOHelper.tryIOFuncAsync(() -> {
@@ -360,6 +419,19 @@ public abstract class JDBCEventStore extends AbstractVerticle implements IEventS
                 Maps.newHashMap());
     }
 
+    /**
+     * 列的顺序与SELECT_PAGE_BY_VERSION_SQL一致
+     */
+    private DomainEventStream convertFrom(JsonArray row) {
+        return new DomainEventStream(
+                row.getString(0),
+                row.getString(1),
+                row.getString(2),
+                DatabindCodec.mapper().convertValue(row.getValue(3), Date.class),
+                eventSerializer.deserialize(serializeService.deserialize(row.getString(4), Map.class)),
+                Maps.newHashMap());
+    }
+
     private SQLClient batchWithParams(String sql, List<JsonArray> params, Handler<AsyncResult<List<Integer>>> handler) {
         sqlClient.getConnection(getConnection -> {
             if (getConnection.failed()) {
@@ -0,0 +1,122 @@
+package org.enodeframework.jdbc;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLClient;
+import org.enodeframework.common.exception.EventStoreException;
+import org.enodeframework.common.exception.IORuntimeException;
+import org.enodeframework.common.utilities.Ensure;
+import org.enodeframework.domain.AggregateSnapshot;
+import org.enodeframework.domain.ISnapshotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 每个聚合根一行快照，保存时执行一条由各数据库实现的upsert语句：不存在时插入，已存在时只有版本更新或结构版本不同才覆盖
+ *
+ * @author anruence@gmail.com
+ */
+public abstract class JDBCSnapshotStore extends AbstractVerticle implements ISnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(JDBCSnapshotStore.class);
+    private static final String SELECT_SQL = "SELECT aggregate_root_type_name, version, format_version, schema_version, payload FROM %s WHERE aggregate_root_id = ?";
+    private final String tableName;
+    private final DataSource dataSource;
+    private SQLClient sqlClient;
+
+    public JDBCSnapshotStore(DataSource dataSource) {
+        this(dataSource, new DBConfiguration());
+    }
+
+    public JDBCSnapshotStore(DataSource dataSource, DBConfiguration setting) {
+        Ensure.notNull(dataSource, "DataSource");
+        Ensure.notNull(setting, "DBConfigurationSetting");
+        this.dataSource = dataSource;
+        this.tableName = setting.getSnapshotTableName();
+    }
+
+    @Override
+    public void start() {
+        sqlClient = JDBCClient.create(vertx, dataSource);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveSnapshotAsync(AggregateSnapshot snapshot) {
+        JsonArray array = new JsonArray();
+        array.add(snapshot.getAggregateRootId());
+        array.add(snapshot.getAggregateRootTypeName());
+        array.add(snapshot.getVersion());
+        array.add(snapshot.getFormatVersion());
+        array.add(snapshot.getSchemaVersion());
+        array.add(snapshot.getPayload());
+        array.add(snapshot.getCreatedOn().toInstant());
+        return update(getUpsertSql(tableName), array).<Void>thenApply(x -> null).exceptionally(throwable -> {
+            Throwable cause = throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof SQLException) {
+                logger.error("Save aggregate snapshot has sql exception, {}", snapshot, cause);
+                throw new IORuntimeException(cause);
+            }
+            logger.error("Save aggregate snapshot has unknown exception, {}", snapshot, cause);
+            throw new EventStoreException(cause);
+        });
+    }
+
+    @Override
+    public CompletableFuture<AggregateSnapshot> getLatestSnapshotAsync(String aggregateRootId, String aggregateRootTypeName) {
+        CompletableFuture<AggregateSnapshot> future = new CompletableFuture<>();
+        String sql = String.format(SELECT_SQL, tableName);
+        JsonArray array = new JsonArray();
+        array.add(aggregateRootId);
+        sqlClient.queryWithParams(sql, array, x -> {
+            if (x.succeeded()) {
+                AggregateSnapshot snapshot = null;
+                Optional<JsonObject> first = x.result().getRows().stream().findFirst();
+                if (first.isPresent() && aggregateRootTypeName.equals(first.get().getString("aggregate_root_type_name"))) {
+                    JsonObject row = first.get();
+                    snapshot = new AggregateSnapshot();
+                    snapshot.setAggregateRootId(aggregateRootId);
+                    snapshot.setAggregateRootTypeName(aggregateRootTypeName);
+                    snapshot.setVersion(row.getInteger("version"));
+                    snapshot.setFormatVersion(row.getInteger("format_version"));
+                    snapshot.setSchemaVersion(row.getString("schema_version"));
+                    snapshot.setPayload(row.getString("payload"));
+                }
+                future.complete(snapshot);
+                return;
+            }
+            future.completeExceptionally(x.cause());
+        });
+        return future.exceptionally(throwable -> {
+            if (throwable instanceof SQLException) {
+                SQLException ex = (SQLException) throwable;
+                logger.error("Get aggregate snapshot has sql exception, aggregateRootId: {}", aggregateRootId, ex);
+                throw new IORuntimeException(throwable);
+            }
+            logger.error("Get aggregate snapshot has unknown exception, aggregateRootId: {}", aggregateRootId, throwable);
+            throw new EventStoreException(throwable);
+        });
+    }
+
+    /**
+     * 参数依次为：aggregate_root_id, aggregate_root_type_name, version, format_version, schema_version, payload, gmt_create
+     */
+    abstract protected String getUpsertSql(String tableName);
+
+    private CompletableFuture<Integer> update(String sql, JsonArray array) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        sqlClient.updateWithParams(sql, array, x -> {
+            if (x.succeeded()) {
+                future.complete(x.result().getUpdated());
+                return;
+            }
+            future.completeExceptionally(x.cause());
+        });
+        return future;
+    }
+}
@@ -4,14 +4,27 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.enodeframework.queue.IMessageHandler;
 import org.enodeframework.queue.QueueMessage;
 import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.support.Acknowledgment;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
+ * 处理中的命令超过高水位时暂停监听容器的拉取，降到低水位后恢复，不会阻塞消费线程。
+ * <p>
+ * 暂停只影响之后的poll，上一次poll已经返回的消息（最多max.poll.records条）仍会继续交给命令处理器，
+ * 所以处理中的命令数量可能超出高水位，超出的部分不超过一次poll的消息数量；
+ * 未设置监听容器时无法暂停，只能不限流地处理。
+ *
  * @author anruence@gmail.com
  */
 public class KafkaCommandListener implements AcknowledgingMessageListener<String, String> {
 
     private final IMessageHandler commandListener;
+    /**
+     * 使用本监听器的容器，由Spring自动配置在启动前设置
+     */
+    private MessageListenerContainer listenerContainer;
 
     public KafkaCommandListener(IMessageHandler commandListener) {
         this.commandListener = commandListener;
@@ -25,6 +38,12 @@ public class KafkaCommandListener implements AcknowledgingMessageListener<String
      */
     @Override
     public void onMessage(ConsumerRecord<String, String> data, Acknowledgment acknowledgment) {
+        CompletableFuture<Void> capacityFuture = commandListener.waitForCapacityAsync();
+        MessageListenerContainer container = listenerContainer;
+        if (!capacityFuture.isDone() && container != null && !container.isPauseRequested()) {
+            container.pause();
+            capacityFuture.thenRun(container::resume);
+        }
         QueueMessage queueMessage = KafkaTool.covertToQueueMessage(data);
         commandListener.handle(queueMessage, context -> {
             if (acknowledgment != null) {
@@ -32,4 +51,12 @@ public class KafkaCommandListener implements AcknowledgingMessageListener<String
             }
         });
     }
-}
\ No newline at end of file
+
+    public MessageListenerContainer getListenerContainer() {
+        return listenerContainer;
+    }
+
+    public void setListenerContainer(MessageListenerContainer listenerContainer) {
+        this.listenerContainer = listenerContainer;
+    }
+}
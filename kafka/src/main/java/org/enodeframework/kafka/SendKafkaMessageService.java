@@ -10,6 +10,8 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -26,8 +28,44 @@ public class SendKafkaMessageService implements ISendMessageService {
 
     @Override
     public CompletableFuture<Void> sendMessageAsync(QueueMessage queueMessage) {
+        return send(KafkaTool.covertToProducerRecord(queueMessage));
+    }
+
+    /**
+     * 在同一个生产者上连续提交所有消息，不逐条刷新，生产者按分区将它们合并到同一个请求中发送；每个消息在所在分区确认后单独完成
+     */
+    @Override
+    public List<CompletableFuture<Void>> sendMessagesAsync(List<QueueMessage> queueMessages) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(queueMessages.size());
+        producer.execute(kafkaProducer -> {
+            for (QueueMessage queueMessage : queueMessages) {
+                ProducerRecord<String, String> message = KafkaTool.covertToProducerRecord(queueMessage);
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                futures.add(future);
+                try {
+                    kafkaProducer.send(message, (metadata, exception) -> {
+                        if (exception != null) {
+                            logger.error("Enode message async send has exception, message: {}", message, exception);
+                            future.completeExceptionally(new IORuntimeException(exception));
+                            return;
+                        }
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Enode message async send success, recordMetadata: {}, message: {}", metadata, message);
+                        }
+                        future.complete(null);
+                    });
+                } catch (Exception ex) {
+                    logger.error("Enode message async send has exception, message: {}", message, ex);
+                    future.completeExceptionally(new IORuntimeException(ex));
+                }
+            }
+            return null;
+        });
+        return futures;
+    }
+
+    private CompletableFuture<Void> send(ProducerRecord<String, String> message) {
         CompletableFuture<Void> future = new CompletableFuture<>();
-        ProducerRecord<String, String> message = KafkaTool.covertToProducerRecord(queueMessage);
         producer.send(message).addCallback(new ListenableFutureCallback<SendResult<String, String>>() {
             @Override
             public void onFailure(Throwable throwable) {
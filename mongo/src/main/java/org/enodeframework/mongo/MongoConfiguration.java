@@ -34,6 +34,14 @@ public class MongoConfiguration {
      * 聚合根已发布事件表的聚合根已发布版本唯一索引的默认名称；默认为：IX_PublishedVersion_AggId_Version
      */
     private String publishedVersionUniqueIndexName;
+    /**
+     * 聚合根快照表的默认名称；默认为：aggregate_snapshot
+     */
+    private String snapshotCollectionName;
+    /**
+     * 聚合根快照表的聚合根唯一索引的默认名称；默认为：aggregateRootId_1
+     */
+    private String snapshotUniqueIndexName;
 
     public MongoConfiguration() {
         databaseName = "enode";
@@ -42,6 +50,8 @@ public class MongoConfiguration {
         eventTableVersionUniqueIndexName = "aggregateRootId_1_version_1";
         eventTableCommandIdUniqueIndexName = "aggregateRootId_1_commandId_1";
         publishedVersionUniqueIndexName = "processorName_1_aggregateRootId_1_version_1";
+        snapshotCollectionName = "aggregate_snapshot";
+        snapshotUniqueIndexName = "aggregateRootId_1";
         duplicateCode = 11000;
     }
 
@@ -85,6 +95,22 @@ public class MongoConfiguration {
         this.publishedVersionUniqueIndexName = publishedVersionUniqueIndexName;
     }
 
+    public String getSnapshotCollectionName() {
+        return snapshotCollectionName;
+    }
+
+    public void setSnapshotCollectionName(String snapshotCollectionName) {
+        this.snapshotCollectionName = snapshotCollectionName;
+    }
+
+    public String getSnapshotUniqueIndexName() {
+        return snapshotUniqueIndexName;
+    }
+
+    public void setSnapshotUniqueIndexName(String snapshotUniqueIndexName) {
+        this.snapshotUniqueIndexName = snapshotUniqueIndexName;
+    }
+
     public int getDuplicateCode() {
         return duplicateCode;
     }
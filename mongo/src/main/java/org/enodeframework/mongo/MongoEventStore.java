@@ -15,6 +15,7 @@ import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.enodeframework.common.exception.EventStoreException;
 import org.enodeframework.common.exception.IORuntimeException;
+import org.enodeframework.common.function.Action1;
 import org.enodeframework.common.io.IOHelper;
 import org.enodeframework.common.serializing.ISerializeService;
 import org.enodeframework.eventing.AggregateEventAppendResult;
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -268,14 +270,7 @@ public class MongoEventStore implements IEventStore {
 
                 @Override
                 public void onNext(Document document) {
-                    DomainEventStream eventStream = new DomainEventStream(
-                            document.getString("commandId"),
-                            document.getString("aggregateRootId"),
-                            document.getString("aggregateRootTypeName"),
-                            document.get("gmtCreate", Date.class),
-                            eventSerializer.deserialize(serializeService.deserialize(document.getString("events"), Map.class)),
-                            Maps.newHashMap());
-                    streams.add(eventStream);
+                    streams.add(convertFrom(document));
                 }
 
                 @Override
@@ -302,6 +297,87 @@ public class MongoEventStore implements IEventStore {
         }, "QueryAggregateEventsAsync");
     }
 
+    /**
+     * 通过游标读取，每次向游标请求pageSize个文档，一页处理完后再请求下一页
+     */
+    @Override
+    public CompletableFuture<Integer> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion, int pageSize, Action1<List<DomainEventStream>> pageHandler) {
+        return IOHelper.tryIOFuncAsync(() -> {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            AtomicReference<RuntimeException> handlerException = new AtomicReference<>();
+            Bson filter = Filters.and(Filters.eq("aggregateRootId", aggregateRootId),
+                    Filters.gte("version", minVersion),
+                    Filters.lte("version", maxVersion));
+            Bson sort = Sorts.ascending("version");
+            mongoClient.getDatabase(mongoConfiguration.getDatabaseName()).getCollection(mongoConfiguration.getEventCollectionName())
+                    .find(filter).sort(sort).batchSize(pageSize).subscribe(new Subscriber<Document>() {
+                private Subscription subscription;
+                private List<DomainEventStream> streams = Lists.newArrayListWithCapacity(pageSize);
+                private int count;
+
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription = s;
+                    s.request(pageSize);
+                }
+
+                @Override
+                public void onNext(Document document) {
+                    if (handlerException.get() != null) {
+                        return;
+                    }
+                    streams.add(convertFrom(document));
+                    if (streams.size() < pageSize) {
+                        return;
+                    }
+                    if (handlePage()) {
+                        subscription.request(pageSize);
+                    } else {
+                        subscription.cancel();
+                        future.completeExceptionally(handlerException.get());
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    if (handlerException.get() != null) {
+                        return;
+                    }
+                    if (streams.isEmpty() || handlePage()) {
+                        future.complete(count);
+                    } else {
+                        future.completeExceptionally(handlerException.get());
+                    }
+                }
+
+                private boolean handlePage() {
+                    List<DomainEventStream> page = streams;
+                    streams = Lists.newArrayListWithCapacity(pageSize);
+                    try {
+                        pageHandler.apply(page);
+                    } catch (RuntimeException ex) {
+                        handlerException.set(ex);
+                        return false;
+                    }
+                    count += page.size();
+                    return true;
+                }
+            });
+            return future.exceptionally(throwable -> {
+                if (throwable == handlerException.get()) {
+                    throw (RuntimeException) throwable;
+                }
+                logger.error("Failed to query aggregate events by cursor async, aggregateRootId: {}, aggregateRootType: {}, minVersion: {}", aggregateRootId, aggregateRootTypeName, minVersion, throwable);
+                throw new EventStoreException(throwable);
+            });
+        }, "QueryAggregateEventsByCursorAsync");
+    }
+
     @Override
     public CompletableFuture<DomainEventStream> findAsync(String aggregateRootId, int version) {
         return IOHelper.tryIOFuncAsync(() -> {
@@ -401,4 +477,14 @@ public class MongoEventStore implements IEventStore {
             });
         }, "FindEventByCommandIdAsync");
     }
+
+    private DomainEventStream convertFrom(Document document) {
+        return new DomainEventStream(
+                document.getString("commandId"),
+                document.getString("aggregateRootId"),
+                document.getString("aggregateRootTypeName"),
+                document.get("gmtCreate", Date.class),
+                eventSerializer.deserialize(serializeService.deserialize(document.getString("events"), Map.class)),
+                Maps.newHashMap());
+    }
 }
@@ -0,0 +1,148 @@
+package org.enodeframework.mongo;
+
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.enodeframework.common.exception.EventStoreException;
+import org.enodeframework.common.exception.IORuntimeException;
+import org.enodeframework.domain.AggregateSnapshot;
+import org.enodeframework.domain.ISnapshotStore;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 每个聚合根一个快照文档：按版本条件upsert（结构版本不同的旧快照也会被覆盖），已存在同版本或更新版本的快照时upsert会与唯一索引冲突，直接忽略
+ *
+ * @author anruence@gmail.com
+ */
+public class MongoSnapshotStore implements ISnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoSnapshotStore.class);
+
+    private final MongoClient mongoClient;
+
+    private final int duplicateCode;
+
+    private final String uniqueIndexName;
+
+    private final MongoConfiguration configuration;
+
+    public MongoSnapshotStore(MongoClient mongoClient) {
+        this(mongoClient, new MongoConfiguration());
+    }
+
+    public MongoSnapshotStore(MongoClient mongoClient, MongoConfiguration configuration) {
+        this.configuration = configuration;
+        this.mongoClient = mongoClient;
+        this.uniqueIndexName = configuration.getSnapshotUniqueIndexName();
+        this.duplicateCode = configuration.getDuplicateCode();
+    }
+
+    @Override
+    public CompletableFuture<Void> saveSnapshotAsync(AggregateSnapshot snapshot) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Document document = new Document();
+        document.put("aggregateRootId", snapshot.getAggregateRootId());
+        document.put("aggregateRootTypeName", snapshot.getAggregateRootTypeName());
+        document.put("version", snapshot.getVersion());
+        document.put("formatVersion", snapshot.getFormatVersion());
+        document.put("schemaVersion", snapshot.getSchemaVersion());
+        document.put("payload", snapshot.getPayload());
+        document.put("gmtCreate", snapshot.getCreatedOn());
+        Bson filter = Filters.and(
+                Filters.eq("aggregateRootId", snapshot.getAggregateRootId()),
+                Filters.or(
+                        Filters.lt("version", snapshot.getVersion()),
+                        Filters.ne("schemaVersion", snapshot.getSchemaVersion())
+                )
+        );
+        getCollection().replaceOne(filter, document, new ReplaceOptions().upsert(true)).subscribe(new Subscriber<UpdateResult>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(UpdateResult x) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(null);
+            }
+        });
+        return future.exceptionally(throwable -> {
+            if (throwable instanceof MongoWriteException) {
+                MongoWriteException ex = (MongoWriteException) throwable;
+                if (ex.getCode() == duplicateCode && ex.getMessage().contains(uniqueIndexName)) {
+                    return null;
+                }
+                logger.error("Save aggregate snapshot has write exception, {}", snapshot, ex);
+                throw new IORuntimeException(throwable);
+            }
+            logger.error("Save aggregate snapshot has unknown exception, {}", snapshot, throwable);
+            throw new EventStoreException(throwable);
+        });
+    }
+
+    @Override
+    public CompletableFuture<AggregateSnapshot> getLatestSnapshotAsync(String aggregateRootId, String aggregateRootTypeName) {
+        CompletableFuture<AggregateSnapshot> future = new CompletableFuture<>();
+        Bson filter = Filters.and(
+                Filters.eq("aggregateRootId", aggregateRootId),
+                Filters.eq("aggregateRootTypeName", aggregateRootTypeName)
+        );
+        getCollection().find(filter).first().subscribe(new Subscriber<Document>() {
+            private AggregateSnapshot snapshot;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(Document document) {
+                snapshot = new AggregateSnapshot(
+                        document.getString("aggregateRootId"),
+                        document.getString("aggregateRootTypeName"),
+                        document.getInteger("version"),
+                        document.getInteger("formatVersion", 0),
+                        document.getString("schemaVersion"),
+                        document.getString("payload"),
+                        document.getDate("gmtCreate"));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(snapshot);
+            }
+        });
+        return future.exceptionally(throwable -> {
+            logger.error("Get aggregate snapshot has unknown exception, aggregateRootId: {}", aggregateRootId, throwable);
+            throw new EventStoreException(throwable);
+        });
+    }
+
+    private MongoCollection<Document> getCollection() {
+        return mongoClient.getDatabase(configuration.getDatabaseName()).getCollection(configuration.getSnapshotCollectionName());
+    }
+}
@@ -0,0 +1,38 @@
+package org.enodeframework.mysql;
+
+import org.enodeframework.jdbc.DBConfiguration;
+import org.enodeframework.jdbc.JDBCSnapshotStore;
+
+import javax.sql.DataSource;
+
+/**
+ * @author anruence@gmail.com
+ */
+public class MysqlSnapshotStore extends JDBCSnapshotStore {
+
+    /**
+     * ON DUPLICATE KEY UPDATE 从左到右赋值，后面的条件读到的是前面已更新的列：其余列先按原值判断，再更新 version，
+     * 最后更新 schema_version，此时 version 若已覆盖，条件只剩结构版本不同
+     */
+    private static final String UPSERT_CONDITION = "version < VALUES(version) OR schema_version <> VALUES(schema_version)";
+    private static final String UPSERT_SQL = "INSERT INTO %s (aggregate_root_id, aggregate_root_type_name, version, format_version, schema_version, payload, gmt_create) VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+        + "aggregate_root_type_name = IF(%s, VALUES(aggregate_root_type_name), aggregate_root_type_name), "
+        + "format_version = IF(%s, VALUES(format_version), format_version), "
+        + "payload = IF(%s, VALUES(payload), payload), "
+        + "gmt_create = IF(%s, VALUES(gmt_create), gmt_create), "
+        + "version = IF(%s, VALUES(version), version), "
+        + "schema_version = IF(%s, VALUES(schema_version), schema_version)";
+
+    public MysqlSnapshotStore(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public MysqlSnapshotStore(DataSource dataSource, DBConfiguration setting) {
+        super(dataSource, setting);
+    }
+
+    @Override
+    protected String getUpsertSql(String tableName) {
+        return String.format(UPSERT_SQL, tableName, UPSERT_CONDITION, UPSERT_CONDITION, UPSERT_CONDITION, UPSERT_CONDITION, UPSERT_CONDITION, UPSERT_CONDITION);
+    }
+}
@@ -16,6 +16,10 @@ import java.util.concurrent.CountDownLatch;
 public class OnsCommandListener implements MessageOrderListener {
 
     private final IMessageHandler commandListener;
+    /**
+     * 处理中的命令超过高水位时消费线程最多等待的毫秒数，超时后返回Suspend，由ONS稍后重新投递
+     */
+    private long capacityWaitTimeoutMillis = 1000;
 
     public OnsCommandListener(IMessageHandler commandListener) {
         this.commandListener = commandListener;
@@ -23,6 +27,9 @@ public class OnsCommandListener implements MessageOrderListener {
 
     @Override
     public OrderAction consume(Message message, ConsumeOrderContext context) {
+        if (!Task.await(commandListener.waitForCapacityAsync(), capacityWaitTimeoutMillis)) {
+            return OrderAction.Suspend;
+        }
         final CountDownLatch latch = new CountDownLatch(1);
         QueueMessage queueMessage = OnsTool.covertToQueueMessage(message);
         commandListener.handle(queueMessage, m -> {
@@ -31,4 +38,12 @@ public class OnsCommandListener implements MessageOrderListener {
         Task.await(latch);
         return OrderAction.Success;
     }
+
+    public long getCapacityWaitTimeoutMillis() {
+        return capacityWaitTimeoutMillis;
+    }
+
+    public void setCapacityWaitTimeoutMillis(long capacityWaitTimeoutMillis) {
+        this.capacityWaitTimeoutMillis = capacityWaitTimeoutMillis;
+    }
 }
@@ -0,0 +1,30 @@
+package org.enodeframework.pg;
+
+import org.enodeframework.jdbc.DBConfiguration;
+import org.enodeframework.jdbc.JDBCSnapshotStore;
+
+import javax.sql.DataSource;
+
+/**
+ * @author anruence@gmail.com
+ */
+public class PgSnapshotStore extends JDBCSnapshotStore {
+
+    private static final String UPSERT_SQL = "INSERT INTO %s AS s (aggregate_root_id, aggregate_root_type_name, version, format_version, schema_version, payload, gmt_create) VALUES (?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT (aggregate_root_id) DO UPDATE SET aggregate_root_type_name = EXCLUDED.aggregate_root_type_name, version = EXCLUDED.version, "
+        + "format_version = EXCLUDED.format_version, schema_version = EXCLUDED.schema_version, payload = EXCLUDED.payload, gmt_create = EXCLUDED.gmt_create "
+        + "WHERE s.version < EXCLUDED.version OR s.schema_version <> EXCLUDED.schema_version";
+
+    public PgSnapshotStore(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public PgSnapshotStore(DataSource dataSource, DBConfiguration setting) {
+        super(dataSource, setting);
+    }
+
+    @Override
+    protected String getUpsertSql(String tableName) {
+        return String.format(UPSERT_SQL, tableName);
+    }
+}
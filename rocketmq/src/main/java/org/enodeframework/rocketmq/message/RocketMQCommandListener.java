@@ -17,6 +17,10 @@ import java.util.concurrent.CountDownLatch;
 public class RocketMQCommandListener implements MessageListenerOrderly {
 
     private final IMessageHandler commandListener;
+    /**
+     * 处理中的命令超过高水位时消费线程最多等待的毫秒数，超时后挂起当前队列，稍后由RocketMQ重新投递
+     */
+    private long capacityWaitTimeoutMillis = 1000;
 
     public RocketMQCommandListener(IMessageHandler commandListener) {
         this.commandListener = commandListener;
@@ -24,6 +28,9 @@ public class RocketMQCommandListener implements MessageListenerOrderly {
 
     @Override
     public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+        if (!Task.await(commandListener.waitForCapacityAsync(), capacityWaitTimeoutMillis)) {
+            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+        }
         final CountDownLatch latch = new CountDownLatch(msgs.size());
         msgs.forEach(messageExt -> {
             QueueMessage queueMessage = RocketMQTool.covertToQueueMessage(messageExt);
@@ -34,4 +41,12 @@ public class RocketMQCommandListener implements MessageListenerOrderly {
         Task.await(latch);
         return ConsumeOrderlyStatus.SUCCESS;
     }
+
+    public long getCapacityWaitTimeoutMillis() {
+        return capacityWaitTimeoutMillis;
+    }
+
+    public void setCapacityWaitTimeoutMillis(long capacityWaitTimeoutMillis) {
+        this.capacityWaitTimeoutMillis = capacityWaitTimeoutMillis;
+    }
 }
@@ -1,11 +1,13 @@
 package org.enodeframework.rocketmq.message;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.producer.MQProducer;
 import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.client.producer.selector.SelectMessageQueueByHash;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.remoting.exception.RemotingException;
 import org.enodeframework.common.exception.IORuntimeException;
 import org.enodeframework.queue.ISendMessageService;
@@ -13,7 +15,17 @@ import org.enodeframework.queue.QueueMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author anruence@gmail.com
@@ -21,11 +33,55 @@ import java.util.concurrent.CompletableFuture;
 public class SendRocketMQService implements ISendMessageService {
 
     private static final Logger logger = LoggerFactory.getLogger(SendRocketMQService.class);
+    /**
+     * 单个批量消息的最大估算大小，需要小于Broker的maxMessageSize
+     */
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+    /**
+     * 每条消息在CommitLog中的固定开销估算，与RocketMQ批量消息拆分示例保持一致
+     */
+    private static final int MESSAGE_LOG_OVERHEAD_BYTES = 20;
+    private static final int DEFAULT_BATCH_SEND_THREAD_COUNT = 4;
+    private static final int DEFAULT_BATCH_SEND_QUEUE_CAPACITY = 1024;
 
     private final MQProducer producer;
+    private final SelectMessageQueueByHash messageQueueSelector = new SelectMessageQueueByHash();
+    /**
+     * 执行批量发送的线程池，RocketMQ的批量发送只有同步接口
+     */
+    private final Executor batchSendExecutor;
+    /**
+     * 由本服务创建的线程池在shutdown时关闭，外部传入的线程池由调用方管理
+     */
+    private final ExecutorService ownedExecutor;
 
+    /**
+     * 使用有界的批量发送线程池，队列满时由调用线程执行发送，以此对发布方形成反压
+     */
     public SendRocketMQService(MQProducer producer) {
+        this(producer, new ThreadPoolExecutor(DEFAULT_BATCH_SEND_THREAD_COUNT, DEFAULT_BATCH_SEND_THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(DEFAULT_BATCH_SEND_QUEUE_CAPACITY),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SendRocketMQService-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy()), true);
+    }
+
+    public SendRocketMQService(MQProducer producer, Executor batchSendExecutor) {
+        this(producer, batchSendExecutor, false);
+    }
+
+    private SendRocketMQService(MQProducer producer, Executor batchSendExecutor, boolean ownsExecutor) {
         this.producer = producer;
+        this.batchSendExecutor = batchSendExecutor;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) batchSendExecutor : null;
+    }
+
+    /**
+     * 关闭自建的批量发送线程池，已提交的批次会继续发送完成
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
     }
 
     @Override
@@ -33,7 +89,7 @@ public class SendRocketMQService implements ISendMessageService {
         CompletableFuture<Void> promise = new CompletableFuture<>();
         Message message = RocketMQTool.covertToProducerRecord(queueMessage);
         try {
-            producer.send(message, new SelectMessageQueueByHash(), queueMessage.getRouteKey(), new SendCallback() {
+            producer.send(message, messageQueueSelector, queueMessage.getRouteKey(), new SendCallback() {
                 @Override
                 public void onSuccess(SendResult result) {
                     if (logger.isDebugEnabled()) {
@@ -54,4 +110,99 @@ public class SendRocketMQService implements ISendMessageService {
         }
         return promise;
     }
+
+    /**
+     * 按路由键选出的队列分组，同一队列的消息合并为批量消息发送，批量消息发送成功后其中每个消息的Future完成；
+     * 获取队列失败时退回逐条发送
+     */
+    @Override
+    public List<CompletableFuture<Void>> sendMessagesAsync(List<QueueMessage> queueMessages) {
+        if (queueMessages.size() <= 1) {
+            return ISendMessageService.super.sendMessagesAsync(queueMessages);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(queueMessages.size());
+        Map<String, List<MessageQueue>> topicQueuesDict = new HashMap<>();
+        Map<MessageQueue, List<Integer>> queueMessageIndexDict = new LinkedHashMap<>();
+        List<Message> messages = new ArrayList<>(queueMessages.size());
+        for (int i = 0; i < queueMessages.size(); i++) {
+            QueueMessage queueMessage = queueMessages.get(i);
+            Message message = RocketMQTool.covertToProducerRecord(queueMessage);
+            messages.add(message);
+            List<MessageQueue> messageQueues = topicQueuesDict.computeIfAbsent(queueMessage.getTopic(), this::fetchPublishMessageQueues);
+            if (messageQueues == null || messageQueues.isEmpty()) {
+                futures.add(sendMessageAsync(queueMessage));
+                continue;
+            }
+            futures.add(new CompletableFuture<>());
+            MessageQueue messageQueue = messageQueueSelector.select(messageQueues, message, queueMessage.getRouteKey());
+            queueMessageIndexDict.computeIfAbsent(messageQueue, x -> new ArrayList<>()).add(i);
+        }
+        queueMessageIndexDict.forEach((messageQueue, indexes) -> {
+            List<Integer> batchIndexes = new ArrayList<>();
+            int batchBytes = 0;
+            for (Integer index : indexes) {
+                int messageBytes = estimateSize(messages.get(index));
+                if (!batchIndexes.isEmpty() && batchBytes + messageBytes > MAX_BATCH_BYTES) {
+                    sendBatchAsync(messageQueue, batchIndexes, messages, futures);
+                    batchIndexes = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batchIndexes.add(index);
+                batchBytes += messageBytes;
+            }
+            sendBatchAsync(messageQueue, batchIndexes, messages, futures);
+        });
+        return futures;
+    }
+
+    /**
+     * 估算消息在批量消息中占用的大小：主题、消息体、属性键值以及固定开销
+     */
+    private int estimateSize(Message message) {
+        int size = message.getTopic().length() + message.getBody().length + MESSAGE_LOG_OVERHEAD_BYTES;
+        Map<String, String> properties = message.getProperties();
+        if (properties != null) {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                size += entry.getKey().length() + entry.getValue().length();
+            }
+        }
+        return size;
+    }
+
+    private List<MessageQueue> fetchPublishMessageQueues(String topic) {
+        try {
+            return producer.fetchPublishMessageQueues(topic);
+        } catch (MQClientException ex) {
+            logger.warn("Fetch publish message queues has exception, send messages one by one, topic: {}", topic, ex);
+            return null;
+        }
+    }
+
+    private void sendBatchAsync(MessageQueue messageQueue, List<Integer> indexes, List<Message> messages, List<CompletableFuture<Void>> futures) {
+        List<Message> batchMessages = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            batchMessages.add(messages.get(index));
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                SendResult result = producer.send(batchMessages, messageQueue);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Enode message batch send success, sendResult: {}, messageCount: {}", result, batchMessages.size());
+                }
+            } catch (Exception ex) {
+                throw new IORuntimeException(ex);
+            }
+        }, batchSendExecutor).whenComplete((x, ex) -> {
+            if (ex != null) {
+                logger.error("Enode message batch send has exception, messageQueue: {}, messageCount: {}", messageQueue, batchMessages.size(), ex);
+            }
+            for (Integer index : indexes) {
+                if (ex != null) {
+                    futures.get(index).completeExceptionally(ex.getCause() instanceof IORuntimeException ? ex.getCause() : new IORuntimeException(ex));
+                } else {
+                    futures.get(index).complete(null);
+                }
+            }
+        });
+    }
 }
@@ -21,3 +21,16 @@ CREATE TABLE published_version (
   PRIMARY KEY (id),
   UNIQUE KEY uk_processor_name_aggregate_root_id (processor_name, aggregate_root_id)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE aggregate_snapshot (
+  id BIGINT AUTO_INCREMENT NOT NULL,
+  aggregate_root_id VARCHAR(36) NOT NULL,
+  aggregate_root_type_name VARCHAR(256) NOT NULL,
+  version INT NOT NULL,
+  format_version INT NOT NULL,
+  schema_version VARCHAR(64) NOT NULL,
+  payload MEDIUMTEXT NOT NULL,
+  gmt_create DATETIME NOT NULL,
+  PRIMARY KEY (id),
+  UNIQUE KEY uk_aggregate_root_id (aggregate_root_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
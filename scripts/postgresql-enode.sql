@@ -21,3 +21,16 @@ CREATE TABLE published_version (
   PRIMARY KEY (id),
   CONSTRAINT uk_processor_name_aggregate_root_id UNIQUE (processor_name, aggregate_root_id)
 );
+
+CREATE TABLE aggregate_snapshot (
+  id bigserial,
+  aggregate_root_id varchar(36),
+  aggregate_root_type_name varchar(256),
+  version integer,
+  format_version integer,
+  schema_version varchar(64),
+  payload text,
+  gmt_create date,
+  PRIMARY KEY (id),
+  CONSTRAINT uk_aggregate_root_id UNIQUE (aggregate_root_id)
+);
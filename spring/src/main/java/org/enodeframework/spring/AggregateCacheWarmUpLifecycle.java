@@ -0,0 +1,50 @@
+package org.enodeframework.spring;
+
+import org.enodeframework.domain.impl.AggregateCacheWarmer;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * 在所有Bean初始化完成后执行聚合根缓存预热，停止时保存热点聚合根。
+ * <p>
+ * 早于Kafka等SmartLifecycle监听容器启动，但通过@Bean(initMethod = "start")启动的RocketMQ/ONS消费者在Bean初始化时就已经开始消费，
+ * 预热期间可能已经有命令在处理，预热只放入缓存中还没有的聚合根，不会和这些命令冲突
+ *
+ * @author anruence@gmail.com
+ */
+public class AggregateCacheWarmUpLifecycle implements SmartLifecycle {
+
+    /**
+     * 早于消息监听容器的默认阶段启动
+     */
+    private static final int PHASE = 0;
+
+    private final AggregateCacheWarmer aggregateCacheWarmer;
+
+    private volatile boolean running;
+
+    public AggregateCacheWarmUpLifecycle(AggregateCacheWarmer aggregateCacheWarmer) {
+        this.aggregateCacheWarmer = aggregateCacheWarmer;
+    }
+
+    @Override
+    public void start() {
+        aggregateCacheWarmer.start();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        aggregateCacheWarmer.stop();
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -19,14 +19,20 @@ import org.enodeframework.domain.IAggregateStorage;
 import org.enodeframework.domain.IDomainException;
 import org.enodeframework.domain.IMemoryCache;
 import org.enodeframework.domain.IRepository;
+import org.enodeframework.domain.ISnapshotStore;
+import org.enodeframework.domain.SnapshotPolicy;
 import org.enodeframework.domain.impl.DefaultAggregateRepositoryProvider;
 import org.enodeframework.domain.impl.DefaultAggregateRootFactory;
 import org.enodeframework.domain.impl.DefaultAggregateRootInternalHandlerProvider;
 import org.enodeframework.domain.impl.DefaultAggregateSnapshotter;
+import org.enodeframework.domain.impl.AggregateCacheWarmer;
 import org.enodeframework.domain.impl.DefaultMemoryCache;
 import org.enodeframework.domain.impl.DefaultRepository;
 import org.enodeframework.domain.impl.EventSourcingAggregateStorage;
+import org.enodeframework.domain.impl.OffHeapAggregateRootCache;
 import org.enodeframework.domain.impl.SnapshotOnlyAggregateStorage;
+import org.enodeframework.domain.impl.SnapshotStoreAggregateSnapshotter;
+import org.enodeframework.eventing.BatchLingerPolicy;
 import org.enodeframework.eventing.DomainEventStreamMessage;
 import org.enodeframework.eventing.IEventCommittingService;
 import org.enodeframework.eventing.IEventSerializer;
@@ -62,6 +68,7 @@ import org.enodeframework.queue.domainevent.DefaultDomainEventListener;
 import org.enodeframework.queue.domainevent.DefaultDomainEventPublisher;
 import org.enodeframework.queue.publishableexceptions.DefaultPublishableExceptionListener;
 import org.enodeframework.queue.publishableexceptions.DefaultPublishableExceptionPublisher;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
@@ -100,7 +107,61 @@ public class EnodeAutoConfiguration {
     @Value("${spring.enode.mq.tag.exception:*}")
     private String exceptionTag;
 
-    @Bean(name = "scheduleService")
+    @Value("${spring.enode.mailbox.command.ringbuffer:false}")
+    private boolean commandMailBoxRingBufferEnabled;
+
+    @Value("${spring.enode.command.groupcommit.enabled:false}")
+    private boolean commandGroupCommitEnabled;
+
+    @Value("${spring.enode.command.groupcommit.maxsize:100}")
+    private int commandGroupCommitMaxSize;
+
+    @Value("${spring.enode.mailbox.event.count:0}")
+    private int eventMailBoxCount;
+
+    @Value("${spring.enode.mailbox.event.dbpoolsize:0}")
+    private int eventMailBoxDbPoolSize;
+
+    @Value("${spring.enode.mailbox.event.pipeline:1}")
+    private int eventMailBoxPipeline;
+
+    @Value("${spring.enode.mailbox.event.linger:0}")
+    private int eventMailBoxLinger;
+
+    @Value("${spring.enode.mailbox.event.minbatch:16}")
+    private int eventMailBoxMinBatch;
+
+    @Value("${spring.enode.mailbox.event.lingerratio:0.5}")
+    private double eventMailBoxLingerRatio;
+
+    @Value("${spring.enode.aggregate.cache.maxsize:0}")
+    private long aggregateCacheMaxSize;
+
+    @Value("${spring.enode.aggregate.replay.pagesize:1000}")
+    private int aggregateReplayPageSize;
+
+    @Value("${spring.enode.command.inflight.high:0}")
+    private int commandInFlightHighWatermark;
+
+    @Value("${spring.enode.command.inflight.low:-1}")
+    private int commandInFlightLowWatermark;
+
+    @Value("${spring.enode.mailbox.command.inflight.high:0}")
+    private int commandMailBoxInFlightHighWatermark;
+
+    @Value("${spring.enode.mailbox.command.inflight.low:-1}")
+    private int commandMailBoxInFlightLowWatermark;
+
+    @Value("${spring.enode.snapshot.interval:100}")
+    private int snapshotVersionInterval;
+
+    @Value("${spring.enode.snapshot.replay.threshold:200}")
+    private int snapshotReplayEventStreamThreshold;
+
+    @Value("${spring.enode.snapshot.replay.millis:0}")
+    private long snapshotReplayMillisThreshold;
+
+    @Bean(name = "scheduleService", destroyMethod = "shutdown")
     public ScheduleService scheduleService() {
         return new ScheduleService();
     }
@@ -167,8 +228,35 @@ public class EnodeAutoConfiguration {
     }
 
     @Bean(name = "defaultMemoryCache", initMethod = "start", destroyMethod = "stop")
-    public DefaultMemoryCache defaultMemoryCache(IAggregateStorage aggregateStorage, IScheduleService scheduleService, ITypeNameProvider typeNameProvider) {
-        return new DefaultMemoryCache(aggregateStorage, scheduleService, typeNameProvider);
+    public DefaultMemoryCache defaultMemoryCache(ObjectProvider<OffHeapAggregateRootCache> offHeapAggregateRootCache, IAggregateStorage aggregateStorage, IScheduleService scheduleService, ITypeNameProvider typeNameProvider) {
+        DefaultMemoryCache memoryCache = new DefaultMemoryCache(aggregateStorage, scheduleService, typeNameProvider);
+        memoryCache.setMaxCacheWeight(aggregateCacheMaxSize);
+        memoryCache.setSecondLevelCache(offHeapAggregateRootCache.getIfAvailable());
+        return memoryCache;
+    }
+
+    @Bean(name = "aggregateCacheWarmUpLifecycle")
+    @ConditionalOnProperty(prefix = "spring.enode.aggregate.cache.warmup", name = "enabled", havingValue = "true", matchIfMissing = false)
+    public AggregateCacheWarmUpLifecycle aggregateCacheWarmUpLifecycle(
+            DefaultMemoryCache memoryCache,
+            ITypeNameProvider typeNameProvider,
+            @Value("${spring.enode.aggregate.cache.warmup.file:enode-hot-aggregates.txt}") String hotSetFile,
+            @Value("${spring.enode.aggregate.cache.warmup.maxcount:10000}") int maxAggregateRootCount,
+            @Value("${spring.enode.aggregate.cache.warmup.parallelism:16}") int parallelism,
+            @Value("${spring.enode.aggregate.cache.warmup.timeout:60}") int timeoutSeconds) {
+        AggregateCacheWarmer aggregateCacheWarmer = new AggregateCacheWarmer(memoryCache, typeNameProvider, hotSetFile);
+        aggregateCacheWarmer.setMaxAggregateRootCount(maxAggregateRootCount);
+        aggregateCacheWarmer.setParallelism(parallelism);
+        aggregateCacheWarmer.setTimeoutSeconds(timeoutSeconds);
+        return new AggregateCacheWarmUpLifecycle(aggregateCacheWarmer);
+    }
+
+    @Bean(name = "offHeapAggregateRootCache")
+    @ConditionalOnProperty(prefix = "spring.enode.aggregate.cache.offheap", name = "enabled", havingValue = "true", matchIfMissing = false)
+    public OffHeapAggregateRootCache offHeapAggregateRootCache(
+            @Value("${spring.enode.aggregate.cache.offheap.capacity:1073741824}") long capacityBytes,
+            @Value("${spring.enode.aggregate.cache.offheap.slabsize:67108864}") int slabSize) {
+        return new OffHeapAggregateRootCache(capacityBytes, slabSize);
     }
 
     @Bean(name = "defaultAggregateRepositoryProvider")
@@ -202,12 +290,21 @@ public class EnodeAutoConfiguration {
     }
 
     @Bean(name = "aggregateSnapshotter")
-    public DefaultAggregateSnapshotter aggregateSnapshotter(IAggregateRepositoryProvider aggregateRepositoryProvider) {
-        return new DefaultAggregateSnapshotter(aggregateRepositoryProvider);
+    public IAggregateSnapshotter aggregateSnapshotter(ObjectProvider<ISnapshotStore> snapshotStore, IAggregateRepositoryProvider aggregateRepositoryProvider, ITypeNameProvider typeNameProvider) {
+        DefaultAggregateSnapshotter defaultAggregateSnapshotter = new DefaultAggregateSnapshotter(aggregateRepositoryProvider);
+        ISnapshotStore store = snapshotStore.getIfAvailable();
+        if (store == null) {
+            return defaultAggregateSnapshotter;
+        }
+        SnapshotPolicy snapshotPolicy = new SnapshotPolicy(snapshotVersionInterval, snapshotReplayEventStreamThreshold, snapshotReplayMillisThreshold);
+        SnapshotStoreAggregateSnapshotter aggregateSnapshotter = new SnapshotStoreAggregateSnapshotter(store, typeNameProvider, snapshotPolicy);
+        aggregateSnapshotter.setFallbackSnapshotter(defaultAggregateSnapshotter);
+        return aggregateSnapshotter;
     }
 
     @Bean(name = "defaultProcessingCommandHandler")
     public DefaultProcessingCommandHandler defaultProcessingCommandHandler(
+            IAggregateSnapshotter aggregateSnapshotter,
             IEventStore eventStore,
             ICommandHandlerProvider commandHandlerProvider,
             ITypeNameProvider typeNameProvider,
@@ -216,17 +313,30 @@ public class EnodeAutoConfiguration {
             @Qualifier(value = "applicationMessagePublisher") IMessagePublisher<IApplicationMessage> applicationMessagePublisher,
             @Qualifier(value = "publishableExceptionPublisher") IMessagePublisher<IDomainException> publishableExceptionPublisher,
             ISerializeService serializeService) {
-        return new DefaultProcessingCommandHandler(eventStore, commandHandlerProvider, typeNameProvider, eventService, memoryCache, applicationMessagePublisher, publishableExceptionPublisher, serializeService);
+        DefaultProcessingCommandHandler processingCommandHandler = new DefaultProcessingCommandHandler(eventStore, commandHandlerProvider, typeNameProvider, eventService, memoryCache, applicationMessagePublisher, publishableExceptionPublisher, serializeService);
+        processingCommandHandler.setGroupCommitEnabled(commandGroupCommitEnabled);
+        processingCommandHandler.setGroupCommitMaxSize(commandGroupCommitMaxSize);
+        processingCommandHandler.setAggregateSnapshotter(aggregateSnapshotter);
+        return processingCommandHandler;
     }
 
     @Bean(name = "defaultEventCommittingService")
     public DefaultEventCommittingService defaultEventCommittingService(
+            IAggregateSnapshotter aggregateSnapshotter,
             IMemoryCache memoryCache,
             IEventStore eventStore,
             ISerializeService serializeService,
+            IScheduleService scheduleService,
             @Qualifier("domainEventPublisher") IMessagePublisher<DomainEventStreamMessage> domainEventPublisher,
             @Qualifier("mailBoxExecutor") Executor executor) {
-        return new DefaultEventCommittingService(memoryCache, eventStore, serializeService, domainEventPublisher, executor);
+        int mailBoxCount = eventMailBoxCount > 0 ? eventMailBoxCount : DefaultEventCommittingService.defaultEventMailBoxCount(eventMailBoxDbPoolSize);
+        DefaultEventCommittingService eventCommittingService = new DefaultEventCommittingService(memoryCache, eventStore, serializeService, domainEventPublisher, mailBoxCount, executor);
+        eventCommittingService.setAggregateSnapshotter(aggregateSnapshotter);
+        eventCommittingService.setMaxInFlightBatchCount(eventMailBoxPipeline);
+        if (eventMailBoxLinger > 0) {
+            eventCommittingService.setLingerPolicy(new BatchLingerPolicy(scheduleService, eventMailBoxLinger, eventMailBoxMinBatch, eventMailBoxLingerRatio));
+        }
+        return eventCommittingService;
     }
 
     @Bean(name = "jacksonSerializeService")
@@ -237,7 +347,13 @@ public class EnodeAutoConfiguration {
 
     @Bean(name = "defaultCommandProcessor", initMethod = "start", destroyMethod = "stop")
     public DefaultCommandProcessor defaultCommandProcessor(IProcessingCommandHandler processingCommandHandler, IScheduleService scheduleService, @Qualifier("mailBoxExecutor") Executor executor) {
-        return new DefaultCommandProcessor(processingCommandHandler, scheduleService, executor);
+        DefaultCommandProcessor commandProcessor = new DefaultCommandProcessor(processingCommandHandler, scheduleService, executor);
+        commandProcessor.setCommandMailBoxRingBufferEnabled(commandMailBoxRingBufferEnabled);
+        commandProcessor.setInFlightHighWatermark(commandInFlightHighWatermark);
+        commandProcessor.setInFlightLowWatermark(commandInFlightLowWatermark);
+        commandProcessor.setCommandMailBoxInFlightHighWatermark(commandMailBoxInFlightHighWatermark);
+        commandProcessor.setCommandMailBoxInFlightLowWatermark(commandMailBoxInFlightLowWatermark);
+        return commandProcessor;
     }
 
     @Bean(name = "snapshotOnlyAggregateStorage")
@@ -249,11 +365,15 @@ public class EnodeAutoConfiguration {
     @Bean(name = "eventSourcingAggregateStorage")
     @ConditionalOnProperty(prefix = "spring.enode", name = "aggregatestorage", havingValue = "eventsourcing", matchIfMissing = true)
     public EventSourcingAggregateStorage eventSourcingAggregateStorage(
+            ObjectProvider<OffHeapAggregateRootCache> offHeapAggregateRootCache,
             IAggregateRootFactory aggregateRootFactory,
             IEventStore eventStore,
             IAggregateSnapshotter aggregateSnapshotter,
             ITypeNameProvider typeNameProvider) {
-        return new EventSourcingAggregateStorage(eventStore, aggregateRootFactory, aggregateSnapshotter, typeNameProvider);
+        EventSourcingAggregateStorage aggregateStorage = new EventSourcingAggregateStorage(eventStore, aggregateRootFactory, aggregateSnapshotter, typeNameProvider);
+        aggregateStorage.setSecondLevelCache(offHeapAggregateRootCache.getIfAvailable());
+        aggregateStorage.setReplayPageSize(aggregateReplayPageSize);
+        return aggregateStorage;
     }
 
     @Bean(name = "defaultCommandService")
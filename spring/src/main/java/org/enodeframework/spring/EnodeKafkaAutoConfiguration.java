@@ -6,10 +6,13 @@ import org.enodeframework.kafka.KafkaDomainEventListener;
 import org.enodeframework.kafka.KafkaPublishableExceptionListener;
 import org.enodeframework.kafka.SendKafkaMessageService;
 import org.enodeframework.queue.IMessageHandler;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
 
 @ConditionalOnProperty(prefix = "spring.enode", name = "mq", havingValue = "kafka")
 public class EnodeKafkaAutoConfiguration {
@@ -38,6 +41,12 @@ public class EnodeKafkaAutoConfiguration {
         return new KafkaCommandListener(commandListener);
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.enode.mq.topic", name = "command")
+    public KafkaCommandListenerContainerBinder kafkaCommandListenerContainerBinder(KafkaCommandListener commandListener, ObjectProvider<MessageListenerContainer> containerProvider, ObjectProvider<KafkaListenerEndpointRegistry> registryProvider) {
+        return new KafkaCommandListenerContainerBinder(commandListener, containerProvider, registryProvider);
+    }
+
     @Bean
     public SendKafkaMessageService sendKafkaMessageService(@Qualifier(value = "enodeKafkaTemplate") KafkaTemplate<String, String> kafkaTemplate) {
         return new SendKafkaMessageService(kafkaTemplate);
@@ -1,5 +1,6 @@
 package org.enodeframework.spring;
 
+import org.enodeframework.domain.impl.InMemorySnapshotStore;
 import org.enodeframework.eventing.impl.InMemoryEventStore;
 import org.enodeframework.eventing.impl.InMemoryPublishedVersionStore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -17,4 +18,10 @@ public class EnodeMemoryEventStoreAutoConfig {
     public InMemoryPublishedVersionStore inMemoryPublishedVersionStore() {
         return new InMemoryPublishedVersionStore();
     }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.enode.snapshot", name = "enabled", havingValue = "true")
+    public InMemorySnapshotStore inMemorySnapshotStore() {
+        return new InMemorySnapshotStore();
+    }
 }
@@ -5,6 +5,7 @@ import org.enodeframework.common.serializing.ISerializeService;
 import org.enodeframework.eventing.IEventSerializer;
 import org.enodeframework.mongo.MongoEventStore;
 import org.enodeframework.mongo.MongoPublishedVersionStore;
+import org.enodeframework.mongo.MongoSnapshotStore;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -21,4 +22,10 @@ public class EnodeMongoEventStoreAutoConfig {
     public MongoPublishedVersionStore mongoPublishedVersionStore(@Qualifier("enodeMongoClient") MongoClient mongoClient) {
         return new MongoPublishedVersionStore(mongoClient);
     }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.enode.snapshot", name = "enabled", havingValue = "true")
+    public MongoSnapshotStore mongoSnapshotStore(@Qualifier("enodeMongoClient") MongoClient mongoClient) {
+        return new MongoSnapshotStore(mongoClient);
+    }
 }
@@ -6,6 +6,7 @@ import org.enodeframework.eventing.IEventSerializer;
 import org.enodeframework.jdbc.DBConfiguration;
 import org.enodeframework.mysql.MysqlEventStore;
 import org.enodeframework.mysql.MysqlPublishedVersionStore;
+import org.enodeframework.mysql.MysqlSnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,4 +48,16 @@ public class EnodeMySQLEventStoreAutoConfig {
         });
         return publishedVersionStore;
     }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.enode.snapshot", name = "enabled", havingValue = "true")
+    public MysqlSnapshotStore mysqlSnapshotStore(@Qualifier("enodeMySQLDataSource") DataSource mySQLDataSource) {
+        MysqlSnapshotStore snapshotStore = new MysqlSnapshotStore(mySQLDataSource, DBConfiguration.mysql());
+        vertx.deployVerticle(snapshotStore, res -> {
+            if (!res.succeeded()) {
+                logger.error("vertx deploy MysqlSnapshotStore failed.", res.cause());
+            }
+        });
+        return snapshotStore;
+    }
 }
@@ -6,6 +6,7 @@ import org.enodeframework.eventing.IEventSerializer;
 import org.enodeframework.jdbc.DBConfiguration;
 import org.enodeframework.pg.PgEventStore;
 import org.enodeframework.pg.PgPublishedVersionStore;
+import org.enodeframework.pg.PgSnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,4 +47,16 @@ public class EnodePgEventStoreAutoConfig {
         });
         return versionStore;
     }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.enode.snapshot", name = "enabled", havingValue = "true")
+    public PgSnapshotStore pgSnapshotStore(@Qualifier("enodePgDataSource") DataSource pgDataSource) {
+        PgSnapshotStore snapshotStore = new PgSnapshotStore(pgDataSource, DBConfiguration.postgresql());
+        vertx.deployVerticle(snapshotStore, res -> {
+            if (!res.succeeded()) {
+                logger.error("vertx deploy PgSnapshotStore failed.", res.cause());
+            }
+        });
+        return snapshotStore;
+    }
 }
@@ -38,7 +38,7 @@ public class EnodeRocketMQAutoConfig {
         return new RocketMQCommandListener(commandListener);
     }
 
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     public SendRocketMQService sendRocketMQService(@Qualifier(value = "enodeMQProducer") MQProducer mqProducer) {
         return new SendRocketMQService(mqProducer);
     }
@@ -1,5 +1,6 @@
 package org.enodeframework.spring;
 
+import org.enodeframework.common.threading.ShardAffinityExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -7,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
@@ -30,9 +32,23 @@ public class EnodeThreadPoolConfig {
     @Value("${async.executor.thread.keepalive:0}")
     private final int keepAliveSeconds = 0;
 
+    /**
+     * pool: 共享线程池；affinity: 按聚合根ID固定线程，每个线程独立队列
+     */
+    @Value("${async.executor.thread.mode:pool}")
+    private String executorMode;
+
+    /**
+     * affinity 模式下的工作线程数，小于等于0时使用CPU核数
+     */
+    @Value("${async.executor.thread.affinity.size:0}")
+    private int affinityWorkerCount;
+
     private final CallerRunsPolicy callerRunsPolicy = new ThreadPoolExecutor.CallerRunsPolicy();
     //线程池对拒绝任务(无线程可用)的处理策略
 
+    private static final String EXECUTOR_MODE_AFFINITY = "affinity";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(EnodeThreadPoolConfig.class);
 
     private static final Thread.UncaughtExceptionHandler MAIL_BOX_MESSAGE_EXECUTOR_EXCEPTION_HANDLER =
@@ -40,7 +56,11 @@ public class EnodeThreadPoolConfig {
 
 
     @Bean(name = "mailBoxExecutor")
-    public ThreadPoolTaskExecutor mailBoxExecutor() {
+    public Executor mailBoxExecutor() {
+        if (EXECUTOR_MODE_AFFINITY.equalsIgnoreCase(executorMode)) {
+            int workerCount = affinityWorkerCount > 0 ? affinityWorkerCount : Runtime.getRuntime().availableProcessors();
+            return new ShardAffinityExecutor(workerCount, "MailBoxMessageExecutor-");
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(corePoolSize);
         executor.setMaxPoolSize(maxPoolSize);
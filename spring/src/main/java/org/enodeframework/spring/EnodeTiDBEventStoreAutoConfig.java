@@ -6,6 +6,7 @@ import org.enodeframework.eventing.IEventSerializer;
 import org.enodeframework.jdbc.DBConfiguration;
 import org.enodeframework.tidb.TiDBEventStore;
 import org.enodeframework.tidb.TiDBPublishedVersionStore;
+import org.enodeframework.tidb.TiDBSnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,4 +46,16 @@ public class EnodeTiDBEventStoreAutoConfig {
         });
         return publishedVersionStore;
     }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.enode.snapshot", name = "enabled", havingValue = "true")
+    public TiDBSnapshotStore tidbSnapshotStore(@Qualifier("enodeTiDBDataSource") DataSource tidbDataSource) {
+        TiDBSnapshotStore snapshotStore = new TiDBSnapshotStore(tidbDataSource, DBConfiguration.mysql());
+        vertx.deployVerticle(snapshotStore, res -> {
+            if (!res.succeeded()) {
+                logger.error("vertx deploy TiDBSnapshotStore failed.", res.cause());
+            }
+        });
+        return snapshotStore;
+    }
 }
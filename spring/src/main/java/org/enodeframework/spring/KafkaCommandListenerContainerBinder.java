@@ -0,0 +1,63 @@
+package org.enodeframework.spring;
+
+import org.enodeframework.kafka.KafkaCommandListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.DelegatingMessageListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 所有Bean初始化完成后、监听容器启动之前，找到使用KafkaCommandListener的容器（包括被RetryingMessageListenerAdapter等包装的），
+ * 设置给KafkaCommandListener，用于限流时暂停拉取
+ *
+ * @author anruence@gmail.com
+ */
+public class KafkaCommandListenerContainerBinder implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaCommandListenerContainerBinder.class);
+
+    private final KafkaCommandListener commandListener;
+    private final ObjectProvider<MessageListenerContainer> containerProvider;
+    private final ObjectProvider<KafkaListenerEndpointRegistry> registryProvider;
+
+    public KafkaCommandListenerContainerBinder(KafkaCommandListener commandListener, ObjectProvider<MessageListenerContainer> containerProvider, ObjectProvider<KafkaListenerEndpointRegistry> registryProvider) {
+        this.commandListener = commandListener;
+        this.containerProvider = containerProvider;
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<MessageListenerContainer> containers = new ArrayList<>();
+        containerProvider.orderedStream().forEach(containers::add);
+        registryProvider.ifAvailable(registry -> containers.addAll(registry.getListenerContainers()));
+        for (MessageListenerContainer container : containers) {
+            if (isCommandListener(getMessageListener(container))) {
+                commandListener.setListenerContainer(container);
+                return;
+            }
+        }
+        logger.warn("No kafka listener container uses {}, command consuming will not be paused when in-flight commands exceed the high watermark.", commandListener.getClass().getName());
+    }
+
+    private Object getMessageListener(MessageListenerContainer container) {
+        try {
+            return container.getContainerProperties().getMessageListener();
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    private boolean isCommandListener(Object messageListener) {
+        while (messageListener instanceof DelegatingMessageListener && messageListener != commandListener) {
+            messageListener = ((DelegatingMessageListener<?>) messageListener).getDelegate();
+        }
+        return messageListener == commandListener;
+    }
+}
@@ -0,0 +1,92 @@
+package org.enodeframework.tests;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import org.enodeframework.annotation.SnapshotVersion;
+import org.enodeframework.domain.AggregateRoot;
+import org.enodeframework.domain.AggregateSnapshot;
+import org.enodeframework.domain.SnapshotPolicy;
+import org.enodeframework.domain.impl.AggregateStateSerializer;
+import org.enodeframework.domain.impl.InMemorySnapshotStore;
+import org.enodeframework.domain.impl.SnapshotStoreAggregateSnapshotter;
+import org.enodeframework.infrastructure.impl.DefaultTypeNameProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+public class AggregateSnapshotTest {
+
+    private final AggregateStateSerializer stateSerializer = new AggregateStateSerializer();
+
+    @Test
+    public void object_fields_round_trip_with_allowed_types() throws Exception {
+        UUID id = UUID.randomUUID();
+        SnapshotAggregate aggregate = new SnapshotAggregate(id, 3);
+        aggregate.state = 42L;
+        SnapshotAggregate restored = stateSerializer.deserialize(stateSerializer.serialize(aggregate), SnapshotAggregate.class);
+        Assert.assertEquals(id, restored.getId());
+        Assert.assertEquals(3, restored.getVersion());
+        Assert.assertEquals(42L, restored.state);
+    }
+
+    @Test
+    public void type_ids_outside_allowed_packages_are_rejected() {
+        String payload = "{\"id\":\"a\",\"version\":1,\"state\":[\"java.net.URL\",\"http://localhost\"]}";
+        try {
+            stateSerializer.deserialize(payload, SnapshotAggregate.class);
+            Assert.fail("java.net.URL must not be accepted as a polymorphic type");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex instanceof JsonMappingException);
+        }
+    }
+
+    @Test
+    public void schema_version_follows_fields_or_annotation() {
+        String schemaVersion = stateSerializer.getSchemaVersion(SnapshotAggregate.class);
+        Assert.assertTrue(schemaVersion.startsWith("h"));
+        Assert.assertEquals(schemaVersion, stateSerializer.getSchemaVersion(SnapshotAggregate.class));
+        Assert.assertNotEquals(schemaVersion, stateSerializer.getSchemaVersion(RenamedFieldAggregate.class));
+        Assert.assertEquals("v2", stateSerializer.getSchemaVersion(VersionedAggregate.class));
+    }
+
+    @Test
+    public void snapshot_of_other_schema_version_is_not_restored() {
+        DefaultTypeNameProvider typeNameProvider = new DefaultTypeNameProvider(new HashMap<>());
+        InMemorySnapshotStore snapshotStore = new InMemorySnapshotStore();
+        SnapshotStoreAggregateSnapshotter snapshotter = new SnapshotStoreAggregateSnapshotter(snapshotStore, typeNameProvider, new SnapshotPolicy(1, 1, 0));
+        SnapshotAggregate aggregate = new SnapshotAggregate("a1", 5);
+        AggregateSnapshot snapshot = snapshotter.createSnapshot(aggregate);
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(stateSerializer.getSchemaVersion(SnapshotAggregate.class), snapshot.getSchemaVersion());
+
+        snapshotter.saveSnapshotAsync(snapshot).join();
+        SnapshotAggregate restored = snapshotter.restoreFromSnapshotAsync(SnapshotAggregate.class, "a1").join();
+        Assert.assertNotNull(restored);
+        Assert.assertEquals(5, restored.getVersion());
+
+        // 同版本但结构版本不同的快照会覆盖原快照，且不会被用于恢复
+        snapshotStore.saveSnapshotAsync(new AggregateSnapshot("a1", snapshot.getAggregateRootTypeName(), 5, snapshot.getFormatVersion(), "h0", snapshot.getPayload(), snapshot.getCreatedOn())).join();
+        Assert.assertNull(snapshotter.restoreFromSnapshotAsync(SnapshotAggregate.class, "a1").join());
+    }
+
+    public static class SnapshotAggregate extends AggregateRoot<Object> {
+        private Object state;
+
+        public SnapshotAggregate() {
+        }
+
+        public SnapshotAggregate(Object id, int version) {
+            super(id, version);
+        }
+    }
+
+    public static class RenamedFieldAggregate extends AggregateRoot<Object> {
+        private Object renamedState;
+    }
+
+    @SnapshotVersion(2)
+    public static class VersionedAggregate extends AggregateRoot<Object> {
+        private Object state;
+    }
+}
@@ -0,0 +1,83 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.function.Action;
+import org.enodeframework.common.scheduling.IScheduleService;
+import org.enodeframework.common.scheduling.ScheduleService;
+import org.enodeframework.eventing.BatchLingerPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchLingerPolicyTest {
+
+    private final ScheduleService scheduleService = new ScheduleService();
+
+    @Test
+    public void linger_follows_average_latency_and_is_bounded() {
+        BatchLingerPolicy policy = new BatchLingerPolicy(scheduleService, 5, 10, 0.5);
+        Assert.assertEquals(0, policy.getLingerNanos(1));
+        policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(2));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1), policy.getLingerNanos(1));
+        Assert.assertEquals(0, policy.getLingerNanos(10));
+        for (int i = 0; i < 100; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), policy.getLingerNanos(1));
+    }
+
+    /**
+     * 多个MailBox共享同一个策略并发记录耗时，耗时相同时平均值保持不变
+     */
+    @Test
+    public void concurrent_record_latency() throws Exception {
+        BatchLingerPolicy policy = new BatchLingerPolicy(scheduleService, 100, 10, 1);
+        long latencyNanos = TimeUnit.MILLISECONDS.toNanos(3);
+        policy.recordLatency(latencyNanos);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    policy.recordLatency(latencyNanos);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(latencyNanos, policy.getAverageLatencyNanos());
+    }
+
+    /**
+     * 只实现了周期任务的调度服务，一次性任务使用接口的默认实现：只执行一次并停止注册的任务
+     */
+    @Test
+    public void default_schedule_runs_once() throws Exception {
+        AtomicInteger runningTaskCount = new AtomicInteger();
+        IScheduleService periodicOnly = new IScheduleService() {
+            @Override
+            public void startTask(String name, Action action, int dueTime, int period) {
+                runningTaskCount.incrementAndGet();
+                scheduleService.startTask(name, action, dueTime, period);
+            }
+
+            @Override
+            public void stopTask(String name) {
+                runningTaskCount.decrementAndGet();
+                scheduleService.stopTask(name);
+            }
+        };
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger runCount = new AtomicInteger();
+        periodicOnly.schedule(() -> {
+            runCount.incrementAndGet();
+            latch.countDown();
+        }, 10, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, runCount.get());
+        Assert.assertEquals(0, runningTaskCount.get());
+    }
+}
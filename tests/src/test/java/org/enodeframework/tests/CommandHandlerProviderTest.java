@@ -0,0 +1,57 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.commanding.ICommandHandlerProvider;
+import org.enodeframework.commanding.ICommandHandlerProxy;
+import org.enodeframework.messaging.MessageHandlerData;
+import org.enodeframework.tests.commands.CreateTestAggregateCommand;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只实现了getHandlers的自定义处理器提供者，getHandlerData使用接口的默认实现
+ */
+public class CommandHandlerProviderTest {
+
+    private final Map<Class<?>, List<MessageHandlerData<ICommandHandlerProxy>>> handlerDataDict = new HashMap<>();
+
+    private final ICommandHandlerProvider provider = commandType -> handlerDataDict.getOrDefault(commandType, new ArrayList<>());
+
+    private static MessageHandlerData<ICommandHandlerProxy> createHandlerData(int handlerCount) {
+        MessageHandlerData<ICommandHandlerProxy> handlerData = new MessageHandlerData<>();
+        for (int i = 0; i < handlerCount; i++) {
+            handlerData.allHandlers.add(null);
+            handlerData.listHandlers.add(null);
+        }
+        return handlerData;
+    }
+
+    @Test
+    public void no_handler_returns_null() {
+        Assert.assertNull(provider.getHandlerData(CreateTestAggregateCommand.class));
+    }
+
+    @Test
+    public void single_handler_data_is_returned_as_is() {
+        MessageHandlerData<ICommandHandlerProxy> handlerData = createHandlerData(1);
+        handlerDataDict.put(CreateTestAggregateCommand.class, Arrays.asList(handlerData));
+        Assert.assertSame(handlerData, provider.getHandlerData(CreateTestAggregateCommand.class));
+    }
+
+    /**
+     * 多个处理器数据合并后处理器数量大于1，命令处理时按多个处理器返回失败
+     */
+    @Test
+    public void multiple_handler_data_are_merged() {
+        handlerDataDict.put(CreateTestAggregateCommand.class, Arrays.asList(createHandlerData(1), createHandlerData(1)));
+        MessageHandlerData<ICommandHandlerProxy> handlerData = provider.getHandlerData(CreateTestAggregateCommand.class);
+        Assert.assertEquals(2, handlerData.listHandlers.size());
+        Assert.assertEquals(2, handlerData.allHandlers.size());
+        Assert.assertTrue(handlerData.queuedHandlers.isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.commanding.ProcessingCommand;
+import org.enodeframework.common.utilities.ConsistentHashRing;
+import org.enodeframework.eventing.DomainEventStream;
+import org.enodeframework.eventing.EventCommittingContext;
+import org.enodeframework.eventing.EventCommittingContextMailBox;
+import org.enodeframework.eventing.IDomainEvent;
+import org.enodeframework.tests.commands.CreateTestAggregateCommand;
+import org.enodeframework.tests.domain.Event1;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    private final Queue<Runnable> tasks = new LinkedList<>();
+    private final Executor executor = tasks::add;
+
+    private void runAllTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private EventCommittingContext createContext(String aggregateRootId, int version) {
+        Event1 event = new Event1();
+        event.setAggregateRootId(aggregateRootId);
+        event.setVersion(version);
+        List<IDomainEvent<?>> events = Collections.singletonList(event);
+        CreateTestAggregateCommand command = new CreateTestAggregateCommand();
+        command.aggregateRootId = aggregateRootId;
+        DomainEventStream eventStream = new DomainEventStream(command.getId(), aggregateRootId, "TestAggregate", new Date(), events, null);
+        return new EventCommittingContext(eventStream, new ProcessingCommand(command, null, null));
+    }
+
+    private static ConsistentHashRing<Integer> createRing(int nodeCount) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(i);
+        }
+        return new ConsistentHashRing<>(nodes);
+    }
+
+    /**
+     * 扩容时只有移动到新节点的Key改变归属，且数量约为 1/n
+     */
+    @Test
+    public void grow_only_moves_keys_to_new_node() {
+        ConsistentHashRing<Integer> ring4 = createRing(4);
+        ConsistentHashRing<Integer> ring5 = createRing(5);
+        // 虚拟节点位置只由下标决定，相同节点数的环路由结果相同
+        Assert.assertEquals(ring4.select("aggregate"), createRing(4).select("aggregate"));
+        int[] counts = new int[5];
+        int movedCount = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String key = "aggregate-" + i;
+            int before = ring4.select(key);
+            int after = ring5.select(key);
+            counts[after]++;
+            if (before != after) {
+                Assert.assertEquals(4, after);
+                movedCount++;
+            }
+        }
+        Assert.assertTrue("moved: " + movedCount, movedCount > KEY_COUNT / 10 && movedCount < KEY_COUNT * 3 / 10);
+        for (int count : counts) {
+            Assert.assertTrue("count: " + count, count > KEY_COUNT / 10 && count < KEY_COUNT * 3 / 10);
+        }
+    }
+
+    @Test
+    public void shrink_only_moves_keys_of_removed_node() {
+        ConsistentHashRing<Integer> ring5 = createRing(5);
+        ConsistentHashRing<Integer> ring4 = createRing(4);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String key = "aggregate-" + i;
+            int before = ring5.select(key);
+            if (before != 4) {
+                Assert.assertEquals(before, (int) ring4.select(key));
+            }
+        }
+    }
+
+    /**
+     * 调整MailBox数量时聚合根a从旧MailBox路由到新MailBox：旧路由版本的放入被拒绝，
+     * 按新路由放入的事件在旧MailBox持久化完调整前的事件之前不会被处理
+     */
+    @Test
+    public void mailbox_resize_holds_new_route_until_old_mailbox_drained() {
+        List<List<EventCommittingContext>> oldBatches = new ArrayList<>();
+        List<List<EventCommittingContext>> newBatches = new ArrayList<>();
+        List<String> handled = new ArrayList<>();
+        EventCommittingContextMailBox oldMailBox = new EventCommittingContextMailBox(0, 100, x -> {
+            oldBatches.add(x);
+            x.forEach(y -> handled.add(y.getEventStream().getId()));
+        }, executor);
+        EventCommittingContextMailBox newMailBox = new EventCommittingContextMailBox(1, 100, x -> {
+            newBatches.add(x);
+            x.forEach(y -> handled.add(y.getEventStream().getId()));
+        }, executor);
+
+        Assert.assertTrue(oldMailBox.enqueueMessage(createContext("a", 1), 0));
+        runAllTasks();
+        Assert.assertEquals(1, oldBatches.size());
+
+        AtomicInteger drainedCount = new AtomicInteger();
+        Runnable drainedAction = drainedCount::incrementAndGet;
+        Assert.assertFalse(oldMailBox.beginDrain(1, drainedAction));
+        Assert.assertTrue(newMailBox.beginDrain(1, drainedAction));
+
+        Assert.assertFalse(oldMailBox.enqueueMessage(createContext("a", 2), 0));
+        Assert.assertFalse(newMailBox.enqueueMessages(Arrays.asList(createContext("a", 2)), 0));
+        Assert.assertTrue(newMailBox.enqueueMessage(createContext("a", 2), 1));
+        runAllTasks();
+        Assert.assertEquals(Collections.singletonList("a_1"), handled);
+        Assert.assertEquals(1, newMailBox.getTotalUnHandledMessageCount());
+        Assert.assertEquals(0, drainedCount.get());
+
+        oldMailBox.completeBatch(oldBatches.get(0));
+        Assert.assertEquals(1, drainedCount.get());
+        runAllTasks();
+        Assert.assertEquals(Collections.singletonList("a_1"), handled);
+
+        oldMailBox.endDrain();
+        newMailBox.endDrain();
+        runAllTasks();
+        Assert.assertEquals(Arrays.asList("a_1", "a_2"), handled);
+        newMailBox.completeBatch(newBatches.get(0));
+        Assert.assertEquals(0, newMailBox.getTotalUnHandledMessageCount());
+    }
+}
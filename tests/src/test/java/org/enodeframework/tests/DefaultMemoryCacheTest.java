@@ -0,0 +1,133 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.scheduling.ScheduleService;
+import org.enodeframework.domain.AggregateRootReferenceChangedException;
+import org.enodeframework.domain.IAggregateRoot;
+import org.enodeframework.domain.IAggregateStorage;
+import org.enodeframework.domain.impl.DefaultMemoryCache;
+import org.enodeframework.eventing.DomainEventStream;
+import org.enodeframework.eventing.IDomainEvent;
+import org.enodeframework.infrastructure.impl.DefaultTypeNameProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class DefaultMemoryCacheTest {
+
+    private final Map<String, CachedAggregate> storedAggregates = new ConcurrentHashMap<>();
+
+    private final DefaultMemoryCache memoryCache = new DefaultMemoryCache(new StubAggregateStorage(), new ScheduleService(), new DefaultTypeNameProvider(new HashMap<>()));
+
+    private CachedAggregate cacheAggregate(String id) throws Exception {
+        CachedAggregate aggregate = new CachedAggregate(id, 2);
+        memoryCache.acceptAggregateRootChanges(aggregate).get(10, TimeUnit.SECONDS);
+        Assert.assertSame(aggregate, memoryCache.getAsync(id, CachedAggregate.class).get(10, TimeUnit.SECONDS));
+        aggregate.acceptCount = 0;
+        return aggregate;
+    }
+
+    /**
+     * 重置后缓存项中是新的聚合根，原聚合根的修改不能再被接受
+     */
+    @Test
+    public void accept_after_reset_is_rejected() throws Exception {
+        CachedAggregate aggregate = cacheAggregate("a1");
+        CachedAggregate reloaded = new CachedAggregate("a1", 2);
+        storedAggregates.put("a1", reloaded);
+        memoryCache.refreshAggregateFromEventStoreAsync(CachedAggregate.class, "a1").get(10, TimeUnit.SECONDS);
+        try {
+            memoryCache.acceptAggregateRootChanges(aggregate);
+            Assert.fail("accept of a reset aggregate must fail");
+        } catch (AggregateRootReferenceChangedException ignored) {
+        }
+        Assert.assertEquals(0, aggregate.acceptCount);
+        Assert.assertSame(reloaded, memoryCache.getAsync("a1", CachedAggregate.class).get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, memoryCache.getCacheSize());
+    }
+
+    /**
+     * 接受修改和重置并发执行：接受成功时修改被接受且发生在重置之前，失败时修改保持未接受；最终缓存的总是重置后的聚合根
+     */
+    @Test
+    public void concurrent_accept_and_reset() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int i = 0; i < 2000; i++) {
+            String id = "a" + i;
+            CachedAggregate aggregate = cacheAggregate(id);
+            CachedAggregate reloaded = new CachedAggregate(id, 2);
+            storedAggregates.put(id, reloaded);
+            AtomicBoolean accepted = new AtomicBoolean();
+            Thread acceptThread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    memoryCache.acceptAggregateRootChanges(aggregate);
+                    accepted.set(true);
+                } catch (AggregateRootReferenceChangedException ignored) {
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            acceptThread.start();
+            barrier.await();
+            memoryCache.refreshAggregateFromEventStoreAsync(CachedAggregate.class, id).get(10, TimeUnit.SECONDS);
+            acceptThread.join();
+            Assert.assertEquals(accepted.get() ? 1 : 0, aggregate.acceptCount);
+            Assert.assertSame(reloaded, memoryCache.getAsync(id, CachedAggregate.class).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private class StubAggregateStorage implements IAggregateStorage {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends IAggregateRoot> CompletableFuture<T> getAsync(Class<T> aggregateRootType, String aggregateRootId) {
+            return CompletableFuture.completedFuture((T) storedAggregates.get(aggregateRootId));
+        }
+    }
+
+    /**
+     * 记录接受修改的次数
+     */
+    public static class CachedAggregate implements IAggregateRoot {
+        private final String id;
+        private final int version;
+        private volatile int acceptCount;
+
+        public CachedAggregate(String id, int version) {
+            this.id = id;
+            this.version = version;
+        }
+
+        @Override
+        public String getUniqueId() {
+            return id;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public List<IDomainEvent<?>> getChanges() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void acceptChanges() {
+            acceptCount++;
+        }
+
+        @Override
+        public void replayEvents(List<DomainEventStream> eventStreams) {
+        }
+    }
+}
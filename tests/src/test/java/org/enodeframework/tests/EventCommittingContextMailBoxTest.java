@@ -0,0 +1,104 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.commanding.ProcessingCommand;
+import org.enodeframework.commanding.ProcessingCommandMailbox;
+import org.enodeframework.eventing.DomainEventStream;
+import org.enodeframework.eventing.EventCommittingContext;
+import org.enodeframework.eventing.EventCommittingContextMailBox;
+import org.enodeframework.eventing.IDomainEvent;
+import org.enodeframework.tests.commands.CreateTestAggregateCommand;
+import org.enodeframework.tests.domain.Event1;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+public class EventCommittingContextMailBoxTest {
+
+    private final Queue<Runnable> tasks = new LinkedList<>();
+    private final Executor executor = tasks::add;
+    private final List<List<EventCommittingContext>> handledBatches = new ArrayList<>();
+
+    private void runAllTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private EventCommittingContext createContext(String aggregateRootId, int version, ProcessingCommandMailbox commandMailBox) {
+        Event1 event = new Event1();
+        event.setAggregateRootId(aggregateRootId);
+        event.setVersion(version);
+        List<IDomainEvent<?>> events = Collections.singletonList(event);
+        CreateTestAggregateCommand command = new CreateTestAggregateCommand();
+        command.aggregateRootId = aggregateRootId;
+        DomainEventStream eventStream = new DomainEventStream(command.getId(), aggregateRootId, "TestAggregate", new Date(), events, null);
+        ProcessingCommand processingCommand = new ProcessingCommand(command, null, null);
+        processingCommand.setMailBox(commandMailBox);
+        return new EventCommittingContext(eventStream, processingCommand);
+    }
+
+    private List<String> handledEventStreamIds() {
+        return handledBatches.stream().flatMap(List::stream).map(x -> x.getEventStream().getId()).collect(Collectors.toList());
+    }
+
+    /**
+     * 组装批次期间聚合根被释放：延迟的消息在本次运行中没有进入批次，运行结束时必须重新运行，否则不会再被处理
+     */
+    @Test
+    public void release_aggregate_while_assembling_batch_reruns_deferred_messages() {
+        EventCommittingContextMailBox mailBox = new EventCommittingContextMailBox(0, 100, handledBatches::add, executor);
+        mailBox.setMaxInFlightBatchCount(2);
+
+        mailBox.enqueueMessage(createContext("a", 1, null));
+        runAllTasks();
+        Assert.assertEquals(1, handledBatches.size());
+        List<EventCommittingContext> firstBatch = handledBatches.get(0);
+
+        // y的命令MailBox被检查是否暂停时，a的批次恰好完成，此时a2已经因为a被持有而延迟
+        ProcessingCommandMailbox releasingCommandMailBox = new ProcessingCommandMailbox("y", null, 1, executor) {
+            private boolean released;
+
+            @Override
+            public boolean isPauseRequested() {
+                if (!released) {
+                    released = true;
+                    mailBox.completeBatch(firstBatch);
+                }
+                return true;
+            }
+        };
+        mailBox.enqueueMessages(Arrays.asList(createContext("a", 2, null), createContext("y", 1, releasingCommandMailBox)));
+        runAllTasks();
+
+        Assert.assertEquals(Arrays.asList("a_1", "a_2"), handledEventStreamIds());
+        Assert.assertFalse(mailBox.isRunning());
+        Assert.assertEquals(0, mailBox.getTotalUnHandledMessageCount());
+    }
+
+    @Test
+    public void deferred_message_is_handled_after_batch_completed() {
+        EventCommittingContextMailBox mailBox = new EventCommittingContextMailBox(0, 100, handledBatches::add, executor);
+        mailBox.setMaxInFlightBatchCount(2);
+
+        mailBox.enqueueMessage(createContext("a", 1, null));
+        runAllTasks();
+        mailBox.enqueueMessage(createContext("a", 2, null));
+        runAllTasks();
+        Assert.assertEquals(1, handledBatches.size());
+        Assert.assertEquals(1, mailBox.getTotalUnHandledMessageCount());
+
+        mailBox.completeBatch(handledBatches.get(0));
+        runAllTasks();
+        Assert.assertEquals(Arrays.asList("a_1", "a_2"), handledEventStreamIds());
+    }
+}
@@ -0,0 +1,200 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.exception.IORuntimeException;
+import org.enodeframework.domain.IAggregateRoot;
+import org.enodeframework.domain.IAggregateRootFactory;
+import org.enodeframework.domain.IAggregateSnapshotter;
+import org.enodeframework.domain.impl.EventSourcingAggregateStorage;
+import org.enodeframework.eventing.DomainEventStream;
+import org.enodeframework.eventing.EventAppendResult;
+import org.enodeframework.eventing.IDomainEvent;
+import org.enodeframework.eventing.IEventStore;
+import org.enodeframework.infrastructure.impl.DefaultTypeNameProvider;
+import org.enodeframework.tests.domain.Event1;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class EventSourcingAggregateStorageTest {
+
+    private static final String AGGREGATE_ROOT_ID = "a1";
+
+    private final PagedEventStore eventStore = new PagedEventStore();
+
+    private final List<Integer> restoredEventStreamCounts = new ArrayList<>();
+
+    private EventSourcingAggregateStorage createStorage(int replayPageSize) {
+        IAggregateSnapshotter snapshotter = new IAggregateSnapshotter() {
+            @Override
+            public <T extends IAggregateRoot> CompletableFuture<T> restoreFromSnapshotAsync(Class<T> aggregateRootType, String aggregateRootId) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void onAggregateRestored(IAggregateRoot aggregateRoot, int replayedEventStreamCount, long elapsedMillis) {
+                restoredEventStreamCounts.add(replayedEventStreamCount);
+            }
+        };
+        EventSourcingAggregateStorage storage = new EventSourcingAggregateStorage(eventStore, new ReplayAggregateFactory(), snapshotter, new DefaultTypeNameProvider(new HashMap<>()));
+        storage.setReplayPageSize(replayPageSize);
+        return storage;
+    }
+
+    private static DomainEventStream createEventStream(int version) {
+        Event1 event = new Event1();
+        event.setAggregateRootId(AGGREGATE_ROOT_ID);
+        event.setVersion(version);
+        List<IDomainEvent<?>> events = Collections.singletonList(event);
+        return new DomainEventStream("command" + version, AGGREGATE_ROOT_ID, ReplayAggregate.class.getName(), new Date(), events, null);
+    }
+
+    @Test
+    public void replay_reads_events_page_by_page() throws Exception {
+        eventStore.addEventStreams(1, 25);
+        ReplayAggregate aggregate = createStorage(10).getAsync(ReplayAggregate.class, AGGREGATE_ROOT_ID).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(25, aggregate.getVersion());
+        Assert.assertEquals(Arrays.asList(10, 10, 5), aggregate.pageSizes);
+        Assert.assertEquals(Arrays.asList("1-10", "11-20", "21-30"), eventStore.queries);
+        Assert.assertEquals(Collections.singletonList(25), restoredEventStreamCounts);
+    }
+
+    /**
+     * 第二页读取失败后重试，从聚合根已回放到的版本继续读取，已回放的事件不会重复回放
+     */
+    @Test
+    public void retry_resumes_from_replayed_version() throws Exception {
+        eventStore.addEventStreams(1, 25);
+        eventStore.failingQueryIndex = 1;
+        ReplayAggregate aggregate = createStorage(10).getAsync(ReplayAggregate.class, AGGREGATE_ROOT_ID).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(25, aggregate.getVersion());
+        Assert.assertEquals(Arrays.asList(10, 10, 5), aggregate.pageSizes);
+        Assert.assertEquals(Arrays.asList("1-10", "11-20", "11-20", "21-30"), eventStore.queries);
+        Assert.assertEquals(Collections.singletonList(25), restoredEventStreamCounts);
+    }
+
+    /**
+     * 回放本身抛出的异常（事件版本不连续）不重试，直接返回失败
+     */
+    @Test
+    public void replay_exception_is_not_retried() {
+        eventStore.addEventStreams(1, 12);
+        eventStore.addEventStreams(14, 15);
+        try {
+            createStorage(10).getAsync(ReplayAggregate.class, AGGREGATE_ROOT_ID).get(10, TimeUnit.SECONDS);
+            Assert.fail("replay of a version gap must fail");
+        } catch (Exception ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+            Assert.assertTrue(String.valueOf(cause), cause instanceof IllegalStateException);
+        }
+        Assert.assertEquals(Arrays.asList("1-10", "11-20"), eventStore.queries);
+        Assert.assertTrue(restoredEventStreamCounts.isEmpty());
+    }
+
+    @Test
+    public void missing_aggregate_returns_null() throws Exception {
+        Assert.assertNull(createStorage(10).getAsync(ReplayAggregate.class, AGGREGATE_ROOT_ID).get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList("1-10"), eventStore.queries);
+    }
+
+    /**
+     * 只实现按版本范围查询的事件存储，分页查询使用接口的默认实现；可以让指定的某次查询失败一次
+     */
+    private static class PagedEventStore implements IEventStore {
+        private final List<DomainEventStream> eventStreams = new ArrayList<>();
+        private final List<String> queries = new ArrayList<>();
+        private int failingQueryIndex = -1;
+
+        void addEventStreams(int minVersion, int maxVersion) {
+            for (int version = minVersion; version <= maxVersion; version++) {
+                eventStreams.add(createEventStream(version));
+            }
+        }
+
+        @Override
+        public CompletableFuture<List<DomainEventStream>> queryAggregateEventsAsync(String aggregateRootId, String aggregateRootTypeName, int minVersion, int maxVersion) {
+            queries.add(minVersion + "-" + maxVersion);
+            CompletableFuture<List<DomainEventStream>> future = new CompletableFuture<>();
+            if (queries.size() - 1 == failingQueryIndex) {
+                future.completeExceptionally(new IORuntimeException("query failed"));
+                return future;
+            }
+            future.complete(eventStreams.stream()
+                    .filter(x -> x.getAggregateRootId().equals(aggregateRootId) && x.getVersion() >= minVersion && x.getVersion() <= maxVersion)
+                    .collect(Collectors.toList()));
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<EventAppendResult> batchAppendAsync(List<DomainEventStream> eventStreams) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<DomainEventStream> findAsync(String aggregateRootId, int version) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<DomainEventStream> findAsync(String aggregateRootId, String commandId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class ReplayAggregateFactory implements IAggregateRootFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends IAggregateRoot> T createAggregateRoot(Class<T> aggregateRootType) {
+            return (T) new ReplayAggregate();
+        }
+    }
+
+    /**
+     * 记录每次回放的事件流数量，版本不连续时抛出异常
+     */
+    public static class ReplayAggregate implements IAggregateRoot {
+        private final List<Integer> pageSizes = new ArrayList<>();
+        private String id;
+        private int version;
+
+        @Override
+        public String getUniqueId() {
+            return id;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public List<IDomainEvent<?>> getChanges() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void acceptChanges() {
+        }
+
+        @Override
+        public void replayEvents(List<DomainEventStream> eventStreams) {
+            for (DomainEventStream eventStream : eventStreams) {
+                if (eventStream.getVersion() != version + 1) {
+                    throw new IllegalStateException("Invalid event stream version: " + eventStream.getVersion() + ", expected: " + (version + 1));
+                }
+                id = eventStream.getAggregateRootId();
+                version = eventStream.getVersion();
+            }
+            pageSizes.add(eventStreams.size());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.threading.InFlightLimiter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+public class InFlightLimiterTest {
+
+    @Test
+    public void pauses_at_high_and_resumes_at_low_watermark() {
+        InFlightLimiter limiter = new InFlightLimiter(4, 2, null);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire();
+        }
+        Assert.assertFalse(limiter.isPaused());
+        Assert.assertTrue(limiter.waitAsync().isDone());
+
+        limiter.acquire();
+        Assert.assertTrue(limiter.isPaused());
+        CompletableFuture<Void> resumeFuture = limiter.waitAsync();
+        Assert.assertFalse(resumeFuture.isDone());
+
+        // 降到高水位以下但仍高于低水位时保持暂停
+        limiter.release();
+        Assert.assertTrue(limiter.isPaused());
+        Assert.assertFalse(resumeFuture.isDone());
+
+        limiter.release();
+        Assert.assertFalse(limiter.isPaused());
+        Assert.assertTrue(resumeFuture.isDone());
+        Assert.assertEquals(2, limiter.getInFlightCount());
+    }
+
+    @Test
+    public void invalid_low_watermark_defaults_to_half_of_high() {
+        InFlightLimiter limiter = new InFlightLimiter(10, 10, null);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+        Assert.assertTrue(limiter.isPaused());
+        for (int i = 0; i < 4; i++) {
+            limiter.release();
+        }
+        Assert.assertTrue(limiter.isPaused());
+        limiter.release();
+        Assert.assertFalse(limiter.isPaused());
+    }
+
+    @Test
+    public void zero_high_watermark_never_pauses() {
+        InFlightLimiter limiter = new InFlightLimiter(0, -1, null);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.isPaused());
+        Assert.assertEquals(1000, limiter.getInFlightCount());
+    }
+
+    @Test
+    public void try_acquire_rejects_while_paused() {
+        InFlightLimiter limiter = new InFlightLimiter(2, 0, null);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(2, limiter.getInFlightCount());
+        limiter.release();
+        Assert.assertFalse(limiter.tryAcquire());
+        limiter.release();
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * 子限流器的数量计入父限流器，子限流器暂停不会让父限流器暂停
+     */
+    @Test
+    public void child_paused_does_not_pause_parent() {
+        InFlightLimiter parent = new InFlightLimiter(10, 5, null);
+        InFlightLimiter hot = new InFlightLimiter(3, 1, parent);
+        InFlightLimiter cold = new InFlightLimiter(3, 1, parent);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(hot.tryAcquire());
+        }
+        Assert.assertTrue(hot.isPaused());
+        Assert.assertFalse(hot.tryAcquire());
+        Assert.assertEquals(3, parent.getInFlightCount());
+        Assert.assertFalse(parent.isPaused());
+        Assert.assertTrue(parent.waitAsync().isDone());
+        Assert.assertTrue(cold.tryAcquire());
+        Assert.assertEquals(4, parent.getInFlightCount());
+    }
+
+    /**
+     * 父限流器只按汇总的数量暂停和恢复，与子限流器是否暂停无关
+     */
+    @Test
+    public void parent_pauses_on_total_count() {
+        InFlightLimiter parent = new InFlightLimiter(6, 2, null);
+        InFlightLimiter[] children = new InFlightLimiter[3];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = new InFlightLimiter(3, 1, parent);
+            children[i].acquire();
+            children[i].acquire();
+        }
+        for (InFlightLimiter child : children) {
+            Assert.assertFalse(child.isPaused());
+        }
+        Assert.assertTrue(parent.isPaused());
+        CompletableFuture<Void> resumeFuture = parent.waitAsync();
+        Assert.assertFalse(resumeFuture.isDone());
+
+        children[0].release();
+        children[0].release();
+        children[1].release();
+        Assert.assertTrue(parent.isPaused());
+        children[1].release();
+        Assert.assertFalse(parent.isPaused());
+        Assert.assertTrue(resumeFuture.isDone());
+        Assert.assertEquals(2, parent.getInFlightCount());
+    }
+}
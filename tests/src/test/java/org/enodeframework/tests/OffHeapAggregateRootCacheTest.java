@@ -0,0 +1,162 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.domain.AggregateRoot;
+import org.enodeframework.domain.impl.OffHeapAggregateRootCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+public class OffHeapAggregateRootCacheTest {
+
+    private static final int SLAB_SIZE = 1024;
+
+    private final OffHeapAggregateRootCache cache = new OffHeapAggregateRootCache(SLAB_SIZE * 3, SLAB_SIZE);
+
+    private static CachedAggregate createAggregate(String id, int version) {
+        CachedAggregate aggregate = new CachedAggregate(id, version);
+        aggregate.state = id + "-" + version;
+        return aggregate;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> locationDict() throws Exception {
+        Field field = OffHeapAggregateRootCache.class.getDeclaredField("locationDict");
+        field.setAccessible(true);
+        return (Map<String, Object>) field.get(cache);
+    }
+
+    @Test
+    public void put_and_get_returns_latest_state() {
+        cache.put(createAggregate("a1", 1));
+        cache.put(createAggregate("a1", 2));
+        CachedAggregate restored = cache.get(CachedAggregate.class, "a1");
+        Assert.assertNotNull(restored);
+        Assert.assertEquals(2, restored.getVersion());
+        Assert.assertEquals("a1-2", restored.state);
+        Assert.assertNull(cache.get(CachedAggregate.class, "a2"));
+        Assert.assertNull(cache.get(OtherAggregate.class, "a1"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * 写满所有slab后回到第一个slab，覆盖前移除其中的索引；期间被重新写入的聚合根保留最新的位置
+     */
+    @Test
+    public void wrap_around_evicts_overwritten_records_only() {
+        cache.put(createAggregate("first", 1));
+        cache.put(createAggregate("moved", 1));
+        int count = 0;
+        // 写入足够多的记录，使写入位置绕环一圈回到第一个slab
+        while (cache.getEvictionCount() == 0) {
+            // 每条记录约150字节，此时已写到第二个slab
+            if (count == 10) {
+                cache.put(createAggregate("moved", 2));
+            }
+            cache.put(createAggregate("filler" + count, 1));
+            count++;
+            Assert.assertTrue("no wrap-around after " + count + " records", count < 100);
+        }
+        Assert.assertNull(cache.get(CachedAggregate.class, "first"));
+        CachedAggregate moved = cache.get(CachedAggregate.class, "moved");
+        Assert.assertNotNull(moved);
+        Assert.assertEquals(2, moved.getVersion());
+        CachedAggregate last = cache.get(CachedAggregate.class, "filler" + (count - 1));
+        Assert.assertNotNull(last);
+        Assert.assertTrue(cache.size() < count);
+    }
+
+    /**
+     * 读取时slab的代数与索引中的不一致，说明数据已被覆盖，视为未命中并移除索引
+     */
+    @Test
+    public void stale_generation_is_a_miss() throws Exception {
+        cache.put(createAggregate("stale", 1));
+        Object staleLocation = locationDict().get("stale");
+        int count = 0;
+        while (cache.getEvictionCount() == 0) {
+            cache.put(createAggregate("filler" + count, 1));
+            count++;
+            Assert.assertTrue("no wrap-around after " + count + " records", count < 100);
+        }
+        // 模拟读取方在slab被回收前拿到了旧的位置
+        locationDict().put("stale", staleLocation);
+        long missCount = cache.getMissCount();
+        Assert.assertNull(cache.get(CachedAggregate.class, "stale"));
+        Assert.assertEquals(missCount + 1, cache.getMissCount());
+        Assert.assertFalse(locationDict().containsKey("stale"));
+    }
+
+    /**
+     * 已经被移除的聚合根所在的slab被覆盖时不计入淘汰数量
+     */
+    @Test
+    public void removed_records_are_not_counted_as_evictions() {
+        cache.put(createAggregate("removed", 1));
+        cache.remove("removed");
+        int count = 0;
+        while (cache.size() == count) {
+            cache.put(createAggregate("filler" + count, 1));
+            count++;
+            Assert.assertTrue("no wrap-around after " + count + " records", count < 100);
+        }
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertEquals(count, cache.size() + cache.getEvictionCount());
+    }
+
+    /**
+     * 记录第一次反序列化失败只当作未命中，同一条记录再次失败时该类型才不再进入二级缓存
+     */
+    @Test
+    public void type_is_unsupported_only_after_repeated_failure() throws Exception {
+        cache.put(createAggregate("broken", 1));
+        corruptPayload("broken");
+        Assert.assertNull(cache.get(CachedAggregate.class, "broken"));
+        cache.put(createAggregate("healthy", 1));
+        Assert.assertNotNull(cache.get(CachedAggregate.class, "healthy"));
+
+        Assert.assertNull(cache.get(CachedAggregate.class, "broken"));
+        Assert.assertFalse(locationDict().containsKey("broken"));
+        Assert.assertNull(cache.get(CachedAggregate.class, "healthy"));
+        cache.put(createAggregate("other", 1));
+        Assert.assertFalse(locationDict().containsKey("other"));
+    }
+
+    /**
+     * 把记录中聚合根状态的第一个字节改为非法的JSON
+     */
+    private void corruptPayload(String aggregateRootId) throws Exception {
+        Object location = locationDict().get(aggregateRootId);
+        int slab = readIntField(location, "slab");
+        int offset = readIntField(location, "offset");
+        Field slabsField = OffHeapAggregateRootCache.class.getDeclaredField("slabs");
+        slabsField.setAccessible(true);
+        ByteBuffer buffer = ((ByteBuffer[]) slabsField.get(cache))[slab];
+        int keyLength = buffer.getInt(offset + 8);
+        int typeNameLength = buffer.getInt(offset + 12 + keyLength);
+        buffer.put(offset + 16 + keyLength + typeNameLength, (byte) '!');
+    }
+
+    private static int readIntField(Object target, String name) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.getInt(target);
+    }
+
+    public static class CachedAggregate extends AggregateRoot<String> {
+        private String state;
+
+        public CachedAggregate() {
+        }
+
+        public CachedAggregate(String id, int version) {
+            super(id, version);
+        }
+    }
+
+    public static class OtherAggregate extends AggregateRoot<String> {
+    }
+}
@@ -0,0 +1,159 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.commanding.ProcessingCommand;
+import org.enodeframework.commanding.impl.RingBufferProcessingCommandQueue;
+import org.enodeframework.tests.commands.CreateTestAggregateCommand;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RingBufferProcessingCommandQueueTest {
+
+    private static ProcessingCommand createCommand() {
+        return new ProcessingCommand(new CreateTestAggregateCommand(), null, null);
+    }
+
+    @Test
+    public void grow_keeps_pending_commands() {
+        RingBufferProcessingCommandQueue queue = new RingBufferProcessingCommandQueue(2);
+        List<ProcessingCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ProcessingCommand command = createCommand();
+            Assert.assertTrue(queue.enqueue(command));
+            Assert.assertEquals(i, command.getSequence());
+            commands.add(command);
+        }
+        Assert.assertEquals(16, queue.getCapacity());
+        Assert.assertEquals(10, queue.getNextSequence());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(commands.get(i), queue.get(i));
+        }
+        Assert.assertNull(queue.get(10));
+    }
+
+    @Test
+    public void completed_slots_are_reused_without_grow() {
+        RingBufferProcessingCommandQueue queue = new RingBufferProcessingCommandQueue(4);
+        for (int i = 0; i < 100; i++) {
+            ProcessingCommand command = createCommand();
+            Assert.assertTrue(queue.enqueue(command));
+            Assert.assertSame(command, queue.get(i));
+            Assert.assertTrue(queue.remove(command));
+            Assert.assertFalse(queue.remove(command));
+            Assert.assertNull(queue.get(i));
+        }
+        Assert.assertEquals(4, queue.getCapacity());
+    }
+
+    @Test
+    public void full_queue_rejects_without_consuming_sequence() {
+        RingBufferProcessingCommandQueue queue = new RingBufferProcessingCommandQueue(2, 4);
+        List<ProcessingCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ProcessingCommand command = createCommand();
+            Assert.assertTrue(queue.enqueue(command));
+            commands.add(command);
+        }
+        Assert.assertFalse(queue.enqueue(createCommand()));
+        Assert.assertEquals(4, queue.getNextSequence());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(commands.get(i), queue.get(i));
+        }
+
+        Assert.assertTrue(queue.remove(commands.get(0)));
+        ProcessingCommand command = createCommand();
+        Assert.assertTrue(queue.enqueue(command));
+        Assert.assertEquals(4, command.getSequence());
+        Assert.assertSame(command, queue.get(4));
+        Assert.assertEquals(5, queue.getNextSequence());
+    }
+
+    /**
+     * 多个生产者放入命令触发扩容的同时，消费者按顺序读取并移除，扩容期间在旧数组上的读取和移除需要通过 MOVED 转到新数组
+     */
+    @Test
+    public void concurrent_enqueue_grow_and_remove() throws Exception {
+        int producerCount = 4;
+        int commandCountPerProducer = 50000;
+        long totalCount = (long) producerCount * commandCountPerProducer;
+        RingBufferProcessingCommandQueue queue = new RingBufferProcessingCommandQueue(2);
+        Set<ProcessingCommand> consumed = ConcurrentHashMap.newKeySet();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(producerCount + 1);
+        for (int p = 0; p < producerCount; p++) {
+            new Thread(() -> {
+                try {
+                    startLatch.await();
+                    for (int i = 0; i < commandCountPerProducer; i++) {
+                        if (!queue.enqueue(createCommand())) {
+                            throw new AssertionError("enqueue failed");
+                        }
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                } finally {
+                    doneLatch.countDown();
+                }
+            }).start();
+        }
+        new Thread(() -> {
+            try {
+                startLatch.await();
+                List<ProcessingCommand> pending = new ArrayList<>();
+                long sequence = 0;
+                while (sequence < totalCount && error.get() == null) {
+                    if (sequence >= queue.getNextSequence()) {
+                        Thread.yield();
+                        continue;
+                    }
+                    ProcessingCommand command = queue.get(sequence);
+                    if (command == null || command.getSequence() != sequence) {
+                        throw new AssertionError("missing command, sequence: " + sequence);
+                    }
+                    if (!consumed.add(command)) {
+                        throw new AssertionError("command consumed twice, sequence: " + sequence);
+                    }
+                    pending.add(command);
+                    // 随机延后完成，让未完成的命令占住槽位，迫使生产者扩容
+                    if (ThreadLocalRandom.current().nextInt(64) == 0) {
+                        for (ProcessingCommand pendingCommand : pending) {
+                            if (!queue.remove(pendingCommand)) {
+                                throw new AssertionError("remove failed, sequence: " + pendingCommand.getSequence());
+                            }
+                        }
+                        pending.clear();
+                    }
+                    sequence++;
+                }
+                for (ProcessingCommand pendingCommand : pending) {
+                    if (!queue.remove(pendingCommand)) {
+                        throw new AssertionError("remove failed, sequence: " + pendingCommand.getSequence());
+                    }
+                }
+            } catch (Throwable ex) {
+                error.compareAndSet(null, ex);
+            } finally {
+                doneLatch.countDown();
+            }
+        }).start();
+        startLatch.countDown();
+        Assert.assertTrue(doneLatch.await(60, TimeUnit.SECONDS));
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        Assert.assertEquals(totalCount, consumed.size());
+        Assert.assertEquals(totalCount, queue.getNextSequence());
+        for (long sequence = totalCount - queue.getCapacity(); sequence < totalCount; sequence++) {
+            Assert.assertNull(queue.get(sequence));
+        }
+    }
+}
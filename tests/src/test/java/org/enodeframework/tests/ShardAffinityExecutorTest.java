@@ -0,0 +1,50 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.threading.ShardAffinityExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShardAffinityExecutorTest {
+
+    @Test
+    public void shutdown_drains_queued_tasks() throws Exception {
+        ShardAffinityExecutor executor = new ShardAffinityExecutor(2, "ShardAffinityExecutorTest-");
+        Executor worker = executor.select("a");
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        AtomicInteger completedCount = new AtomicInteger();
+        worker.execute(() -> {
+            Assert.assertTrue(Thread.currentThread().isDaemon());
+            startedLatch.countDown();
+            try {
+                blockLatch.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            completedCount.incrementAndGet();
+        });
+        Assert.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            worker.execute(() -> {
+                completedCount.incrementAndGet();
+                // 排空期间工作线程上继续提交的任务同样会被执行
+                worker.execute(completedCount::incrementAndGet);
+            });
+        }
+        executor.shutdown();
+        try {
+            worker.execute(completedCount::incrementAndGet);
+            Assert.fail("task submitted after shutdown must be rejected");
+        } catch (RejectedExecutionException ignored) {
+        }
+        blockLatch.countDown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(201, completedCount.get());
+    }
+}
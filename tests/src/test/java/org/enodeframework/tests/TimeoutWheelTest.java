@@ -0,0 +1,104 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.scheduling.TimeoutWheel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TimeoutWheelTest {
+
+    private final TimeoutWheel<String> wheel = new TimeoutWheel<>(100);
+
+    private final List<String> handled = new ArrayList<>();
+
+    private void advanceAndRemove(long nowMilliseconds) {
+        wheel.advance(nowMilliseconds, element -> {
+            handled.add(element);
+            return 0;
+        });
+    }
+
+    /**
+     * 到期时间向上取整到周期，所在周期结束前不会被处理；到期的元素按到期时间顺序处理
+     */
+    @Test
+    public void elements_are_handled_after_their_deadline_tick() {
+        wheel.schedule("b", 250);
+        wheel.schedule("a", 120);
+        wheel.schedule("c", 300);
+        Assert.assertEquals(3, wheel.size());
+
+        advanceAndRemove(199);
+        Assert.assertTrue(handled.isEmpty());
+        advanceAndRemove(200);
+        Assert.assertEquals(Collections.singletonList("a"), handled);
+        advanceAndRemove(299);
+        Assert.assertEquals(Collections.singletonList("a"), handled);
+        advanceAndRemove(1000);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), handled);
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void handler_returning_zero_removes_element() {
+        wheel.schedule("a", 100);
+        advanceAndRemove(100);
+        Assert.assertEquals(0, wheel.size());
+        advanceAndRemove(10000);
+        Assert.assertEquals(Collections.singletonList("a"), handled);
+    }
+
+    /**
+     * 处理函数返回的时间点作为下一次处理的到期时间，元素在那时再次被处理
+     */
+    @Test
+    public void returned_deadline_reschedules_element() {
+        wheel.schedule("a", 100);
+        wheel.advance(100, element -> {
+            handled.add(element);
+            return 500;
+        });
+        Assert.assertEquals(1, wheel.size());
+
+        advanceAndRemove(499);
+        Assert.assertEquals(Collections.singletonList("a"), handled);
+        advanceAndRemove(500);
+        Assert.assertEquals(Arrays.asList("a", "a"), handled);
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    /**
+     * 返回已经过去的时间点时至少推迟到下一个周期，同一次推进中不会重复处理
+     */
+    @Test
+    public void past_deadline_is_deferred_to_next_tick() {
+        wheel.schedule("a", 100);
+        wheel.advance(150, element -> {
+            handled.add(element);
+            return 1;
+        });
+        Assert.assertEquals(Collections.singletonList("a"), handled);
+        Assert.assertEquals(1, wheel.size());
+
+        advanceAndRemove(199);
+        Assert.assertEquals(1, handled.size());
+        advanceAndRemove(200);
+        Assert.assertEquals(Arrays.asList("a", "a"), handled);
+    }
+
+    @Test
+    public void handler_exception_retries_in_next_tick() {
+        wheel.schedule("a", 100);
+        wheel.advance(100, element -> {
+            throw new IllegalStateException("handle failed");
+        });
+        Assert.assertEquals(1, wheel.size());
+        advanceAndRemove(200);
+        Assert.assertEquals(Collections.singletonList("a"), handled);
+        Assert.assertEquals(0, wheel.size());
+    }
+}
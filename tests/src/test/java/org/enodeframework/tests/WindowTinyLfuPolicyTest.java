@@ -0,0 +1,107 @@
+package org.enodeframework.tests;
+
+import org.enodeframework.common.utilities.FrequencySketch;
+import org.enodeframework.common.utilities.WindowTinyLfuPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WindowTinyLfuPolicyTest {
+
+    @Test
+    public void sketch_counts_saturate_and_decay() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        Assert.assertEquals(15, sketch.frequency("hot"));
+        // 累计次数达到采样数时计数器减半，之前计数器只增不减
+        boolean decayed = false;
+        for (int i = 0; i < 1000 && !decayed; i++) {
+            sketch.increment("key" + i);
+            decayed = sketch.frequency("hot") < 15;
+        }
+        Assert.assertTrue(decayed);
+        Assert.assertTrue(sketch.frequency("hot") <= 8);
+    }
+
+    /**
+     * 主区已满时，只访问一次的Key不能挤掉经常访问的Key
+     */
+    @Test
+    public void one_hit_keys_are_not_admitted_over_frequent_keys() {
+        List<String> evicted = new ArrayList<>();
+        WindowTinyLfuPolicy<String> policy = new WindowTinyLfuPolicy<>(100, evicted::add);
+        for (int i = 0; i < 99; i++) {
+            policy.recordWrite("hot" + i, 1);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 99; i++) {
+                policy.recordAccess("hot" + i);
+            }
+        }
+        Assert.assertTrue(evicted.isEmpty());
+
+        List<String> expectedEvicted = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            policy.recordWrite("cold" + i, 1);
+            if (i < 49) {
+                expectedEvicted.add("cold" + i);
+            }
+        }
+        Assert.assertEquals(expectedEvicted, evicted);
+        Assert.assertEquals(100, policy.size());
+        Assert.assertEquals(100, policy.weightedSize());
+    }
+
+    @Test
+    public void frequent_candidate_replaces_cold_keys() {
+        List<String> evicted = new ArrayList<>();
+        WindowTinyLfuPolicy<String> policy = new WindowTinyLfuPolicy<>(100, evicted::add);
+        for (int i = 0; i < 100; i++) {
+            policy.recordWrite("cold" + i, 1);
+        }
+        Assert.assertTrue(evicted.isEmpty());
+        // 新Key在窗口中被多次访问后，从窗口淘汰时频率高于主区最久未访问的Key，因此被接纳
+        policy.recordWrite("hot", 1);
+        for (int i = 0; i < 10; i++) {
+            policy.recordAccess("hot");
+        }
+        policy.recordWrite("next", 1);
+        Assert.assertFalse(evicted.contains("hot"));
+        Assert.assertEquals(2, evicted.size());
+        Assert.assertEquals(100, policy.size());
+    }
+
+    @Test
+    public void weighted_size_never_exceeds_maximum_weight() {
+        List<String> evicted = new ArrayList<>();
+        WindowTinyLfuPolicy<String> policy = new WindowTinyLfuPolicy<>(100, evicted::add);
+        for (int i = 0; i < 30; i++) {
+            policy.recordWrite("key" + i, 10);
+            Assert.assertTrue(policy.weightedSize() <= policy.getMaximumWeight());
+        }
+        // 频率相同时主区中已有的Key留下，主区放满9个后新Key都不被接纳
+        Assert.assertEquals(9, policy.size());
+        Assert.assertEquals(90, policy.weightedSize());
+        Assert.assertEquals(21, evicted.size());
+        Assert.assertFalse(evicted.contains("key0"));
+
+        policy.remove("key0");
+        Assert.assertEquals(8, policy.size());
+        Assert.assertEquals(80, policy.weightedSize());
+
+        // 已存在的Key权重变大时同样需要淘汰
+        policy.recordWrite("key1", 50);
+        Assert.assertTrue(policy.weightedSize() <= policy.getMaximumWeight());
+        Assert.assertTrue(evicted.size() > 21);
+        Assert.assertFalse(evicted.contains("key1"));
+
+        // 超过全部容量的Key不会被接纳
+        policy.recordWrite("huge", 200);
+        Assert.assertTrue(evicted.contains("huge"));
+        Assert.assertTrue(policy.weightedSize() <= policy.getMaximumWeight());
+    }
+}
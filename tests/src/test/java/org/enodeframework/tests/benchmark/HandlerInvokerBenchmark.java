@@ -0,0 +1,97 @@
+package org.enodeframework.tests.benchmark;
+
+import org.enodeframework.common.function.Func2;
+import org.enodeframework.infrastructure.impl.MethodInvokerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比处理器代理单次分发的开销：非final字段上的MethodHandle.invoke（原实现） vs 注册时生成的调用器，以直接调用作为基线
+ * <p>
+ * JDK 17、1核、1个fork、预热和测量各5轮1秒的结果（ns/op）：
+ * <pre>
+ * directCall          4.538 ± 1.033
+ * generatedInvoker    5.307 ± 0.380
+ * methodHandleInvoke  9.044 ± 2.592
+ * </pre>
+ *
+ * @author anruence@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerInvokerBenchmark {
+
+    private TestHandler handler;
+    private TestMessage message;
+    private MethodHandle methodHandle;
+    private Func2<Object, Object, Object> methodInvoker;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HandlerInvokerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        handler = new TestHandler();
+        message = new TestMessage();
+        Method method = TestHandler.class.getMethod("handleAsync", TestMessage.class);
+        methodHandle = MethodHandles.lookup().findVirtual(TestHandler.class, method.getName(), MethodType.methodType(method.getReturnType(), method.getParameterTypes()));
+        methodInvoker = MethodInvokerFactory.createInvoker1(method);
+    }
+
+    @Benchmark
+    public Object methodHandleInvoke() throws Throwable {
+        Object target = handler;
+        Object argument = message;
+        return methodHandle.invoke(target, argument);
+    }
+
+    @Benchmark
+    public Object generatedInvoker() {
+        return methodInvoker.apply(handler, message);
+    }
+
+    @Benchmark
+    public Object directCall() {
+        return handler.handleAsync(message);
+    }
+
+    public static class TestMessage {
+    }
+
+    public static class TestHandler {
+        private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+        private int count;
+
+        public CompletableFuture<Void> handleAsync(TestMessage message) {
+            count++;
+            return COMPLETED;
+        }
+    }
+}
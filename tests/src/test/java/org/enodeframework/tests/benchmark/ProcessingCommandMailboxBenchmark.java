@@ -0,0 +1,187 @@
+package org.enodeframework.tests.benchmark;
+
+import org.enodeframework.commanding.Command;
+import org.enodeframework.commanding.IProcessingCommandHandler;
+import org.enodeframework.commanding.IProcessingCommandQueue;
+import org.enodeframework.commanding.ProcessingCommand;
+import org.enodeframework.commanding.impl.DefaultProcessingCommandQueue;
+import org.enodeframework.common.io.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比命令邮箱一次运行处理一批同步完成的命令的开销：递归实现 vs 循环实现。
+ * <p>
+ * 两个实现使用相同的队列和处理器，每次调用先放入一批命令再运行一次，区别只在于处理下一条命令的方式；
+ * 命令对象在每轮迭代开始时创建，测量结果为处理一批命令的耗时。
+ *
+ * @author anruence@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingCommandMailboxBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int batchSize;
+
+    private ProcessingCommand[] commands;
+    private IterativeMailbox iterativeMailbox;
+    private RecursiveMailbox recursiveMailbox;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProcessingCommandMailboxBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setupLogging() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.INFO);
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        commands = new ProcessingCommand[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            commands[i] = new ProcessingCommand(new Command<>("aggregateRootId"), null, null);
+        }
+        iterativeMailbox = new IterativeMailbox(batchSize);
+        recursiveMailbox = new RecursiveMailbox(batchSize);
+    }
+
+    @Benchmark
+    public long iterative() {
+        iterativeMailbox.enqueueAll(commands);
+        iterativeMailbox.run();
+        return iterativeMailbox.consumingSequence;
+    }
+
+    @Benchmark
+    public long recursive() {
+        recursiveMailbox.enqueueAll(commands);
+        recursiveMailbox.run();
+        return recursiveMailbox.consumingSequence;
+    }
+
+    /**
+     * 两种实现共用的队列和处理器，处理器同步完成并从队列中移除命令，与邮箱完成命令时的操作一致
+     */
+    private abstract static class BenchmarkMailbox {
+        protected final IProcessingCommandQueue messageQueue = new DefaultProcessingCommandQueue();
+        protected final IProcessingCommandHandler messageHandler = message -> {
+            messageQueue.remove(message);
+            return Task.completedTask;
+        };
+        protected final int batchSize;
+        protected long consumingSequence;
+
+        BenchmarkMailbox(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        void enqueueAll(ProcessingCommand[] commands) {
+            for (ProcessingCommand command : commands) {
+                messageQueue.enqueue(command);
+            }
+        }
+
+        abstract void run();
+    }
+
+    /**
+     * ProcessingCommandMailbox.processMessages 的循环实现，处理器同步完成时在当前线程继续处理下一条
+     */
+    private static class IterativeMailbox extends BenchmarkMailbox {
+
+        IterativeMailbox(int batchSize) {
+            super(batchSize);
+        }
+
+        @Override
+        void run() {
+            processMessages(0);
+        }
+
+        void processMessages(long scannedCount) {
+            long nextSequence = messageQueue.getNextSequence();
+            while (scannedCount < batchSize) {
+                if (consumingSequence >= nextSequence) {
+                    nextSequence = messageQueue.getNextSequence();
+                    if (consumingSequence >= nextSequence) {
+                        break;
+                    }
+                }
+                ProcessingCommand message = messageQueue.get(consumingSequence);
+                consumingSequence++;
+                scannedCount++;
+                if (message == null) {
+                    continue;
+                }
+                CompletableFuture<Void> future = messageHandler.handleAsync(message);
+                if (!future.isDone()) {
+                    long continueScannedCount = scannedCount;
+                    future.whenComplete((x, ex) -> processMessages(continueScannedCount));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 原有的 processMessagesRecursion 实现，每处理一条命令通过 thenAccept 递归一次
+     */
+    private static class RecursiveMailbox extends BenchmarkMailbox {
+
+        RecursiveMailbox(int batchSize) {
+            super(batchSize);
+        }
+
+        @Override
+        void run() {
+            processMessagesRecursion(getTotalUnHandledMessageCount(), 0);
+        }
+
+        long getTotalUnHandledMessageCount() {
+            return messageQueue.getNextSequence() - consumingSequence;
+        }
+
+        void processMessagesRecursion(long totalUnHandledMessageCount, long scannedCount) {
+            if (!(totalUnHandledMessageCount > 0 && scannedCount < batchSize)) {
+                return;
+            }
+            ProcessingCommand message = messageQueue.get(consumingSequence);
+            consumingSequence++;
+            if (message != null) {
+                messageHandler.handleAsync(message).thenAccept(x -> {
+                    processMessagesRecursion(getTotalUnHandledMessageCount(), scannedCount + 1);
+                });
+                return;
+            }
+            processMessagesRecursion(getTotalUnHandledMessageCount(), scannedCount + 1);
+        }
+    }
+}